@@ -0,0 +1,50 @@
+package com.fixsecurity.benchmark;
+
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.InvalidMessageException;
+import com.fixsecurity.engine.ParsedMessage;
+import com.fixsecurity.security.AnomalyDetector;
+import com.fixsecurity.security.AnomalyResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AnomalyDetector.detectAnomalies over a pre-parsed mixed order flow.
+ * The detector is shared, so running with -t N measures multi-threaded scaling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnomalyDetectorBenchmark {
+    private static final int MESSAGE_COUNT = 4096;
+
+    private AnomalyDetector detector;
+    private ParsedMessage[] messages;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() throws InvalidMessageException {
+        detector = new AnomalyDetector();
+        FIXTagValueParser parser = new FIXTagValueParser();
+        String[] raw = FixMessages.generateMixed(MESSAGE_COUNT, 7);
+        messages = new ParsedMessage[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            messages[i] = parser.parse(raw[i]);
+        }
+    }
+
+    @Benchmark
+    public AnomalyResult detectAnomalies(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = (i + 1) & (MESSAGE_COUNT - 1);
+        return detector.detectAnomalies(messages[i]);
+    }
+}
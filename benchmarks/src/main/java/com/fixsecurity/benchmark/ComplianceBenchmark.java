@@ -0,0 +1,87 @@
+package com.fixsecurity.benchmark;
+
+import com.fixsecurity.compliance.ComplianceResult;
+import com.fixsecurity.compliance.ComplianceRuleEngine;
+import com.fixsecurity.compliance.NotionalLimitRule;
+import com.fixsecurity.compliance.OrderRateLimitRule;
+import com.fixsecurity.compliance.PositionLimitRule;
+import com.fixsecurity.compliance.RuleSetCompiler;
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.InvalidMessageException;
+import com.fixsecurity.engine.ParsedMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ComplianceRuleEngine: full evaluation versus violations-only evaluation of passing
+ * NewOrderSingles. Run with -prof gc to compare bytes allocated per message.
+ * The "compiled" rules variant replaces the hand-written PRE-TRADE-001 and DATA-QUALITY-001
+ * with the same checks declared in a rule set, to compare compiled rules against them.
+ * The "stateful" variant adds the notional, position and order rate limits on top of the
+ * default rules, with limits high enough that every order passes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComplianceBenchmark {
+    private static final int MESSAGE_COUNT = 1024;
+    private static final String RULE_SET = String.join("\n",
+        "rules:",
+        "  - id: PRE-TRADE-001",
+        "    name: Order Size Limit",
+        "    msgTypes: [D]",
+        "    require:",
+        "      - { field: OrderQty, op: '<=', value: 1000000 }",
+        "  - id: DATA-QUALITY-001",
+        "    name: Required Fields Check",
+        "    msgTypes: [D]",
+        "    require:",
+        "      - { field: Symbol, op: present }",
+        "      - { field: Side, op: present }",
+        "      - { field: OrderQty, op: '>', value: 0 }");
+
+    @Param({ "code", "compiled", "stateful" })
+    private String rules;
+
+    private ComplianceRuleEngine engine;
+    private ParsedMessage[] orders;
+    private int next;
+
+    @Setup
+    public void setUp() throws InvalidMessageException {
+        engine = new ComplianceRuleEngine();
+        if (rules.equals("compiled")) {
+            engine.replaceRuleSet(RuleSetCompiler.compile(RuleSetCompiler.parseYaml(RULE_SET)));
+        } else if (rules.equals("stateful")) {
+            engine.addRule(new NotionalLimitRule(Double.MAX_VALUE));
+            engine.addRule(new PositionLimitRule(Double.MAX_VALUE));
+            engine.addRule(new OrderRateLimitRule(Integer.MAX_VALUE));
+        }
+        FIXTagValueParser parser = new FIXTagValueParser();
+        String[] raw = FixMessages.generate(FixMessages.Kind.NEW_ORDER_SINGLE, MESSAGE_COUNT, 11);
+        orders = new ParsedMessage[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            orders[i] = parser.parse(raw[i]);
+        }
+    }
+
+    private ParsedMessage nextOrder() {
+        int i = next;
+        next = (i + 1) & (MESSAGE_COUNT - 1);
+        return orders[i];
+    }
+
+    @Benchmark
+    public ComplianceResult evaluate() {
+        return engine.evaluate(nextOrder());
+    }
+
+    @Benchmark
+    public ComplianceResult evaluateViolations() {
+        return engine.evaluateViolations(nextOrder());
+    }
+}
@@ -0,0 +1,144 @@
+package com.fixsecurity.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates realistic, correctly framed FIX 4.4 messages for benchmarks.
+ * Output is deterministic for a given seed so runs are comparable.
+ */
+public final class FixMessages {
+    private static final char SOH = '\u0001';
+    private static final String[] SYMBOLS = { "AAPL", "MSFT", "IBM", "GOOG", "AMZN", "TSLA", "VOD.L", "BARC.L" };
+    private static final String[] SENDERS = { "BROKER1", "BROKER2", "FUNDA", "FUNDB" };
+
+    public enum Kind {
+        NEW_ORDER_SINGLE,
+        EXECUTION_REPORT,
+        LOGON,
+        LOGOUT
+    }
+
+    private FixMessages() {
+    }
+
+    /**
+     * Generate count messages of one kind, with sequence numbers increasing per sender
+     */
+    public static String[] generate(Kind kind, int count, long seed) {
+        Random random = new Random(seed);
+        String[] messages = new String[count];
+        int[] seqNums = new int[SENDERS.length];
+        for (int i = 0; i < count; i++) {
+            int sender = i % SENDERS.length;
+            messages[i] = build(kind, SENDERS[sender], "EXCHANGE", ++seqNums[sender], i, random);
+        }
+        return messages;
+    }
+
+    /**
+     * Generate a mixed order-flow stream: mostly orders and executions with occasional session messages
+     */
+    public static String[] generateMixed(int count, long seed) {
+        Random random = new Random(seed);
+        String[] messages = new String[count];
+        int[] seqNums = new int[SENDERS.length];
+        for (int i = 0; i < count; i++) {
+            int sender = i % SENDERS.length;
+            int roll = random.nextInt(100);
+            Kind kind = roll < 50 ? Kind.NEW_ORDER_SINGLE
+                : roll < 95 ? Kind.EXECUTION_REPORT
+                : roll < 98 ? Kind.LOGON
+                : Kind.LOGOUT;
+            messages[i] = build(kind, SENDERS[sender], "EXCHANGE", ++seqNums[sender], i, random);
+        }
+        return messages;
+    }
+
+    public static byte[][] toBytes(String[] messages) {
+        byte[][] bytes = new byte[messages.length][];
+        for (int i = 0; i < messages.length; i++) {
+            bytes[i] = messages[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return bytes;
+    }
+
+    private static String build(Kind kind, String sender, String target, int seqNum, int id, Random random) {
+        StringBuilder body = new StringBuilder(256);
+        switch (kind) {
+            case NEW_ORDER_SINGLE:
+                field(body, 35, "D");
+                header(body, sender, target, seqNum);
+                field(body, 11, "CL" + id);
+                field(body, 1, "ACC" + random.nextInt(50));
+                field(body, 21, "1");
+                field(body, 55, SYMBOLS[random.nextInt(SYMBOLS.length)]);
+                field(body, 54, random.nextBoolean() ? "1" : "2");
+                field(body, 60, "20240102-14:30:00.123");
+                field(body, 38, String.valueOf(100 * (1 + random.nextInt(500))));
+                field(body, 40, "2");
+                field(body, 44, price(random));
+                field(body, 59, "0");
+                break;
+            case EXECUTION_REPORT:
+                field(body, 35, "8");
+                header(body, sender, target, seqNum);
+                field(body, 37, "ORD" + id);
+                field(body, 11, "CL" + id);
+                field(body, 17, "EX" + id);
+                field(body, 150, "F");
+                field(body, 39, random.nextInt(4) == 0 ? "2" : "1");
+                field(body, 55, SYMBOLS[random.nextInt(SYMBOLS.length)]);
+                field(body, 54, random.nextBoolean() ? "1" : "2");
+                field(body, 38, "1000");
+                field(body, 32, String.valueOf(100 * (1 + random.nextInt(5))));
+                field(body, 31, price(random));
+                field(body, 151, "500");
+                field(body, 14, "500");
+                field(body, 6, price(random));
+                field(body, 60, "20240102-14:30:00.456");
+                break;
+            case LOGON:
+                field(body, 35, "A");
+                header(body, sender, target, seqNum);
+                field(body, 98, "0");
+                field(body, 108, "30");
+                field(body, 141, "Y");
+                field(body, 553, "user" + random.nextInt(10));
+                break;
+            case LOGOUT:
+                field(body, 35, "5");
+                header(body, sender, target, seqNum);
+                field(body, 58, "End of trading day");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+
+        StringBuilder message = new StringBuilder(body.length() + 32);
+        field(message, 8, "FIX.4.4");
+        field(message, 9, String.valueOf(body.length()));
+        message.append(body);
+        int checksum = 0;
+        for (int i = 0; i < message.length(); i++) {
+            checksum += message.charAt(i);
+        }
+        field(message, 10, String.format("%03d", checksum & 0xFF));
+        return message.toString();
+    }
+
+    private static void header(StringBuilder body, String sender, String target, int seqNum) {
+        field(body, 49, sender);
+        field(body, 56, target);
+        field(body, 34, String.valueOf(seqNum));
+        field(body, 52, "20240102-14:30:00.000");
+    }
+
+    private static String price(Random random) {
+        return String.valueOf((5000 + random.nextInt(20000)) / 100.0);
+    }
+
+    private static void field(StringBuilder sb, int tag, String value) {
+        sb.append(tag).append('=').append(value).append(SOH);
+    }
+}
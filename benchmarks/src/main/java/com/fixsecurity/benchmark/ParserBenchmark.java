@@ -0,0 +1,65 @@
+package com.fixsecurity.benchmark;
+
+import com.fixsecurity.engine.FIXMessageParser;
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.InvalidMessageException;
+import com.fixsecurity.engine.ParsedMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FIX parsing: QuickFIX/J based FIXMessageParser versus the zero-copy FIXTagValueParser,
+ * plus checksum validation, per message type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    private static final int MESSAGE_COUNT = 1024;
+
+    @Param({ "NEW_ORDER_SINGLE", "EXECUTION_REPORT", "LOGON", "LOGOUT" })
+    public FixMessages.Kind kind;
+
+    private final FIXMessageParser quickfixParser = new FIXMessageParser();
+    private final FIXTagValueParser tagValueParser = new FIXTagValueParser();
+    private String[] messages;
+    private byte[][] messageBytes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        messages = FixMessages.generate(kind, MESSAGE_COUNT, 42);
+        messageBytes = FixMessages.toBytes(messages);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = (i + 1) & (MESSAGE_COUNT - 1);
+        return i;
+    }
+
+    @Benchmark
+    public ParsedMessage quickfixParse() throws InvalidMessageException {
+        return quickfixParser.parse(messages[nextIndex()]);
+    }
+
+    @Benchmark
+    public ParsedMessage tagValueParse() throws InvalidMessageException {
+        return tagValueParser.parse(messageBytes[nextIndex()]);
+    }
+
+    @Benchmark
+    public ParsedMessage tagValueParseReusable() throws InvalidMessageException {
+        byte[] bytes = messageBytes[nextIndex()];
+        return tagValueParser.parseReusable(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public boolean validateChecksum() {
+        return quickfixParser.validateChecksum(messages[nextIndex()]);
+    }
+}
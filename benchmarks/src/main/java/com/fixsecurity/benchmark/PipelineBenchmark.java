@@ -0,0 +1,65 @@
+package com.fixsecurity.benchmark;
+
+import com.fixsecurity.compliance.ComplianceResult;
+import com.fixsecurity.compliance.ComplianceRuleEngine;
+import com.fixsecurity.engine.FIXMessageParser;
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.InvalidMessageException;
+import com.fixsecurity.engine.ParsedMessage;
+import com.fixsecurity.security.AnomalyDetector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full parse -> detect -> comply pipeline over a mixed order flow, comparing the
+ * original QuickFIX/J based path with the zero-copy, violations-only path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final int MESSAGE_COUNT = 4096;
+
+    private final FIXMessageParser quickfixParser = new FIXMessageParser();
+    private final FIXTagValueParser tagValueParser = new FIXTagValueParser();
+    private AnomalyDetector detector;
+    private ComplianceRuleEngine complianceEngine;
+    private String[] messages;
+    private byte[][] messageBytes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        detector = new AnomalyDetector();
+        complianceEngine = new ComplianceRuleEngine();
+        messages = FixMessages.generateMixed(MESSAGE_COUNT, 3);
+        messageBytes = FixMessages.toBytes(messages);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = (i + 1) & (MESSAGE_COUNT - 1);
+        return i;
+    }
+
+    @Benchmark
+    public void quickfixPipeline(Blackhole bh) throws InvalidMessageException {
+        ParsedMessage parsed = quickfixParser.parse(messages[nextIndex()]);
+        bh.consume(detector.detectAnomalies(parsed));
+        ComplianceResult result = complianceEngine.evaluate(parsed);
+        bh.consume(result);
+    }
+
+    @Benchmark
+    public void zeroCopyPipeline(Blackhole bh) throws InvalidMessageException {
+        byte[] bytes = messageBytes[nextIndex()];
+        ParsedMessage parsed = tagValueParser.parseReusable(bytes, 0, bytes.length);
+        bh.consume(detector.detectAnomalies(parsed));
+        bh.consume(complianceEngine.evaluateViolations(parsed));
+    }
+}
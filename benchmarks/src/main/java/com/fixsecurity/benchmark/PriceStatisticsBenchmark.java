@@ -0,0 +1,69 @@
+package com.fixsecurity.benchmark;
+
+import com.fixsecurity.security.PriceStatistics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PriceStatistics.observe over a large symbol universe: each order picks a random symbol and
+ * a price from that symbol's random walk, with an occasional far-off price. The statistics are
+ * shared and warmed with every symbol, so running with -t N measures stripe contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceStatisticsBenchmark {
+    private static final int ORDER_COUNT = 1 << 20;
+
+    @Param({ "50000" })
+    public int symbols;
+
+    private PriceStatistics statistics;
+    private String[] orderSymbols;
+    private double[] orderPrices;
+    private long[] orderTimes;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(21);
+        String[] names = new String[symbols];
+        double[] last = new double[symbols];
+        for (int s = 0; s < symbols; s++) {
+            names[s] = "SYM" + s;
+            last[s] = 10 + random.nextDouble() * 490;
+        }
+        orderSymbols = new String[ORDER_COUNT];
+        orderPrices = new double[ORDER_COUNT];
+        orderTimes = new long[ORDER_COUNT];
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            int s = random.nextInt(symbols);
+            last[s] *= 1 + random.nextGaussian() * 0.001;
+            orderSymbols[i] = names[s];
+            orderPrices[i] = random.nextInt(1000) == 0 ? last[s] * 1.2 : last[s];
+            orderTimes[i] = time += random.nextInt(2);
+        }
+
+        statistics = new PriceStatistics(symbols * 2, 30 * 60 * 1000L, 20, 0.0001);
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            statistics.observe(orderSymbols[i], orderPrices[i], orderTimes[i], 4.0);
+        }
+    }
+
+    @Benchmark
+    public boolean observe(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = (i + 1) & (ORDER_COUNT - 1);
+        return statistics.observe(orderSymbols[i], orderPrices[i], orderTimes[i], 4.0);
+    }
+}
@@ -0,0 +1,109 @@
+package com.fixsecurity.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.ParsedMessage;
+import com.fixsecurity.ingestion.KafkaMessageProducer;
+import com.fixsecurity.ingestion.ParsedMessageCodec;
+import com.fixsecurity.ingestion.ProducerSettings;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KafkaMessageProducer value encodings: the original Jackson JSON path against the binary
+ * ParsedMessageCodec, alone and packed into compressed Kafka record batches as the producer
+ * would send them. Setup prints the resulting bytes per message on the wire for each combination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProducerEncodingBenchmark {
+    private static final int MESSAGE_COUNT = 4096;
+    private static final int BATCH_MESSAGES = 256;
+
+    @Param({ "JSON", "BINARY" })
+    public ProducerSettings.Encoding encoding;
+
+    @Param({ "none", "lz4", "zstd" })
+    public String compression;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ParsedMessage[] messages;
+    private byte[][] keys;
+    private CompressionType compressionType;
+    private ByteBuffer batchBuffer;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        FIXTagValueParser parser = new FIXTagValueParser();
+        String[] raw = FixMessages.generateMixed(MESSAGE_COUNT, 17);
+        messages = new ParsedMessage[MESSAGE_COUNT];
+        keys = new byte[MESSAGE_COUNT][];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            messages[i] = parser.parse(raw[i]);
+            keys[i] = KafkaMessageProducer.sessionKey(messages[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        compressionType = CompressionType.forName(compression);
+        batchBuffer = ByteBuffer.allocate(4 * 1024 * 1024);
+
+        long valueBytes = 0;
+        long wireBytes = 0;
+        for (int start = 0; start < MESSAGE_COUNT; start += BATCH_MESSAGES) {
+            for (int i = start; i < start + BATCH_MESSAGES; i++) {
+                valueBytes += encode(messages[i]).length;
+            }
+            wireBytes += buildBatch(start).sizeInBytes();
+        }
+        System.out.printf("%n%s/%s: %.1f value bytes/message, %.1f wire bytes/message%n",
+            encoding, compression, (double) valueBytes / MESSAGE_COUNT, (double) wireBytes / MESSAGE_COUNT);
+    }
+
+    private byte[] encode(ParsedMessage message) throws Exception {
+        if (encoding == ProducerSettings.Encoding.BINARY) {
+            return ParsedMessageCodec.encode(message, true);
+        }
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    private MemoryRecords buildBatch(int start) throws Exception {
+        batchBuffer.clear();
+        MemoryRecordsBuilder builder = MemoryRecords.builder(batchBuffer, compressionType, TimestampType.CREATE_TIME, 0L);
+        for (int i = start; i < start + BATCH_MESSAGES; i++) {
+            builder.append(0L, keys[i], encode(messages[i]));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Encode one message value
+     */
+    @Benchmark
+    public byte[] encodeValue() throws Exception {
+        int i = next;
+        next = (i + 1) & (MESSAGE_COUNT - 1);
+        return encode(messages[i]);
+    }
+
+    /**
+     * Encode a producer batch of messages and compress it into a Kafka record batch
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_MESSAGES)
+    public void encodeRecordBatch(Blackhole bh) throws Exception {
+        int start = next;
+        next = (start + BATCH_MESSAGES) & (MESSAGE_COUNT - 1);
+        bh.consume(buildBatch(start).sizeInBytes());
+    }
+}
@@ -7,6 +7,27 @@ import java.util.List;
  * Result of compliance evaluation
  */
 public class ComplianceResult {
+    /**
+     * Shared result for messages that passed every rule in violations-only mode.
+     * It has no evaluations and cannot be modified.
+     */
+    public static final ComplianceResult PASSED = new ComplianceResult() {
+        @Override
+        public void addEvaluation(RuleEvaluation evaluation) {
+            throw new UnsupportedOperationException("ComplianceResult.PASSED is immutable");
+        }
+        
+        @Override
+        public List<RuleEvaluation> getEvaluations() {
+            return List.of();
+        }
+        
+        @Override
+        public void setCompliant(boolean compliant) {
+            throw new UnsupportedOperationException("ComplianceResult.PASSED is immutable");
+        }
+    };
+    
     private List<RuleEvaluation> evaluations = new ArrayList<>();
     private boolean compliant = true;
     
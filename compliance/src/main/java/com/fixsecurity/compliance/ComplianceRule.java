@@ -2,31 +2,82 @@ package com.fixsecurity.compliance;
 
 import com.fixsecurity.engine.ParsedMessage;
 
+import java.util.Set;
+
 /**
  * Abstract base class for compliance rules
  */
 public abstract class ComplianceRule {
+    private static final int[] NO_TAGS = new int[0];
+
     private String ruleId;
     private String name;
     private String description;
-    
+    private final Set<String> msgTypes;
+    private final int[] requiredTags;
+
     public ComplianceRule(String ruleId, String name) {
+        this(ruleId, name, Set.of());
+    }
+
+    /**
+     * Create a rule that only applies to the given MsgTypes and to messages carrying all requiredTags.
+     * The engine indexes rules by these declarations, so non-matching messages never reach the rule.
+     * An empty msgTypes set means the rule applies to every MsgType.
+     */
+    public ComplianceRule(String ruleId, String name, Set<String> msgTypes, int... requiredTags) {
         this.ruleId = ruleId;
         this.name = name;
+        this.msgTypes = Set.copyOf(msgTypes);
+        this.requiredTags = requiredTags.length == 0 ? NO_TAGS : requiredTags.clone();
     }
-    
+
     /**
-     * Check if this rule applies to the given message
+     * Check if this rule applies to the given message, beyond its declared MsgTypes and required tags.
+     * Defaults to true for rules fully described by their declarations.
      */
-    public abstract boolean matches(ParsedMessage message);
-    
+    public boolean matches(ParsedMessage message) {
+        return true;
+    }
+
     /**
      * Evaluate the message against this rule
      */
     public abstract RuleEvaluation evaluate(ParsedMessage message);
-    
+
+    /**
+     * Allocation-free pass/fail check used by {@link ComplianceRuleEngine#evaluateViolations}.
+     * Defaults to {@link #evaluate}; rules on the hot path override it together with {@link #violation}.
+     */
+    public boolean isCompliant(ParsedMessage message) {
+        return evaluate(message).isCompliant();
+    }
+
+    /**
+     * Build the evaluation for a message that failed {@link #isCompliant}. Defaults to {@link #evaluate}.
+     */
+    public RuleEvaluation violation(ParsedMessage message) {
+        return evaluate(message);
+    }
+
+    /**
+     * True if the message carries every tag this rule requires
+     */
+    boolean hasRequiredTags(ParsedMessage message) {
+        for (int tag : requiredTags) {
+            if (!message.hasField(tag)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public String getRuleId() { return ruleId; }
     public String getName() { return name; }
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
+
+    /** MsgTypes this rule applies to; empty means all */
+    public Set<String> getMsgTypes() { return msgTypes; }
+    public int[] getRequiredTags() { return requiredTags.clone(); }
 }
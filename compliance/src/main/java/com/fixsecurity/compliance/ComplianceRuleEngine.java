@@ -6,10 +6,21 @@ import java.util.regex.Pattern;
 
 /**
  * Compliance Rule Engine
- * Evaluates FIX messages against regulatory compliance rules
+ * Evaluates FIX messages against regulatory compliance rules.
+ * Rules are compiled into an immutable dispatch table keyed by MsgType, so each message
+ * only visits the rules declared for its type. Adding a rule or replacing the rule set rebuilds
+ * the table and publishes it atomically, so evaluation may run concurrently with
+ * {@link #addRule} and {@link #replaceRuleSet}.
+ * <p>
+ * Rules come from two sources: rules added in code, and a rule set loaded from a declarative
+ * file (see {@link RuleSetCompiler}), which is replaced as a whole on reload. A rule set rule
+ * with the same ID as a code rule takes its place, so limits such as PRE-TRADE-001's can be
+ * changed without a redeploy.
  */
 public class ComplianceRuleEngine {
-    private List<ComplianceRule> rules = new ArrayList<>();
+    private volatile DispatchTable dispatch = DispatchTable.build(List.of());
+    private final List<ComplianceRule> codeRules = new ArrayList<>();
+    private List<ComplianceRule> ruleSet = List.of();
     
     public ComplianceRuleEngine() {
         loadDefaultRules();
@@ -21,8 +32,8 @@ public class ComplianceRuleEngine {
     public ComplianceResult evaluate(ParsedMessage message) {
         ComplianceResult result = new ComplianceResult();
         
-        for (ComplianceRule rule : rules) {
-            if (rule.matches(message)) {
+        for (ComplianceRule rule : dispatch.rulesFor(message.getMsgType())) {
+            if (rule.hasRequiredTags(message) && rule.matches(message)) {
                 RuleEvaluation evaluation = rule.evaluate(message);
                 result.addEvaluation(evaluation);
                 
@@ -36,55 +47,124 @@ public class ComplianceRuleEngine {
     }
     
     /**
-     * Add a custom compliance rule
+     * Evaluate a message in violations-only mode.
+     * Rules are checked with {@link ComplianceRule#isCompliant}; only failing rules produce a
+     * {@link RuleEvaluation}, and its message text is formatted lazily. When every rule passes
+     * the shared {@link ComplianceResult#PASSED} is returned, so the pass path allocates nothing.
      */
-    public void addRule(ComplianceRule rule) {
-        rules.add(rule);
+    public ComplianceResult evaluateViolations(ParsedMessage message) {
+        ComplianceResult result = null;
+        
+        for (ComplianceRule rule : dispatch.rulesFor(message.getMsgType())) {
+            if (rule.hasRequiredTags(message) && rule.matches(message) && !rule.isCompliant(message)) {
+                if (result == null) {
+                    result = new ComplianceResult();
+                }
+                result.addEvaluation(rule.violation(message));
+            }
+        }
+        
+        return result != null ? result : ComplianceResult.PASSED;
+    }
+    
+    /**
+     * Add a custom compliance rule (copy-on-write: the dispatch table is rebuilt and swapped in)
+     */
+    public synchronized void addRule(ComplianceRule rule) {
+        codeRules.add(rule);
+        rebuild();
+    }
+    
+    /**
+     * Replace the rules of the previous rule set, if any, with the given ones in one atomic swap.
+     * Messages being evaluated finish against the old rules; later ones see only the new rules.
+     */
+    public synchronized void replaceRuleSet(List<ComplianceRule> rules) {
+        ruleSet = List.copyOf(rules);
+        rebuild();
+    }
+    
+    /**
+     * Code rules in registration order, each replaced by the rule set rule with its ID, followed
+     * by the remaining rule set rules
+     */
+    private void rebuild() {
+        Map<String, ComplianceRule> overrides = new HashMap<>();
+        for (ComplianceRule rule : ruleSet) {
+            overrides.put(rule.getRuleId(), rule);
+        }
+        List<ComplianceRule> rules = new ArrayList<>(codeRules.size() + ruleSet.size());
+        for (ComplianceRule rule : codeRules) {
+            ComplianceRule override = overrides.remove(rule.getRuleId());
+            rules.add(override != null ? override : rule);
+        }
+        for (ComplianceRule rule : ruleSet) {
+            if (overrides.containsKey(rule.getRuleId())) {
+                rules.add(rule);
+            }
+        }
+        dispatch = DispatchTable.build(rules);
+    }
+    
+    /**
+     * Rules currently registered, in evaluation order
+     */
+    public List<ComplianceRule> getRules() {
+        return dispatch.rules;
     }
     
     private void loadDefaultRules() {
         // MiFID II - Best Execution Rule
-        rules.add(new ComplianceRule("MIFID-II-001", "Best Execution Check") {
+        addRule(new ComplianceRule("MIFID-II-001", "Best Execution Check", Set.of("D")) { // NewOrderSingle
             @Override
-            public boolean matches(ParsedMessage message) {
-                return "D".equals(message.getMsgType()); // NewOrderSingle
+            public boolean isCompliant(ParsedMessage message) {
+                // Placeholder: Check if price is within acceptable range
+                // In production, this would compare against market prices
+                return true;
             }
             
             @Override
             public RuleEvaluation evaluate(ParsedMessage message) {
-                // Placeholder: Check if price is within acceptable range
-                // In production, this would compare against market prices
-                return new RuleEvaluation(this, true, "Price within acceptable range");
+                return new RuleEvaluation(this, isCompliant(message), "Price within acceptable range");
             }
         });
         
         // Pre-trade Compliance - Order Size Limit
-        rules.add(new ComplianceRule("PRE-TRADE-001", "Order Size Limit") {
+        addRule(new ComplianceRule("PRE-TRADE-001", "Order Size Limit", Set.of("D")) {
+            private final double maxOrderSize = 1000000.0; // Example limit
+            
             @Override
-            public boolean matches(ParsedMessage message) {
-                return "D".equals(message.getMsgType());
+            public boolean isCompliant(ParsedMessage message) {
+                return message.getOrderQty() <= maxOrderSize;
+            }
+            
+            @Override
+            public RuleEvaluation violation(ParsedMessage message) {
+                double orderQty = message.getOrderQty();
+                return new RuleEvaluation(this, false,
+                    () -> "Order size " + orderQty + " exceeds limit " + maxOrderSize);
             }
             
             @Override
             public RuleEvaluation evaluate(ParsedMessage message) {
-                double maxOrderSize = 1000000.0; // Example limit
-                if (message.getOrderQty() > maxOrderSize) {
-                    return new RuleEvaluation(this, false, 
-                        "Order size " + message.getOrderQty() + " exceeds limit " + maxOrderSize);
+                if (!isCompliant(message)) {
+                    return violation(message);
                 }
                 return new RuleEvaluation(this, true, "Order size within limits");
             }
         });
         
         // Required Fields Check
-        rules.add(new ComplianceRule("DATA-QUALITY-001", "Required Fields Check") {
+        addRule(new ComplianceRule("DATA-QUALITY-001", "Required Fields Check", Set.of("D")) {
             @Override
-            public boolean matches(ParsedMessage message) {
-                return "D".equals(message.getMsgType());
+            public boolean isCompliant(ParsedMessage message) {
+                return message.getSymbol() != null && !message.getSymbol().isEmpty()
+                    && message.getSide() != null && !message.getSide().isEmpty()
+                    && message.getOrderQty() > 0;
             }
             
             @Override
-            public RuleEvaluation evaluate(ParsedMessage message) {
+            public RuleEvaluation violation(ParsedMessage message) {
                 List<String> missingFields = new ArrayList<>();
                 
                 if (message.getSymbol() == null || message.getSymbol().isEmpty()) {
@@ -97,13 +177,67 @@ public class ComplianceRuleEngine {
                     missingFields.add("OrderQty");
                 }
                 
-                if (!missingFields.isEmpty()) {
-                    return new RuleEvaluation(this, false, 
-                        "Missing required fields: " + String.join(", ", missingFields));
+                return new RuleEvaluation(this, false,
+                    () -> "Missing required fields: " + String.join(", ", missingFields));
+            }
+            
+            @Override
+            public RuleEvaluation evaluate(ParsedMessage message) {
+                if (!isCompliant(message)) {
+                    return violation(message);
                 }
-                
                 return new RuleEvaluation(this, true, "All required fields present");
             }
         });
     }
+    
+    /**
+     * Immutable MsgType -> rules index. Rules without declared MsgTypes are merged into
+     * every entry and also form the fallback list, preserving registration order.
+     */
+    private static final class DispatchTable {
+        private final List<ComplianceRule> rules;
+        private final Map<String, ComplianceRule[]> byMsgType;
+        private final ComplianceRule[] anyMsgType;
+        
+        private DispatchTable(List<ComplianceRule> rules, Map<String, ComplianceRule[]> byMsgType,
+                              ComplianceRule[] anyMsgType) {
+            this.rules = rules;
+            this.byMsgType = byMsgType;
+            this.anyMsgType = anyMsgType;
+        }
+        
+        static DispatchTable build(List<ComplianceRule> rules) {
+            Set<String> msgTypes = new LinkedHashSet<>();
+            List<ComplianceRule> wildcard = new ArrayList<>();
+            for (ComplianceRule rule : rules) {
+                if (rule.getMsgTypes().isEmpty()) {
+                    wildcard.add(rule);
+                } else {
+                    msgTypes.addAll(rule.getMsgTypes());
+                }
+            }
+            
+            Map<String, ComplianceRule[]> byMsgType = new HashMap<>();
+            for (String msgType : msgTypes) {
+                List<ComplianceRule> applicable = new ArrayList<>();
+                for (ComplianceRule rule : rules) {
+                    if (rule.getMsgTypes().isEmpty() || rule.getMsgTypes().contains(msgType)) {
+                        applicable.add(rule);
+                    }
+                }
+                byMsgType.put(msgType, applicable.toArray(new ComplianceRule[0]));
+            }
+            return new DispatchTable(List.copyOf(rules), Map.copyOf(byMsgType),
+                wildcard.toArray(new ComplianceRule[0]));
+        }
+        
+        ComplianceRule[] rulesFor(String msgType) {
+            if (msgType == null) {
+                return anyMsgType;
+            }
+            ComplianceRule[] applicable = byMsgType.get(msgType);
+            return applicable != null ? applicable : anyMsgType;
+        }
+    }
 }
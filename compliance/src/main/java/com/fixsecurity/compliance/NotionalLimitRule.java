@@ -0,0 +1,74 @@
+package com.fixsecurity.compliance;
+
+import com.fixsecurity.engine.ParsedMessage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Daily notional limit per account.
+ * <p>
+ * Fills (ExecutionReports with LastQty) add LastQty * LastPx to the account's total for the
+ * current UTC day, and a fill that takes the total over the limit is flagged. A NewOrderSingle is
+ * flagged if its OrderQty * Price would take the day's executed total over the limit; orders
+ * themselves do not count until they fill. Accounts are Account(1), or the owning session when
+ * it is absent.
+ */
+public class NotionalLimitRule extends StatefulComplianceRule {
+    public static final String RULE_ID = "LIMIT-NOTIONAL-001";
+    public static final int DEFAULT_MAX_ACCOUNTS = 65_536;
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final Limits limits;
+    private final WindowedSums notional;
+
+    public NotionalLimitRule(double dailyLimit) {
+        this(dailyLimit, Map.of(), DEFAULT_MAX_ACCOUNTS, System::currentTimeMillis);
+    }
+
+    /**
+     * @param dailyLimit  limit for accounts without an override
+     * @param overrides   limits by account
+     * @param maxAccounts accounts tracked at once; see {@link WindowedSums}
+     * @param clock       epoch milliseconds
+     */
+    public NotionalLimitRule(double dailyLimit, Map<String, Double> overrides, int maxAccounts, LongSupplier clock) {
+        super(RULE_ID, "Daily Notional Limit", Set.of("D", "8"), clock);
+        this.limits = new Limits(dailyLimit, overrides);
+        this.notional = new WindowedSums(maxAccounts, DAY_MILLIS, 1);
+    }
+
+    @Override
+    public boolean matches(ParsedMessage message) {
+        return "D".equals(message.getMsgType()) || isFill(message);
+    }
+
+    @Override
+    public boolean isCompliant(ParsedMessage message) {
+        long key = accountKey(message);
+        long now = clock.getAsLong();
+        if ("D".equals(message.getMsgType())) {
+            return notional.sum(key, now) + message.getOrderQty() * message.getPrice() <= limits.forKey(key);
+        }
+        return notional.add(key, now, message.getLastQty() * message.getLastPx()) <= limits.forKey(key);
+    }
+
+    @Override
+    public RuleEvaluation violation(ParsedMessage message) {
+        long key = accountKey(message);
+        String account = account(message);
+        double executed = notional.sum(key, clock.getAsLong());
+        double limit = limits.forKey(key);
+        if ("D".equals(message.getMsgType())) {
+            double order = message.getOrderQty() * message.getPrice();
+            return new RuleEvaluation(this, false, () -> "Order notional " + order + " on top of " + executed
+                + " executed today would exceed account " + account + " daily limit " + limit);
+        }
+        return new RuleEvaluation(this, false,
+            () -> "Executed notional " + executed + " exceeds account " + account + " daily limit " + limit);
+    }
+
+    /** Fills for new keys that were not counted because every slot held live state */
+    public long getUntracked() { return notional.getUntracked(); }
+}
@@ -0,0 +1,60 @@
+package com.fixsecurity.compliance;
+
+import com.fixsecurity.engine.ParsedMessage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Order entry rate limit per trader.
+ * <p>
+ * Counts NewOrderSingle, OrderCancelRequest and OrderCancelReplaceRequest messages per trader
+ * (SenderCompID, qualified by SenderSubID when present) over a sliding one-second window with
+ * 100 ms resolution, and flags each message beyond the limit. Flagged messages still count, so
+ * a trader has to slow down rather than retry to get back under it.
+ */
+public class OrderRateLimitRule extends StatefulComplianceRule {
+    public static final String RULE_ID = "LIMIT-RATE-001";
+    public static final int DEFAULT_MAX_TRADERS = 16_384;
+    private static final long BUCKET_MILLIS = 100;
+    private static final int BUCKETS = 10;
+
+    private final Limits limits;
+    private final WindowedSums counts;
+
+    public OrderRateLimitRule(int maxPerSecond) {
+        this(maxPerSecond, Map.of(), DEFAULT_MAX_TRADERS, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxPerSecond limit for traders without an override
+     * @param overrides    limits by trader, as "SenderCompID" or "SenderCompID/SenderSubID"
+     * @param maxTraders   traders tracked at once; see {@link WindowedSums}
+     * @param clock        epoch milliseconds
+     */
+    public OrderRateLimitRule(int maxPerSecond, Map<String, Double> overrides, int maxTraders, LongSupplier clock) {
+        super(RULE_ID, "Order Rate Limit", Set.of("D", "F", "G"), clock);
+        this.limits = new Limits(maxPerSecond, overrides);
+        this.counts = new WindowedSums(maxTraders, BUCKET_MILLIS, BUCKETS);
+    }
+
+    @Override
+    public boolean isCompliant(ParsedMessage message) {
+        long key = traderKey(message);
+        return counts.add(key, clock.getAsLong(), 1) <= limits.forKey(key);
+    }
+
+    @Override
+    public RuleEvaluation violation(ParsedMessage message) {
+        long key = traderKey(message);
+        double count = counts.sum(key, clock.getAsLong());
+        double limit = limits.forKey(key);
+        String sender = message.getSenderCompID();
+        return new RuleEvaluation(this, false,
+            () -> "Trader " + sender + " sent " + (long) count + " orders in the last second, limit " + (long) limit);
+    }
+
+    /** Orders for new keys that were not counted because every slot held live state */
+    public long getUntracked() { return counts.getUntracked(); }
+}
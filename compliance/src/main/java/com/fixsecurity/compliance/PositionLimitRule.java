@@ -0,0 +1,91 @@
+package com.fixsecurity.compliance;
+
+import com.fixsecurity.engine.FieldHash;
+import com.fixsecurity.engine.ParsedMessage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Net position limit per account and symbol.
+ * <p>
+ * Fills move the account's position in the symbol by LastQty, up for buys and down for sells,
+ * and a fill that leaves the position beyond the symbol's limit in either direction is flagged
+ * unless it reduced the position. A NewOrderSingle is flagged if filling it completely would do
+ * the same. Positions are net traded quantity since the rule was created; flat positions free
+ * their slot.
+ */
+public class PositionLimitRule extends StatefulComplianceRule {
+    public static final String RULE_ID = "LIMIT-POSITION-001";
+    public static final int DEFAULT_MAX_POSITIONS = 131_072;
+
+    private final Limits limits;
+    private final WindowedSums positions;
+
+    public PositionLimitRule(double maxPosition) {
+        this(maxPosition, Map.of(), DEFAULT_MAX_POSITIONS, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxPosition  absolute limit for symbols without an override
+     * @param overrides    limits by symbol
+     * @param maxPositions account/symbol pairs tracked at once; see {@link WindowedSums}
+     * @param clock        epoch milliseconds
+     */
+    public PositionLimitRule(double maxPosition, Map<String, Double> overrides, int maxPositions, LongSupplier clock) {
+        super(RULE_ID, "Net Position Limit", Set.of("D", "8"), clock);
+        this.limits = new Limits(maxPosition, overrides);
+        this.positions = new WindowedSums(maxPositions, WindowedSums.UNBOUNDED, 1);
+    }
+
+    @Override
+    public boolean matches(ParsedMessage message) {
+        return (message.getSymbol() != null || message.hasField(TAG_SYMBOL)) && sideSign(message) != 0
+            && ("D".equals(message.getMsgType()) || isFill(message));
+    }
+
+    @Override
+    public boolean isCompliant(ParsedMessage message) {
+        long key = positionKey(message);
+        long now = clock.getAsLong();
+        double limit = limits.forKey(hashSymbol(message, FieldHash.SEED));
+        if ("D".equals(message.getMsgType())) {
+            double position = positions.sum(key, now);
+            return withinLimit(position, position + sideSign(message) * message.getOrderQty(), limit);
+        }
+        double delta = sideSign(message) * message.getLastQty();
+        double position = positions.add(key, now, delta);
+        return withinLimit(position - delta, position, limit);
+    }
+
+    @Override
+    public RuleEvaluation violation(ParsedMessage message) {
+        double position = positions.sum(positionKey(message), clock.getAsLong());
+        double limit = limits.forKey(hashSymbol(message, FieldHash.SEED));
+        String account = account(message);
+        String symbol = symbol(message);
+        if ("D".equals(message.getMsgType())) {
+            double after = position + sideSign(message) * message.getOrderQty();
+            return new RuleEvaluation(this, false, () -> "Order would take account " + account + " position in "
+                + symbol + " from " + position + " to " + after + ", beyond limit " + limit);
+        }
+        return new RuleEvaluation(this, false,
+            () -> "Account " + account + " position " + position + " in " + symbol + " exceeds limit " + limit);
+    }
+
+    /**
+     * Beyond the limit is acceptable only when moving back towards it
+     */
+    private static boolean withinLimit(double before, double after, double limit) {
+        return Math.abs(after) <= limit || Math.abs(after) < Math.abs(before);
+    }
+
+    /** Hash of "account/symbol" */
+    private static long positionKey(ParsedMessage message) {
+        return hashSymbol(message, FieldHash.hash("/", accountKey(message)));
+    }
+
+    /** Fills for new keys that were not counted because every slot held live state */
+    public long getUntracked() { return positions.getUntracked(); }
+}
@@ -1,5 +1,7 @@
 package com.fixsecurity.compliance;
 
+import java.util.function.Supplier;
+
 /**
  * Result of evaluating a single compliance rule
  */
@@ -7,6 +9,7 @@ public class RuleEvaluation {
     private ComplianceRule rule;
     private boolean compliant;
     private String message;
+    private Supplier<String> messageSupplier;
     private long timestamp;
     
     public RuleEvaluation(ComplianceRule rule, boolean compliant, String message) {
@@ -16,8 +19,30 @@ public class RuleEvaluation {
         this.timestamp = System.currentTimeMillis();
     }
     
+    /**
+     * Create an evaluation whose message text is only formatted when {@link #getMessage()} is called
+     */
+    public RuleEvaluation(ComplianceRule rule, boolean compliant, Supplier<String> messageSupplier) {
+        this.rule = rule;
+        this.compliant = compliant;
+        this.messageSupplier = messageSupplier;
+        this.timestamp = System.currentTimeMillis();
+    }
+    
     public ComplianceRule getRule() { return rule; }
     public boolean isCompliant() { return compliant; }
-    public String getMessage() { return message; }
+    
+    /**
+     * Message text, formatted on first call if it was supplied lazily. Synchronized so an
+     * evaluation handed to several threads formats its message once and never sees it half-set.
+     */
+    public synchronized String getMessage() {
+        if (message == null && messageSupplier != null) {
+            message = messageSupplier.get();
+            messageSupplier = null;
+        }
+        return message;
+    }
+    
     public long getTimestamp() { return timestamp; }
 }
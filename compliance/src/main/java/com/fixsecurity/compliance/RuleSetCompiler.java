@@ -0,0 +1,680 @@
+package com.fixsecurity.compliance;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fixsecurity.engine.FIXFieldIndex;
+import com.fixsecurity.engine.FlyweightParsedMessage;
+import com.fixsecurity.engine.ParsedMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compiles declarative compliance rules, written as JSON or YAML, into {@link ComplianceRule}s.
+ * <pre>
+ * rules:
+ *   - id: PRE-TRADE-001
+ *     name: Order Size Limit
+ *     msgTypes: [D]
+ *     requiredTags: [OrderQty]      # optional, as in the ComplianceRule constructor
+ *     when:                         # optional: the rule only applies if every condition holds
+ *       - { field: OrdType, op: in, value: ["1", "2"] }
+ *     require:                      # the message is compliant if every condition holds
+ *       - field: OrderQty
+ *         op: "&lt;="
+ *         value: 1000000            # default threshold; may be omitted when limits are given
+ *         per: Account              # optional threshold per value of another field
+ *         limits: { ACC7: 250000 }
+ * </pre>
+ * Fields are tag numbers or the names in {@link #FIELD_TAGS}. {@code < <= > >=} compare
+ * numerically, as do {@code == !=} with a numeric value; with a string value they compare text,
+ * like {@code in} and {@code notIn} with a list. {@code present} and {@code absent} test the tag.
+ * <p>
+ * Names, operators, thresholds and value sets are resolved once here: each condition becomes a
+ * lambda specialized for its operator and field, reading well-known fields through the typed
+ * ParsedMessage getters and other tags from the flyweight's field index, so evaluating a message
+ * does no lookups by name and no operator dispatch.
+ */
+public final class RuleSetCompiler {
+
+    /** Field names accepted in rule sets */
+    public static final Map<String, Integer> FIELD_TAGS = Map.ofEntries(
+        Map.entry("Account", 1), Map.entry("AvgPx", 6), Map.entry("ClOrdID", 11), Map.entry("CumQty", 14),
+        Map.entry("ExecID", 17), Map.entry("HandlInst", 21), Map.entry("LastPx", 31), Map.entry("LastQty", 32),
+        Map.entry("MsgSeqNum", 34), Map.entry("MsgType", 35), Map.entry("OrderID", 37), Map.entry("OrderQty", 38),
+        Map.entry("OrdStatus", 39), Map.entry("OrdType", 40), Map.entry("Price", 44), Map.entry("SenderCompID", 49),
+        Map.entry("Side", 54), Map.entry("Symbol", 55), Map.entry("TargetCompID", 56), Map.entry("Text", 58),
+        Map.entry("TimeInForce", 59), Map.entry("ExecType", 150), Map.entry("LeavesQty", 151),
+        Map.entry("Username", 553));
+
+    private static final Map<Integer, Field> TYPED_FIELDS = new HashMap<>();
+    private static final MethodType RULE_CONSTRUCTOR = MethodType.methodType(void.class,
+        String.class, String.class, Set.class, int[].class, Condition[].class, Condition[].class);
+    private static final Map<Class<?>, byte[]> TEMPLATE_BYTES = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(RuleSetCompiler.class);
+    private static final AtomicLong specializationFallbacks = new AtomicLong();
+
+    // The parsers fill body getters only for the MsgTypes listed; header getters for every message
+    static {
+        typedNumber("OrderQty", 38, ParsedMessage::getOrderQty, "D");
+        typedNumber("Price", 44, ParsedMessage::getPrice, "D");
+        typedNumber("LastQty", 32, ParsedMessage::getLastQty, "8");
+        typedNumber("LastPx", 31, ParsedMessage::getLastPx, "8");
+        typedNumber("CumQty", 14, ParsedMessage::getCumQty, "8");
+        typedNumber("AvgPx", 6, ParsedMessage::getAvgPx, "8");
+        typedNumber("MsgSeqNum", 34, ParsedMessage::getMsgSeqNum);
+        typedText("MsgType", 35, ParsedMessage::getMsgType);
+        typedText("SenderCompID", 49, ParsedMessage::getSenderCompID);
+        typedText("TargetCompID", 56, ParsedMessage::getTargetCompID);
+        typedText("Symbol", 55, ParsedMessage::getSymbol, "D");
+        typedText("Side", 54, ParsedMessage::getSide, "D");
+        typedText("OrdType", 40, ParsedMessage::getOrdType, "D");
+        typedText("TimeInForce", 59, ParsedMessage::getTimeInForce, "D");
+        typedText("ClOrdID", 11, ParsedMessage::getClOrdID, "D", "8");
+        typedText("OrderID", 37, ParsedMessage::getOrderID, "8");
+        typedText("ExecID", 17, ParsedMessage::getExecID, "8");
+        typedText("ExecType", 150, ParsedMessage::getExecType, "8");
+        typedText("OrdStatus", 39, ParsedMessage::getOrdStatus, "8");
+        typedText("Text", 58, ParsedMessage::getText, "5");
+        typedText("Username", 553, ParsedMessage::getUsername, "A");
+    }
+
+    private RuleSetCompiler() {
+    }
+
+    /**
+     * Read and compile a rule set file; files ending in .yaml or .yml are read as YAML, others as JSON
+     */
+    public static List<ComplianceRule> load(Path file) throws IOException {
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+        String name = file.getFileName().toString().toLowerCase();
+        return compile(name.endsWith(".yaml") || name.endsWith(".yml") ? parseYaml(text) : parseJson(text));
+    }
+
+    public static Map<String, Object> parseJson(String text) throws IOException {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> document = new ObjectMapper().readValue(text, Map.class);
+        return document;
+    }
+
+    public static Map<String, Object> parseYaml(String text) {
+        Object document = new Yaml(new SafeConstructor(new LoaderOptions())).load(text);
+        if (!(document instanceof Map)) {
+            throw new IllegalArgumentException("Rule set must be a mapping with a 'rules' list");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) document;
+        return map;
+    }
+
+    /**
+     * Compile a parsed rule set document
+     *
+     * @throws IllegalArgumentException if the document is not a valid rule set
+     */
+    public static List<ComplianceRule> compile(Map<String, Object> document) {
+        Object rules = document.get("rules");
+        if (!(rules instanceof List)) {
+            throw new IllegalArgumentException("Rule set must have a 'rules' list");
+        }
+        List<ComplianceRule> compiled = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (Object item : (List<?>) rules) {
+            if (!(item instanceof Map)) {
+                throw new IllegalArgumentException("Each rule must be a mapping");
+            }
+            ComplianceRule rule = compileRule((Map<?, ?>) item);
+            if (!ids.add(rule.getRuleId())) {
+                throw new IllegalArgumentException("Duplicate rule id " + rule.getRuleId());
+            }
+            compiled.add(rule);
+        }
+        return compiled;
+    }
+
+    private static ComplianceRule compileRule(Map<?, ?> spec) {
+        Object id = spec.get("id");
+        if (id == null || id.toString().isBlank()) {
+            throw new IllegalArgumentException("Rule without id: " + spec);
+        }
+        String ruleId = id.toString();
+        try {
+            Object name = spec.get("name");
+            Set<String> msgTypes = new LinkedHashSet<>(strings(spec.get("msgTypes")));
+            List<String> tagNames = strings(spec.get("requiredTags"));
+            int[] requiredTags = new int[tagNames.size()];
+            for (int i = 0; i < requiredTags.length; i++) {
+                requiredTags[i] = tagOf(tagNames.get(i));
+            }
+            Condition[] when = conditions(spec.get("when"), msgTypes);
+            Condition[] require = conditions(spec.get("require"), msgTypes);
+            if (require.length == 0) {
+                throw new IllegalArgumentException("'require' must list at least one condition");
+            }
+            CompiledRule rule = specialize(ruleId, name != null ? name.toString() : ruleId,
+                msgTypes, requiredTags, when, require);
+            Object description = spec.get("description");
+            if (description != null) {
+                rule.setDescription(description.toString());
+            }
+            return rule;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Rule " + ruleId + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Instantiate the rule as its own hidden copy of {@link SpecializedRule}, or of
+     * {@link SpecializedConditionalRule} if it has "when" conditions, whose checks are constants of
+     * that class. Falls back to the generic rule classes, with a warning counted in
+     * {@link #getSpecializationFallbacks}, if the copy cannot be defined. Copies are not strongly
+     * held, so rules dropped by a reload are unloaded.
+     */
+    private static CompiledRule specialize(String ruleId, String name, Set<String> msgTypes, int[] requiredTags,
+                                           Condition[] when, Condition[] require) {
+        Class<?> template = when.length == 0 ? SpecializedRule.class : SpecializedConditionalRule.class;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(
+                templateBytes(template), List.of(all(require), all(when)), true,
+                MethodHandles.Lookup.ClassOption.NESTMATE);
+            return (CompiledRule) lookup.findConstructor(lookup.lookupClass(), RULE_CONSTRUCTOR)
+                .invoke(ruleId, name, msgTypes, requiredTags, when, require);
+        } catch (Throwable e) {
+            specializationFallbacks.incrementAndGet();
+            log.warn("Cannot specialize compliance rule {}, using generic form", ruleId, e);
+            return when.length == 0 ? new CompiledRule(ruleId, name, msgTypes, requiredTags, when, require)
+                : new ConditionalRule(ruleId, name, msgTypes, requiredTags, when, require);
+        }
+    }
+
+    /**
+     * Rules compiled to the generic form because their specialized copy could not be defined, e.g.
+     * when the template class files are not readable as resources. Such rules still evaluate
+     * correctly, only more slowly, so a non-zero count is worth alerting on.
+     */
+    public static long getSpecializationFallbacks() {
+        return specializationFallbacks.get();
+    }
+
+    private static byte[] templateBytes(Class<?> template) throws IOException {
+        byte[] bytes = TEMPLATE_BYTES.get(template);
+        if (bytes == null) {
+            String resource = template.getName().substring(template.getPackageName().length() + 1) + ".class";
+            try (InputStream in = RuleSetCompiler.class.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IOException("Missing class file " + resource);
+                }
+                bytes = in.readAllBytes();
+            }
+            TEMPLATE_BYTES.put(template, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Check number {@code index} (0 for "require", 1 for "when") of a specialized rule copy
+     */
+    static Check classData(MethodHandles.Lookup lookup, int index) {
+        try {
+            return MethodHandles.classDataAt(lookup, ConstantDescs.DEFAULT_NAME, Check.class, index);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * One check that holds when every condition holds, in order. Up to four conditions are tested
+     * by a single lambda, keeping the inlined call chain shallow.
+     */
+    private static Check all(Condition[] conditions) {
+        return all(conditions, 0);
+    }
+
+    private static Check all(Condition[] conditions, int from) {
+        int remaining = conditions.length - from;
+        if (remaining <= 0) {
+            return m -> true;
+        }
+        Check a = conditions[from].check;
+        if (remaining == 1) {
+            return a;
+        }
+        Check b = conditions[from + 1].check;
+        if (remaining == 2) {
+            return m -> a.test(m) && b.test(m);
+        }
+        Check c = conditions[from + 2].check;
+        if (remaining == 3) {
+            return m -> a.test(m) && b.test(m) && c.test(m);
+        }
+        Check d = conditions[from + 3].check;
+        if (remaining == 4) {
+            return m -> a.test(m) && b.test(m) && c.test(m) && d.test(m);
+        }
+        Check rest = all(conditions, from + 4);
+        return m -> a.test(m) && b.test(m) && c.test(m) && d.test(m) && rest.test(m);
+    }
+
+    /**
+     * @param msgTypes the rule's MsgTypes, which decide whether typed getters can be trusted
+     */
+    private static Condition[] conditions(Object specs, Set<String> msgTypes) {
+        if (specs == null) {
+            return new Condition[0];
+        }
+        if (!(specs instanceof List)) {
+            throw new IllegalArgumentException("Conditions must be a list");
+        }
+        List<?> list = (List<?>) specs;
+        Condition[] conditions = new Condition[list.size()];
+        for (int i = 0; i < conditions.length; i++) {
+            if (!(list.get(i) instanceof Map)) {
+                throw new IllegalArgumentException("Each condition must be a mapping");
+            }
+            conditions[i] = condition((Map<?, ?>) list.get(i), msgTypes);
+        }
+        return conditions;
+    }
+
+    private static Condition condition(Map<?, ?> spec, Set<String> msgTypes) {
+        Object fieldName = spec.get("field");
+        Object op = spec.get("op");
+        if (fieldName == null || op == null) {
+            throw new IllegalArgumentException("Condition needs 'field' and 'op': " + spec);
+        }
+        Field field = field(fieldName.toString(), msgTypes);
+        String operator = op.toString().trim();
+        Object value = spec.get("value");
+        switch (operator) {
+            case "present": {
+                return new Condition(field, operator, field.present, m -> "");
+            }
+            case "absent": {
+                Check present = field.present;
+                return new Condition(field, operator, m -> !present.test(m), m -> "");
+            }
+            case "in":
+            case "notIn": {
+                List<String> values = strings(value);
+                if (values.isEmpty()) {
+                    throw new IllegalArgumentException(operator + " needs a list of values");
+                }
+                Check in = field.equalsAny(values.toArray(new String[0]));
+                String expected = values.toString();
+                return new Condition(field, operator, operator.equals("in") ? in : m -> !in.test(m), m -> expected);
+            }
+            case "==":
+            case "!=":
+                if (value instanceof String) {
+                    Check eq = field.equalsAny(new String[] { (String) value });
+                    String expected = (String) value;
+                    return new Condition(field, operator, operator.equals("==") ? eq : m -> !eq.test(m), m -> expected);
+                }
+                // fall through: numeric comparison
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                return numeric(field, operator, value, spec.get("per"), spec.get("limits"), msgTypes);
+            default:
+                throw new IllegalArgumentException("Unknown operator '" + operator + "'");
+        }
+    }
+
+    private static Condition numeric(Field field, String op, Object value, Object per, Object limits,
+                                     Set<String> msgTypes) {
+        double defaultLimit = value == null ? Double.NaN : number(value);
+        if (per == null) {
+            if (value == null) {
+                throw new IllegalArgumentException(op + " needs a numeric value");
+            }
+            String expected = String.valueOf(defaultLimit);
+            return new Condition(field, op, compare(field.number, op, defaultLimit), m -> expected);
+        }
+        if (!(limits instanceof Map)) {
+            throw new IllegalArgumentException("'per' needs a 'limits' mapping");
+        }
+        Field key = field(per.toString(), msgTypes);
+        Map<String, Double> byKey = new HashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) limits).entrySet()) {
+            byKey.put(entry.getKey().toString(), number(entry.getValue()));
+        }
+        // A key without its own limit falls back to the default; with no default it is unlimited
+        ToDoubleFunction<ParsedMessage> limit = m -> {
+            Double l = byKey.get(key.text.apply(m));
+            return l != null ? l : defaultLimit;
+        };
+        DoubleComparison comparison = comparison(op);
+        ToDoubleFunction<ParsedMessage> actual = field.number;
+        Check check = m -> {
+            double l = limit.applyAsDouble(m);
+            return Double.isNaN(l) || comparison.test(actual.applyAsDouble(m), l);
+        };
+        return new Condition(field, op, check,
+            m -> limit.applyAsDouble(m) + " for " + key.name + " " + key.text.apply(m));
+    }
+
+    /**
+     * Comparison against a constant, one lambda per operator so none is chosen at evaluation time
+     */
+    private static Check compare(ToDoubleFunction<ParsedMessage> actual, String op, double limit) {
+        switch (op) {
+            case "<":  return m -> actual.applyAsDouble(m) < limit;
+            case "<=": return m -> actual.applyAsDouble(m) <= limit;
+            case ">":  return m -> actual.applyAsDouble(m) > limit;
+            case ">=": return m -> actual.applyAsDouble(m) >= limit;
+            case "==": return m -> actual.applyAsDouble(m) == limit;
+            default:   return m -> actual.applyAsDouble(m) != limit;
+        }
+    }
+
+    private static DoubleComparison comparison(String op) {
+        switch (op) {
+            case "<":  return (a, b) -> a < b;
+            case "<=": return (a, b) -> a <= b;
+            case ">":  return (a, b) -> a > b;
+            case ">=": return (a, b) -> a >= b;
+            case "==": return (a, b) -> a == b;
+            default:   return (a, b) -> a != b;
+        }
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return Double.parseDouble(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static List<String> strings(Object value) {
+        if (value == null) {
+            return List.of();
+        }
+        if (value instanceof List) {
+            List<String> strings = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                strings.add(String.valueOf(item));
+            }
+            return strings;
+        }
+        return List.of(value.toString());
+    }
+
+    private static int tagOf(String name) {
+        Integer tag = FIELD_TAGS.get(name);
+        if (tag != null) {
+            return tag;
+        }
+        try {
+            return Integer.parseInt(name.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown field '" + name + "'");
+        }
+    }
+
+    /**
+     * The field's typed form if its getter is filled for every one of the MsgTypes, else its
+     * untyped form; a rule for any MsgType only gets the header getters
+     */
+    private static Field field(String name, Set<String> msgTypes) {
+        int tag = tagOf(name);
+        Field typed = TYPED_FIELDS.get(tag);
+        boolean filled = typed != null && (typed.filledFor.isEmpty()
+            || (!msgTypes.isEmpty() && typed.filledFor.containsAll(msgTypes)));
+        return filled ? typed : Field.untyped(name, tag);
+    }
+
+    private static void typedNumber(String name, int tag, ToDoubleFunction<ParsedMessage> getter,
+                                    String... filledFor) {
+        TYPED_FIELDS.put(tag, new Field(name, tag, getter,
+            m -> m.hasField(tag) ? String.valueOf(getter.applyAsDouble(m)) : null, m -> m.hasField(tag), true,
+            Set.of(filledFor)));
+    }
+
+    private static void typedText(String name, int tag, Function<ParsedMessage, String> getter, String... filledFor) {
+        // Present means non-empty, as the getters hold null or "" for a missing field
+        TYPED_FIELDS.put(tag, new Field(name, tag, m -> parseOrNaN(getter.apply(m)), getter, m -> {
+            String value = getter.apply(m);
+            return value != null && !value.isEmpty();
+        }, true, Set.of(filledFor)));
+    }
+
+    private static double parseOrNaN(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        boolean test(ParsedMessage message);
+    }
+
+    @FunctionalInterface
+    private interface DoubleComparison {
+        boolean test(double actual, double limit);
+    }
+
+    /**
+     * How a condition reads its field. Absent numeric fields read as NaN, which fails every
+     * comparison except !=, unless the field has a typed getter (those read as 0). A text field
+     * with a getter counts as present when it is non-empty; other fields when the tag is there.
+     * Getters are only used for rules whose MsgTypes the parsers fill them for, so e.g. Text on a
+     * NewOrderSingle is read from the message's fields.
+     */
+    private static final class Field {
+        private final String name;
+        private final int tag;
+        private final ToDoubleFunction<ParsedMessage> number;
+        private final Function<ParsedMessage, String> text;
+        private final Check present;
+        private final boolean typed;
+        /** MsgTypes whose messages have the getter filled; empty for header fields, filled for all */
+        private final Set<String> filledFor;
+
+        Field(String name, int tag, ToDoubleFunction<ParsedMessage> number, Function<ParsedMessage, String> text,
+              Check present, boolean typed, Set<String> filledFor) {
+            this.name = name;
+            this.tag = tag;
+            this.number = number;
+            this.text = text;
+            this.present = present;
+            this.typed = typed;
+            this.filledFor = filledFor;
+        }
+
+        /**
+         * A tag without a ParsedMessage getter, or whose getter is not filled for the rule's
+         * MsgTypes; numbers are parsed in place on flyweight messages
+         */
+        static Field untyped(String name, int tag) {
+            Function<ParsedMessage, String> text = m -> m.getFieldValue(tag);
+            ToDoubleFunction<ParsedMessage> number = m -> {
+                if (m instanceof FlyweightParsedMessage) {
+                    FIXFieldIndex index = ((FlyweightParsedMessage) m).fieldIndex();
+                    return index.contains(tag) ? index.getDouble(tag) : Double.NaN;
+                }
+                return parseOrNaN(text.apply(m));
+            };
+            return new Field(name, tag, number, text, m -> m.hasField(tag), false, Set.of());
+        }
+
+        /**
+         * Whether the field equals one of the values; compared in place on flyweight messages
+         */
+        Check equalsAny(String[] values) {
+            if (typed) {
+                if (values.length == 1) {
+                    String expected = values[0];
+                    return m -> expected.equals(text.apply(m));
+                }
+                Set<String> set = Set.of(values);
+                return m -> {
+                    String actual = text.apply(m);
+                    return actual != null && set.contains(actual);
+                };
+            }
+            Set<String> set = Set.of(values);
+            return m -> {
+                if (m instanceof FlyweightParsedMessage) {
+                    FIXFieldIndex index = ((FlyweightParsedMessage) m).fieldIndex();
+                    for (String value : values) {
+                        if (index.valueEquals(tag, value)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                String actual = text.apply(m);
+                return actual != null && set.contains(actual);
+            };
+        }
+    }
+
+    private static final class Condition {
+        private final Field field;
+        private final String op;
+        private final Check check;
+        private final Function<ParsedMessage, String> expected;
+
+        Condition(Field field, String op, Check check, Function<ParsedMessage, String> expected) {
+            this.field = field;
+            this.op = op;
+            this.check = check;
+            this.expected = expected;
+        }
+    }
+
+    /**
+     * Generic form of a compiled rule, which also formats violations for the specialized copies.
+     * It leaves {@link #matches} alone so that, while no rule set uses "when", the engine's
+     * matches() call still binds statically to the default.
+     */
+    private static class CompiledRule extends ComplianceRule {
+        final Condition[] when;
+        private final Condition[] require;
+        private final String passMessage;
+
+        CompiledRule(String ruleId, String name, Set<String> msgTypes, int[] requiredTags,
+                     Condition[] when, Condition[] require) {
+            super(ruleId, name, msgTypes, requiredTags);
+            this.when = when;
+            this.require = require;
+            this.passMessage = name + " passed";
+        }
+
+        @Override
+        public boolean isCompliant(ParsedMessage message) {
+            for (Condition condition : require) {
+                if (!condition.check.test(message)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public RuleEvaluation violation(ParsedMessage message) {
+            for (Condition condition : require) {
+                if (!condition.check.test(message)) {
+                    // Read the values now: a flyweight message is reused once evaluation returns
+                    String actual = condition.field.text.apply(message);
+                    String expected = condition.expected.apply(message);
+                    return new RuleEvaluation(this, false, () -> condition.field.name + " " + actual
+                        + " must be " + condition.op + (expected.isEmpty() ? "" : " " + expected));
+                }
+            }
+            return new RuleEvaluation(this, true, passMessage);
+        }
+
+        @Override
+        public RuleEvaluation evaluate(ParsedMessage message) {
+            if (!isCompliant(message)) {
+                return violation(message);
+            }
+            return new RuleEvaluation(this, true, passMessage);
+        }
+    }
+
+    private static class ConditionalRule extends CompiledRule {
+        ConditionalRule(String ruleId, String name, Set<String> msgTypes, int[] requiredTags,
+                        Condition[] when, Condition[] require) {
+            super(ruleId, name, msgTypes, requiredTags, when, require);
+        }
+
+        @Override
+        public boolean matches(ParsedMessage message) {
+            for (Condition condition : when) {
+                if (!condition.check.test(message)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * Templates copied into one hidden class per rule (see specialize). The rule's combined checks
+     * are static finals of its own class, so the JIT treats them, and the lambdas they capture, as
+     * constants and inlines the whole condition chain, rather than going through call sites shared
+     * by every compiled rule. The templates are never loaded under their own names.
+     */
+
+    static final class SpecializedRule extends CompiledRule {
+        private static final Check REQUIRE = classData(MethodHandles.lookup(), 0);
+
+        SpecializedRule(String ruleId, String name, Set<String> msgTypes, int[] requiredTags,
+                        Condition[] when, Condition[] require) {
+            super(ruleId, name, msgTypes, requiredTags, when, require);
+        }
+
+        @Override
+        public boolean isCompliant(ParsedMessage message) {
+            return REQUIRE.test(message);
+        }
+    }
+
+    static final class SpecializedConditionalRule extends ConditionalRule {
+        private static final Check REQUIRE = classData(MethodHandles.lookup(), 0);
+        private static final Check WHEN = classData(MethodHandles.lookup(), 1);
+
+        SpecializedConditionalRule(String ruleId, String name, Set<String> msgTypes, int[] requiredTags,
+                                   Condition[] when, Condition[] require) {
+            super(ruleId, name, msgTypes, requiredTags, when, require);
+        }
+
+        @Override
+        public boolean matches(ParsedMessage message) {
+            return WHEN.test(message);
+        }
+
+        @Override
+        public boolean isCompliant(ParsedMessage message) {
+            return REQUIRE.test(message);
+        }
+    }
+}
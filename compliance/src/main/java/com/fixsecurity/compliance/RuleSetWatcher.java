@@ -0,0 +1,102 @@
+package com.fixsecurity.compliance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+/**
+ * Keeps a {@link ComplianceRuleEngine}'s rule set in sync with a rule set file. The file is
+ * compiled when the watcher is created and again whenever its modification time or size changes;
+ * each successful compile is swapped into the engine with {@link ComplianceRuleEngine#replaceRuleSet}.
+ * A file that fails to read or compile leaves the previous rules in force and is retried on the
+ * next change, so a bad edit cannot take compliance checks down.
+ */
+public class RuleSetWatcher implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RuleSetWatcher.class);
+
+    private final ComplianceRuleEngine engine;
+    private final Path file;
+    private final long pollIntervalMs;
+    private final Thread thread;
+    private FileTime lastModified;
+    private long lastSize;
+    private volatile int reloads;
+    private volatile boolean running = true;
+
+    /**
+     * Load the file into the engine and start watching it
+     *
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if it is not a valid rule set
+     */
+    public RuleSetWatcher(ComplianceRuleEngine engine, Path file, long pollIntervalMs) throws IOException {
+        this.engine = engine;
+        this.file = file;
+        this.pollIntervalMs = pollIntervalMs;
+        lastModified = Files.getLastModifiedTime(file);
+        lastSize = Files.size(file);
+        engine.replaceRuleSet(RuleSetCompiler.load(file));
+        reloads = 1;
+        thread = new Thread(this::run, "compliance-rule-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(pollIntervalMs);
+                checkForChange();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reload the file if it changed since the last check
+     *
+     * @return whether new rules were swapped in
+     */
+    public synchronized boolean checkForChange() {
+        FileTime modified;
+        long size;
+        try {
+            modified = Files.getLastModifiedTime(file);
+            size = Files.size(file);
+        } catch (IOException e) {
+            log.warn("Cannot read compliance rule set {}: {}", file, e.getMessage());
+            return false;
+        }
+        if (modified.equals(lastModified) && size == lastSize) {
+            return false;
+        }
+        lastModified = modified;
+        lastSize = size;
+        try {
+            List<ComplianceRule> rules = RuleSetCompiler.load(file);
+            engine.replaceRuleSet(rules);
+            reloads++;
+            log.info("Loaded {} compliance rules from {}", rules.size(), file);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Keeping previous compliance rules, {} is invalid: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /** Rule sets loaded so far, including the initial one */
+    public int getReloads() { return reloads; }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        thread.join();
+    }
+}
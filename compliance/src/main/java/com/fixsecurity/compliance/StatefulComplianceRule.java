@@ -0,0 +1,178 @@
+package com.fixsecurity.compliance;
+
+import com.fixsecurity.engine.FIXFieldIndex;
+import com.fixsecurity.engine.FieldHash;
+import com.fixsecurity.engine.FlyweightParsedMessage;
+import com.fixsecurity.engine.ParsedMessage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Base class for compliance rules that accumulate state across messages, such as limits on
+ * cumulative notional, positions or order rates.
+ * <p>
+ * {@link #isCompliant} both checks the message and folds it into the rule's state, so it must be
+ * called exactly once per message; {@link #evaluate} goes through it, and {@link #violation} only
+ * reads the state. Accounts, symbols and traders are identified by {@link FieldHash} hashes of their
+ * values, read in place from flyweight messages, so no per-key objects are kept and memory stays bounded
+ * however many accounts appear. Two distinct values sharing a hash is possible but, at 64 bits,
+ * negligible for the key counts involved.
+ */
+public abstract class StatefulComplianceRule extends ComplianceRule {
+    protected static final int TAG_ACCOUNT = 1;
+    protected static final int TAG_SENDER_SUB_ID = 50;
+    protected static final int TAG_SIDE = 54;
+    protected static final int TAG_SYMBOL = 55;
+
+    protected final LongSupplier clock;
+    private final String passMessage;
+
+    protected StatefulComplianceRule(String ruleId, String name, Set<String> msgTypes, LongSupplier clock) {
+        super(ruleId, name, msgTypes);
+        this.clock = clock;
+        this.passMessage = name + " within limit";
+    }
+
+    @Override
+    public RuleEvaluation evaluate(ParsedMessage message) {
+        if (!isCompliant(message)) {
+            return violation(message);
+        }
+        return new RuleEvaluation(this, true, passMessage);
+    }
+
+    /**
+     * The account an order or fill belongs to: Account(1) if present, otherwise the session that
+     * owns the order, i.e. the sender of a NewOrderSingle or the target of an ExecutionReport
+     */
+    protected static String account(ParsedMessage message) {
+        String account = message.getFieldValue(TAG_ACCOUNT);
+        if (account != null && !account.isEmpty()) {
+            return account;
+        }
+        return "8".equals(message.getMsgType()) ? message.getTargetCompID() : message.getSenderCompID();
+    }
+
+    /**
+     * Hash of {@link #account}, computed without building the string
+     */
+    protected static long accountKey(ParsedMessage message) {
+        long hash = FieldHash.hashField(message, TAG_ACCOUNT, FieldHash.SEED);
+        if (hash != FieldHash.SEED) {
+            return hash;
+        }
+        return FieldHash.hash("8".equals(message.getMsgType()) ? message.getTargetCompID() : message.getSenderCompID(), FieldHash.SEED);
+    }
+
+    /**
+     * Hash of the trader sending a message: "SenderCompID/SenderSubID", or SenderCompID alone
+     * when SenderSubID(50) is absent. Equal to {@link FieldHash#hash} of that string, so limits can
+     * be configured by name.
+     */
+    protected static long traderKey(ParsedMessage message) {
+        long key = FieldHash.hash(message.getSenderCompID(), FieldHash.SEED);
+        long prefix = FieldHash.hash("/", key);
+        long withSubId = FieldHash.hashField(message, TAG_SENDER_SUB_ID, prefix);
+        return withSubId != prefix ? withSubId : key;
+    }
+
+    /**
+     * Symbol(55) of an order or ExecutionReport; the parsers only fill {@link ParsedMessage#getSymbol}
+     * for orders
+     */
+    protected static String symbol(ParsedMessage message) {
+        String symbol = message.getSymbol();
+        return symbol != null ? symbol : message.getFieldValue(TAG_SYMBOL);
+    }
+
+    /**
+     * {@link FieldHash#hash} of {@link #symbol}
+     */
+    protected static long hashSymbol(ParsedMessage message, long seed) {
+        String symbol = message.getSymbol();
+        return symbol != null ? FieldHash.hash(symbol, seed) : FieldHash.hashField(message, TAG_SYMBOL, seed);
+    }
+
+    /**
+     * +1 for buy sides, -1 for sell sides, 0 for sides that do not move a position. Read from
+     * Side(54) directly, since ExecutionReports carry it untyped.
+     */
+    protected static int sideSign(ParsedMessage message) {
+        String side = message.getSide();
+        char value = side == null ? fieldChar(message, TAG_SIDE) : side.length() == 1 ? side.charAt(0) : 0;
+        switch (value) {
+            case '1': // Buy
+            case '3': // Buy minus
+                return 1;
+            case '2': // Sell
+            case '4': // Sell plus
+            case '5': // Sell short
+            case '6': // Sell short exempt
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * True for an ExecutionReport that reports a trade: ExecType Trade (F), or Partial fill (1) /
+     * Fill (2) in FIX 4.2 and earlier, with a positive LastQty
+     */
+    protected static boolean isFill(ParsedMessage message) {
+        String execType = message.getExecType();
+        return message.getLastQty() > 0 && execType != null
+            && (execType.equals("F") || execType.equals("1") || execType.equals("2"));
+    }
+
+    /**
+     * The value of a single-character field, or 0 if it is absent or longer
+     */
+    protected static char fieldChar(ParsedMessage message, int tag) {
+        if (message instanceof FlyweightParsedMessage) {
+            FIXFieldIndex index = ((FlyweightParsedMessage) message).fieldIndex();
+            int i = index.indexOf(tag);
+            return i >= 0 && index.valueLengthAt(i) == 1 ? (char) (index.getBuffer()[index.valueOffsetAt(i)] & 0xff) : 0;
+        }
+        String value = message.getFieldValue(tag);
+        return value != null && value.length() == 1 ? value.charAt(0) : 0;
+    }
+
+    /**
+     * A default limit with overrides for particular keys, looked up by hash without allocating
+     */
+    protected static final class Limits {
+        private final double defaultLimit;
+        private final long[] keys;
+        private final double[] values;
+
+        /**
+         * @param overrides limits for particular account, symbol or trader values
+         */
+        public Limits(double defaultLimit, Map<String, Double> overrides) {
+            this.defaultLimit = defaultLimit;
+            long[][] entries = new long[overrides.size()][];
+            int n = 0;
+            for (Map.Entry<String, Double> entry : overrides.entrySet()) {
+                entries[n++] = new long[] { FieldHash.hash(entry.getKey(), FieldHash.SEED), Double.doubleToLongBits(entry.getValue()) };
+            }
+            Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+            keys = new long[n];
+            values = new double[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = entries[i][0];
+                values[i] = Double.longBitsToDouble(entries[i][1]);
+            }
+        }
+
+        public double forKey(long key) {
+            if (keys.length == 0) {
+                return defaultLimit;
+            }
+            int i = Arrays.binarySearch(keys, key);
+            return i >= 0 ? values[i] : defaultLimit;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.fixsecurity.compliance;
+
+import com.fixsecurity.engine.FieldHash;
+import com.fixsecurity.engine.LinearProbingTable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running sums per 64-bit key over a time window, the state behind stateful compliance limits.
+ * <p>
+ * A window is {@code buckets} consecutive epoch-aligned buckets of {@code bucketMillis}; a bucket
+ * is cleared when time comes round to it again. One bucket of a day gives a per-UTC-day total,
+ * ten buckets of 100 ms a sliding one-second count, and {@link #UNBOUNDED} buckets a total that
+ * never expires.
+ * <p>
+ * Entries live in {@link LinearProbingTable}s of parallel primitive arrays split into lock stripes,
+ * so {@link #add} and {@link #sum} are O(buckets), allocation-free and contend only within a
+ * stripe. Memory is fixed at construction by {@code maxKeys}. When a stripe is full, entries
+ * whose window has passed or whose total is zero are swept out (at most once a second per
+ * stripe); if that frees nothing the new key is not tracked and is counted in
+ * {@link #getUntracked}.
+ */
+public class WindowedSums {
+    /** Bucket length for sums that never expire */
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    /** Stands in for key 0, the only key that mixes to the table's empty marker */
+    private static final long ZERO_SUBSTITUTE = 0x9E3779B97F4A7C15L;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder untracked = new LongAdder();
+
+    /**
+     * @param maxKeys      keys tracked at most
+     * @param bucketMillis length of one bucket, or {@link #UNBOUNDED}
+     * @param buckets      buckets per window
+     */
+    public WindowedSums(int maxKeys, long bucketMillis, int buckets) {
+        if (bucketMillis <= 0 || buckets <= 0) {
+            throw new IllegalArgumentException("bucketMillis and buckets must be positive");
+        }
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        int perStripe = (maxKeys + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Add to the key's sum in the bucket of {@code nowMillis}
+     *
+     * @return the key's sum over the window ending now, including delta, or delta alone if the
+     * key could not be tracked
+     */
+    public double add(long key, long nowMillis, double delta) {
+        long stored = stored(key);
+        Stripe stripe = stripeOf(stored);
+        synchronized (stripe) {
+            return stripe.add(stored, bucketOf(nowMillis), nowMillis, delta);
+        }
+    }
+
+    /**
+     * @return the key's sum over the window ending now, 0 if it has none
+     */
+    public double sum(long key, long nowMillis) {
+        long stored = stored(key);
+        Stripe stripe = stripeOf(stored);
+        synchronized (stripe) {
+            int slot = stripe.find(stored);
+            return slot < 0 ? 0 : stripe.sum(slot, bucketOf(nowMillis));
+        }
+    }
+
+    /** Keys currently held, including ones whose window has passed but were not swept yet */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /** Additions for new keys that found their stripe full */
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    private long bucketOf(long nowMillis) {
+        return bucketMillis == UNBOUNDED ? 0 : Math.floorDiv(nowMillis, bucketMillis);
+    }
+
+    /**
+     * The key as stored: mixed so keys built from similar strings spread over stripes and slots
+     */
+    private static long stored(long key) {
+        long mixed = FieldHash.mix(key);
+        return mixed != 0 ? mixed : ZERO_SUBSTITUTE;
+    }
+
+    private Stripe stripeOf(long stored) {
+        return stripes[(int) (stored >>> (64 - STRIPE_BITS))];
+    }
+
+    /**
+     * Fixed-size table from key to {@code buckets} (bucket id, sum) pairs stored at
+     * slot * buckets. A bucket id outside (current - buckets, current] is stale and reads as 0.
+     */
+    private final class Stripe extends LinearProbingTable {
+        private final long[] bucketIds;
+        private final double[] sums;
+        private long lastSweepMillis = Long.MIN_VALUE;
+
+        Stripe(int expectedKeys) {
+            super(capacityFor(expectedKeys), capacityFor(expectedKeys), 50);
+            bucketIds = new long[capacity() * buckets];
+            sums = new double[capacity() * buckets];
+        }
+
+        double add(long key, long current, long nowMillis, double delta) {
+            int slot = find(key);
+            if (slot < 0) {
+                slot = insert(key);
+                if (slot < 0 && sweep(current, nowMillis)) {
+                    slot = insert(key);
+                }
+                if (slot < 0) {
+                    untracked.increment();
+                    return delta;
+                }
+                int base = slot * buckets;
+                for (int i = 0; i < buckets; i++) {
+                    bucketIds[base + i] = Long.MIN_VALUE;
+                    sums[base + i] = 0;
+                }
+            }
+            int bucket = slot * buckets + (int) Math.floorMod(current, (long) buckets);
+            if (bucketIds[bucket] != current) {
+                bucketIds[bucket] = current;
+                sums[bucket] = 0;
+            }
+            sums[bucket] += delta;
+            return sum(slot, current);
+        }
+
+        double sum(int slot, long current) {
+            int base = slot * buckets;
+            double sum = 0;
+            for (int i = 0; i < buckets; i++) {
+                if (bucketIds[base + i] > current - buckets) {
+                    sum += sums[base + i];
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Remove entries with nothing left in their window
+         *
+         * @return whether any entry was removed
+         */
+        private boolean sweep(long current, long nowMillis) {
+            if (nowMillis < lastSweepMillis + SWEEP_INTERVAL_MILLIS) {
+                return false;
+            }
+            lastSweepMillis = nowMillis;
+            return removeIf(slot -> sum(slot, current) == 0) > 0;
+        }
+
+        @Override
+        protected void moveSlot(int from, int to) {
+            System.arraycopy(bucketIds, from * buckets, bucketIds, to * buckets, buckets);
+            System.arraycopy(sums, from * buckets, sums, to * buckets, buckets);
+        }
+    }
+}
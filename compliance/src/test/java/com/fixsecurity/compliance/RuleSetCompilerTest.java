@@ -0,0 +1,217 @@
+package com.fixsecurity.compliance;
+
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.ParsedMessage;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that rules compiled from a rule set give the same verdicts as the hand-written
+ * PRE-TRADE-001 and DATA-QUALITY-001 they replace, on plain and flyweight messages, both as
+ * specialized hidden classes and in the generic fallback form.
+ */
+class RuleSetCompilerTest {
+    private static final String RULE_SET = String.join("\n",
+        "rules:",
+        "  - id: PRE-TRADE-001",
+        "    name: Order Size Limit",
+        "    msgTypes: [D]",
+        "    require:",
+        "      - { field: OrderQty, op: '<=', value: 1000000 }",
+        "  - id: DATA-QUALITY-001",
+        "    name: Required Fields Check",
+        "    msgTypes: [D]",
+        "    require:",
+        "      - { field: Symbol, op: present }",
+        "      - { field: Side, op: present }",
+        "      - { field: OrderQty, op: '>', value: 0 }");
+
+    /** Order bodies around the size limit and with each required field missing */
+    private static final String[] ORDERS = {
+        "11=A|55=AAPL|54=1|38=100|40=2|44=10|",
+        "11=B|55=AAPL|54=1|38=1000000|40=2|44=10|",
+        "11=C|55=AAPL|54=2|38=1000000.5|40=2|44=10|",
+        "11=D|55=AAPL|54=1|38=5000000|40=1|",
+        "11=E|54=1|38=100|40=2|44=10|",
+        "11=F|55=AAPL|38=100|40=2|44=10|",
+        "11=G|55=AAPL|54=1|40=2|44=10|",
+        "11=H|55=AAPL|54=1|38=0|40=2|44=10|",
+        "11=I|38=2000000|40=2|",
+    };
+
+    private final FIXTagValueParser parser = new FIXTagValueParser();
+
+    @Test
+    void compiledRulesMatchHandWrittenRules() throws Exception {
+        ComplianceRuleEngine handWritten = new ComplianceRuleEngine();
+        ComplianceRuleEngine compiled = new ComplianceRuleEngine();
+        List<ComplianceRule> rules = RuleSetCompiler.compile(RuleSetCompiler.parseYaml(RULE_SET));
+        compiled.replaceRuleSet(rules);
+
+        assertEquals(ruleIds(handWritten.getRules()), ruleIds(compiled.getRules()));
+        assertSame(rules.get(0), compiled.getRules().get(1));
+        for (ComplianceRule rule : rules) {
+            assertTrue(rule.getClass().isHidden(), rule.getRuleId() + " was not specialized");
+        }
+        int violations = assertSameVerdicts(handWritten, compiled);
+        assertTrue(violations >= ORDERS.length - 2, "too few orders failed to exercise the rules");
+        assertEquals(0, RuleSetCompiler.getSpecializationFallbacks());
+    }
+
+    @Test
+    void genericFallbackGivesTheSameVerdicts() throws Exception {
+        List<ComplianceRule> rules = withUnreadableTemplates(
+            () -> RuleSetCompiler.compile(RuleSetCompiler.parseYaml(RULE_SET)));
+        for (ComplianceRule rule : rules) {
+            assertFalse(rule.getClass().isHidden(), rule.getRuleId() + " was specialized");
+        }
+        ComplianceRuleEngine compiled = new ComplianceRuleEngine();
+        compiled.replaceRuleSet(rules);
+        assertSameVerdicts(new ComplianceRuleEngine(), compiled);
+    }
+
+    @Test
+    void conditionalRuleAppliesOnlyWhenItsConditionsHold() throws Exception {
+        ComplianceRuleEngine engine = new ComplianceRuleEngine();
+        engine.replaceRuleSet(RuleSetCompiler.compile(RuleSetCompiler.parseYaml(String.join("\n",
+            "rules:",
+            "  - id: ACC-LIMIT",
+            "    msgTypes: [D]",
+            "    requiredTags: [Account]",
+            "    when:",
+            "      - { field: OrdType, op: in, value: ['2'] }",
+            "    require:",
+            "      - { field: OrderQty, op: '<=', value: 500, per: Account, limits: { ACC1: 100 } }",
+            "      - { field: 1, op: notIn, value: [BLOCKED] }",
+            "      - { field: Text, op: absent }"))));
+
+        for (boolean flyweight : new boolean[] { false, true }) {
+            assertEquals(List.of(), violations(engine, order("1=ACC2|11=A|55=X|54=1|38=400|40=2|", flyweight)));
+            assertEquals(List.of("ACC-LIMIT"), violations(engine, order("1=ACC1|11=A|55=X|54=1|38=150|40=2|", flyweight)));
+            // Market orders are out of the rule's scope, and orders without an account lack a required tag
+            assertEquals(List.of(), violations(engine, order("1=ACC1|11=A|55=X|54=1|38=150|40=1|", flyweight)));
+            assertEquals(List.of(), violations(engine, order("11=A|55=X|54=1|38=900|40=2|", flyweight)));
+            assertEquals(List.of("ACC-LIMIT"), violations(engine, order("1=BLOCKED|11=A|55=X|54=1|38=10|40=2|", flyweight)));
+            assertEquals(List.of("ACC-LIMIT"), violations(engine, order("1=ACC2|11=A|55=X|54=1|38=10|40=2|58=hi|", flyweight)));
+        }
+        assertEquals(0, RuleSetCompiler.getSpecializationFallbacks());
+    }
+
+    @Test
+    void rejectsInvalidRuleSets() {
+        assertRejected("Unknown field 'Nope'", "rules:\n  - { id: A, require: [ { field: Nope, op: '<', value: 1 } ] }");
+        assertRejected("Unknown operator", "rules:\n  - { id: A, require: [ { field: OrderQty, op: '=<', value: 1 } ] }");
+        assertRejected("at least one condition", "rules:\n  - { id: A, require: [] }");
+        assertRejected("Duplicate rule id A",
+            "rules:\n  - { id: A, require: [ { field: Symbol, op: present } ] }\n"
+            + "  - { id: A, require: [ { field: Side, op: present } ] }");
+        assertRejected("'rules' list", "limits: []");
+    }
+
+    private static void assertRejected(String expected, String yaml) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> RuleSetCompiler.compile(RuleSetCompiler.parseYaml(yaml)));
+        assertTrue(e.getMessage().contains(expected), e.getMessage());
+    }
+
+    /**
+     * Evaluate every order in both modes, plain and flyweight, and compare per-rule verdicts
+     *
+     * @return number of orders with at least one violation
+     */
+    private int assertSameVerdicts(ComplianceRuleEngine expected, ComplianceRuleEngine actual) throws Exception {
+        int failing = 0;
+        for (String body : ORDERS) {
+            List<String> verdicts = verdicts(expected, order(body, false));
+            List<String> violations = violations(expected, order(body, false));
+            for (boolean flyweight : new boolean[] { false, true }) {
+                assertEquals(verdicts, verdicts(actual, order(body, flyweight)), body);
+                assertEquals(violations, violations(actual, order(body, flyweight)), body);
+            }
+            if (!violations.isEmpty()) {
+                failing++;
+            }
+        }
+        return failing;
+    }
+
+    /** Rule ID and verdict of each rule that applied, from full evaluation */
+    private static List<String> verdicts(ComplianceRuleEngine engine, ParsedMessage message) {
+        List<String> verdicts = new ArrayList<>();
+        for (RuleEvaluation evaluation : engine.evaluate(message).getEvaluations()) {
+            verdicts.add(evaluation.getRule().getRuleId() + "=" + evaluation.isCompliant());
+        }
+        return verdicts;
+    }
+
+    /** IDs of the failing rules, from violations-only evaluation */
+    private static List<String> violations(ComplianceRuleEngine engine, ParsedMessage message) {
+        return ruleIds(engine.evaluateViolations(message).getEvaluations().stream()
+            .map(RuleEvaluation::getRule).toList());
+    }
+
+    private static List<String> ruleIds(List<ComplianceRule> rules) {
+        return rules.stream().map(ComplianceRule::getRuleId).toList();
+    }
+
+    private ParsedMessage order(String body, boolean flyweight) throws Exception {
+        String raw = fix("35=D|49=CLIENT|56=BROKER|34=1|52=20240102-14:30:00.000|" + body);
+        if (!flyweight) {
+            return parser.parse(raw);
+        }
+        byte[] bytes = raw.getBytes(StandardCharsets.ISO_8859_1);
+        return parser.parseReusable(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Frame a '|'-separated body as FIX 4.4 with BodyLength and CheckSum
+     */
+    private static String fix(String body) {
+        String content = body.replace('|', '\u0001');
+        String message = "8=FIX.4.4\u00019=" + content.length() + "\u0001" + content;
+        int sum = 0;
+        for (byte b : message.getBytes(StandardCharsets.ISO_8859_1)) {
+            sum += b;
+        }
+        return message + String.format("10=%03d\u0001", sum & 0xFF);
+    }
+
+    private interface Compilation {
+        List<ComplianceRule> compile() throws Exception;
+    }
+
+    /**
+     * Compile with template class bytes that cannot be defined, so every rule takes the generic
+     * fallback, then restore the templates and the fallback count seen by the other tests
+     */
+    private static List<ComplianceRule> withUnreadableTemplates(Compilation compilation) throws Exception {
+        @SuppressWarnings("unchecked")
+        Map<Class<?>, byte[]> templates = (Map<Class<?>, byte[]>) staticField("TEMPLATE_BYTES");
+        AtomicLong fallbacks = (AtomicLong) staticField("specializationFallbacks");
+        long before = fallbacks.get();
+        templates.put(RuleSetCompiler.SpecializedRule.class, new byte[] { 0 });
+        templates.put(RuleSetCompiler.SpecializedConditionalRule.class, new byte[] { 0 });
+        try {
+            List<ComplianceRule> rules = compilation.compile();
+            assertEquals(before + rules.size(), RuleSetCompiler.getSpecializationFallbacks());
+            return rules;
+        } finally {
+            templates.clear();
+            fallbacks.set(before);
+        }
+    }
+
+    private static Object staticField(String name) throws ReflectiveOperationException {
+        Field field = RuleSetCompiler.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(null);
+    }
+}
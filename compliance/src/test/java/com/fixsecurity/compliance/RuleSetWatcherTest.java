@@ -0,0 +1,116 @@
+package com.fixsecurity.compliance;
+
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.ParsedMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that RuleSetWatcher swaps an edited rule set file into the engine and keeps the
+ * previous rules when an edit does not compile.
+ */
+class RuleSetWatcherTest {
+    private static final long NO_POLLING = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    private final FIXTagValueParser parser = new FIXTagValueParser();
+
+    @Test
+    void reloadsTheRuleSetWhenTheFileChanges() throws Exception {
+        Path file = directory.resolve("rules.yaml");
+        Files.writeString(file, sizeLimit(100));
+        ComplianceRuleEngine engine = new ComplianceRuleEngine();
+        ParsedMessage order = order(150);
+
+        try (RuleSetWatcher watcher = new RuleSetWatcher(engine, file, NO_POLLING)) {
+            assertEquals(1, watcher.getReloads());
+            assertEquals(List.of("PRE-TRADE-001"), violations(engine, order));
+            assertFalse(watcher.checkForChange());
+
+            Files.writeString(file, sizeLimit(1000));
+            assertTrue(watcher.checkForChange());
+            assertEquals(2, watcher.getReloads());
+            assertEquals(List.of(), violations(engine, order));
+            assertEquals(List.of("PRE-TRADE-001"), violations(engine, order(5000)));
+        }
+        assertEquals(0, RuleSetCompiler.getSpecializationFallbacks());
+    }
+
+    @Test
+    void keepsThePreviousRulesWhenAnEditIsInvalid() throws Exception {
+        Path file = directory.resolve("rules.json");
+        Files.writeString(file, "{\"rules\":[{\"id\":\"PRE-TRADE-001\",\"msgTypes\":[\"D\"],"
+            + "\"require\":[{\"field\":\"OrderQty\",\"op\":\"<=\",\"value\":100}]}]}");
+        ComplianceRuleEngine engine = new ComplianceRuleEngine();
+        ParsedMessage order = order(150);
+
+        try (RuleSetWatcher watcher = new RuleSetWatcher(engine, file, NO_POLLING)) {
+            List<ComplianceRule> loaded = engine.getRules();
+
+            Files.writeString(file, "{\"rules\":[{\"id\":\"PRE-TRADE-001\",\"require\":[{\"field\":\"OrderQty\","
+                + "\"op\":\"<<\",\"value\":1}]}]}");
+            assertFalse(watcher.checkForChange());
+            Files.writeString(file, "{\"rules\": [");
+            assertFalse(watcher.checkForChange());
+            assertEquals(1, watcher.getReloads());
+            assertSame(loaded, engine.getRules());
+            assertEquals(List.of("PRE-TRADE-001"), violations(engine, order));
+
+            // A later good edit is picked up again
+            Files.writeString(file, "{\"rules\":[{\"id\":\"PRE-TRADE-001\",\"msgTypes\":[\"D\"],"
+                + "\"require\":[{\"field\":\"OrderQty\",\"op\":\"<=\",\"value\":1000}]}]}");
+            assertTrue(watcher.checkForChange());
+            assertEquals(List.of(), violations(engine, order));
+        }
+    }
+
+    @Test
+    void rejectsAnInvalidFileAtStartup() throws Exception {
+        Path file = directory.resolve("rules.yaml");
+        Files.writeString(file, "rules:\n  - { id: A, require: [ { field: Nope, op: present } ] }\n");
+        ComplianceRuleEngine engine = new ComplianceRuleEngine();
+        List<ComplianceRule> defaults = engine.getRules();
+
+        assertThrows(IllegalArgumentException.class, () -> new RuleSetWatcher(engine, file, NO_POLLING));
+        assertSame(defaults, engine.getRules());
+    }
+
+    /**
+     * PRE-TRADE-001 as a YAML rule set with the given order size limit
+     */
+    private static String sizeLimit(int maxOrderQty) {
+        return String.join("\n",
+            "rules:",
+            "  - id: PRE-TRADE-001",
+            "    name: Order Size Limit",
+            "    msgTypes: [D]",
+            "    require:",
+            "      - { field: OrderQty, op: '<=', value: " + maxOrderQty + " }",
+            "");
+    }
+
+    private static List<String> violations(ComplianceRuleEngine engine, ParsedMessage message) {
+        return engine.evaluateViolations(message).getEvaluations().stream()
+            .map(evaluation -> evaluation.getRule().getRuleId()).toList();
+    }
+
+    private ParsedMessage order(int orderQty) throws Exception {
+        String content = ("35=D|49=CLIENT|56=BROKER|34=1|52=20240102-14:30:00.000|11=A|55=AAPL|54=1|38=" + orderQty
+            + "|40=2|44=10|").replace('|', '\u0001');
+        String message = "8=FIX.4.4\u00019=" + content.length() + "\u0001" + content;
+        int sum = 0;
+        for (byte b : message.getBytes(StandardCharsets.ISO_8859_1)) {
+            sum += b;
+        }
+        return parser.parse(message + String.format("10=%03d\u0001", sum & 0xFF));
+    }
+}
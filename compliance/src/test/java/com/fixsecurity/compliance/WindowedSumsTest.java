@@ -0,0 +1,126 @@
+package com.fixsecurity.compliance;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that WindowedSums keeps sums per window, frees the slots of spent keys when full and
+ * stays exact under concurrent adds.
+ */
+class WindowedSumsTest {
+    private static final long DAY = 86_400_000L;
+    private static final long MONDAY = DAY * 19_000;
+
+    @Test
+    void dailyBucketRestartsTheNextDay() {
+        WindowedSums sums = new WindowedSums(1024, DAY, 1);
+        assertEquals(100, sums.add(42, MONDAY + 1000, 100));
+        assertEquals(150, sums.add(42, MONDAY + DAY - 1, 50));
+        assertEquals(150, sums.sum(42, MONDAY + DAY - 1));
+
+        assertEquals(0, sums.sum(42, MONDAY + DAY));
+        assertEquals(30, sums.add(42, MONDAY + DAY + 1, 30));
+    }
+
+    @Test
+    void slidingWindowDropsOldBuckets() {
+        WindowedSums sums = new WindowedSums(16, 100, 10);
+        for (int i = 0; i < 5; i++) {
+            sums.add(7, 1000 + i * 100, 1);
+        }
+        assertEquals(5, sums.sum(7, 1950));
+        assertEquals(4, sums.sum(7, 2050));
+        assertEquals(2, sums.sum(7, 2250));
+        assertEquals(0, sums.sum(7, 2450));
+    }
+
+    @Test
+    void yesterdaysKeysAreSweptForTodaysOnes() {
+        WindowedSums sums = new WindowedSums(1024, DAY, 1);
+        for (long key = 1; key <= 100_000; key++) {
+            sums.add(key * 7919, MONDAY, 1);
+        }
+        int capacity = sums.size();
+        assertTrue(capacity >= 1024, "holds at least maxKeys, held " + capacity);
+        assertEquals(100_000 - capacity, sums.getUntracked());
+
+        long tuesday = MONDAY + DAY;
+        long untracked = sums.getUntracked();
+        for (long key = 200_001; key <= 200_000 + capacity / 2; key++) {
+            assertEquals(1, sums.add(key * 7919, tuesday, 1));
+        }
+        assertEquals(untracked, sums.getUntracked(), "new keys admitted after the sweep");
+        assertEquals(1, sums.sum(200_001L * 7919, tuesday));
+        assertEquals(0, sums.sum(7919, tuesday));
+    }
+
+    @Test
+    void sweepKeepsLiveKeysIntactAcrossBackwardShifts() {
+        WindowedSums sums = new WindowedSums(256, WindowedSums.UNBOUNDED, 1);
+        List<Long> tracked = new ArrayList<>();
+        for (long key = 1; key <= 2000; key++) {
+            sums.add(key, 0, 5);
+            if (sums.sum(key, 0) == 5) {
+                tracked.add(key);
+            }
+        }
+        assertEquals(tracked.size(), sums.size());
+        assertEquals(2000 - tracked.size(), sums.getUntracked());
+
+        // Flatten every other key; the rest sit in the same probe runs as the freed slots
+        List<Long> kept = new ArrayList<>();
+        for (int i = 0; i < tracked.size(); i++) {
+            if (i % 2 == 0) {
+                assertEquals(0, sums.add(tracked.get(i), 0, -5));
+            } else {
+                kept.add(tracked.get(i));
+            }
+        }
+        int admitted = 0;
+        for (long key = 10_000; key < 12_000; key++) {
+            sums.add(key, 5000, 7);
+            if (sums.sum(key, 5000) == 7) {
+                admitted++;
+            }
+        }
+        assertEquals(tracked.size() - kept.size(), admitted);
+        for (long key : kept) {
+            assertEquals(5, sums.sum(key, 0), "key " + key);
+        }
+        assertEquals(kept.size() + admitted, sums.size());
+    }
+
+    @Test
+    void keyZeroIsTracked() {
+        WindowedSums sums = new WindowedSums(16, WindowedSums.UNBOUNDED, 1);
+        assertEquals(3, sums.add(0, 0, 3));
+        assertEquals(7, sums.add(0, 0, 4));
+        assertEquals(7, sums.sum(0, 0));
+        assertEquals(1, sums.size());
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() throws Exception {
+        WindowedSums sums = new WindowedSums(10_000, WindowedSums.UNBOUNDED, 1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int n = 0; n < 200_000; n++) {
+                    sums.add(n % 1000, 0, 1);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(threads.length * 200, sums.sum(key, 0), "key " + key);
+        }
+        assertEquals(1000, sums.size());
+    }
+}
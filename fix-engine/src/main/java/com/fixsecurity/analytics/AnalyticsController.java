@@ -1,10 +1,22 @@
 package com.fixsecurity.analytics;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -15,11 +27,21 @@ import java.util.stream.Collectors;
 public class AnalyticsController {
 
     private static final int MAX_LIMIT = 1000;
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int BULK_FLUSH_INTERVAL = 256;
+    private static final String DEFAULT_PAGE_SIZE = "100";
 
     private final AnalyticsService analyticsService;
+    private final AnalyticsReportCache reportCache;
+    private final ObjectMapper objectMapper;
+    private final AnomalyStreamHub streamHub;
 
-    public AnalyticsController(AnalyticsService analyticsService) {
+    public AnalyticsController(AnalyticsService analyticsService, AnalyticsReportCache reportCache,
+                               ObjectMapper objectMapper, AnomalyStreamHub streamHub) {
         this.analyticsService = analyticsService;
+        this.reportCache = reportCache;
+        this.objectMapper = objectMapper;
+        this.streamHub = streamHub;
     }
 
     /**
@@ -75,13 +97,225 @@ public class AnalyticsController {
         ));
     }
 
+    /**
+     * Get the values of one dimension with the most anomalies for the given period.
+     * GET /api/analytics/reports/breakdown?dimension=type|order-id|cl-ord-id|session|symbol&period=day|week|month&limit=1000
+     */
+    @GetMapping("/reports/breakdown")
+    public ResponseEntity<Map<String, Object>> getBreakdownReport(
+            @RequestParam(defaultValue = "type") String dimension,
+            @RequestParam(defaultValue = "day") String period,
+            @RequestParam(defaultValue = "1000") int limit) {
+
+        AnomalyRollup.Dimension d = parseDimension(dimension);
+        if (d == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown dimension: " + dimension));
+        }
+        AnalyticsService.Period p = parsePeriod(period);
+        int capped = Math.min(Math.max(1, limit), MAX_LIMIT);
+        List<AnalyticsService.DimensionReportItem> items = analyticsService.getTopValues(d, p, capped);
+
+        List<Map<String, Object>> list = items.stream()
+            .map(item -> Map.<String, Object>of(
+                "value", item.getValue(),
+                "anomalyCount", item.getAnomalyCount()
+            ))
+            .collect(Collectors.toList());
+
+        return ResponseEntity.ok(Map.of(
+            "dimension", dimension.trim().toLowerCase(),
+            "period", p.name().toLowerCase(),
+            "limit", capped,
+            "count", list.size(),
+            "values", list
+        ));
+    }
+
+    /**
+     * Report cache statistics.
+     * GET /api/analytics/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        long hits = reportCache.getHits();
+        long misses = reportCache.getMisses();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", reportCache.isEnabled());
+        stats.put("size", reportCache.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("evictions", reportCache.getEvictions());
+        stats.put("invalidations", reportCache.getInvalidations());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Stream anomalies as Server-Sent Events as soon as they are committed.
+     * GET /api/analytics/anomalies/stream?session=&symbol=&type=
+     * Each filter takes a comma-separated list of values and is ignored when absent. Events are
+     * named "anomaly" (same fields as the reports) or "dropped" ({"count": n} events this client
+     * lost because it read too slowly).
+     */
+    @GetMapping(value = "/anomalies/stream", produces = "text/event-stream")
+    public ResponseEntity<SseEmitter> streamAnomalies(
+            @RequestParam(required = false) String session,
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false) String type) {
+
+        SseEmitter emitter = streamHub.subscribe(
+            new AnomalyStreamHub.Filter(splitValues(session), splitValues(symbol), splitValues(type)));
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Report anomaly stream subscribers and event counts.
+     * GET /api/analytics/anomalies/stream/stats
+     */
+    @GetMapping("/anomalies/stream/stats")
+    public ResponseEntity<Map<String, Object>> getStreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", streamHub.getSubscriberCount());
+        stats.put("published", streamHub.getPublished());
+        stats.put("dropped", streamHub.getDropped());
+        return ResponseEntity.ok(stats);
+    }
+
+    private static Set<String> splitValues(String values) {
+        if (values == null || values.isBlank()) {
+            return null;
+        }
+        Set<String> set = new HashSet<>();
+        for (String value : values.split(",")) {
+            if (!value.isBlank()) {
+                set.add(value.trim());
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Page through anomalies newest first using a keyset cursor instead of offsets.
+     * GET /api/analytics/anomalies?period=day|week|month (or from=&to= ISO-8601 instants)&limit=100&cursor=
+     * The response's "nextCursor" is passed back as cursor to get the next page; it is null on the last page.
+     */
+    @GetMapping("/anomalies")
+    public ResponseEntity<Map<String, Object>> getAnomalyPage(
+            @RequestParam(defaultValue = "day") String period,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String cursor) {
+
+        Instant[] range;
+        AnalyticsService.PageCursor after;
+        try {
+            range = resolveRange(period, from, to);
+            after = cursor == null || cursor.isBlank() ? null : AnalyticsService.PageCursor.decode(cursor);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        int capped = Math.min(Math.max(1, limit), MAX_LIMIT);
+        List<AnomalyRecord> page = analyticsService.getAnomalyPage(range[0], range[1], after, capped);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("from", range[0].toString());
+        body.put("to", range[1].toString());
+        body.put("limit", capped);
+        body.put("count", page.size());
+        body.put("anomalies", page.stream().map(this::anomalyToMap).collect(Collectors.toList()));
+        body.put("nextCursor", page.size() < capped ? null
+            : AnalyticsService.PageCursor.after(page.get(page.size() - 1)).encode());
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Export every anomaly in a time range, oldest first, as CSV or NDJSON.
+     * GET /api/analytics/export/anomalies?format=csv|ndjson&period=day|week|month (or from=&to= ISO-8601 instants)
+     * Records are streamed from a database cursor straight to the response, so memory use does not
+     * depend on the size of the export.
+     */
+    @GetMapping("/export/anomalies")
+    public void exportAnomalies(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "day") String period,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            HttpServletResponse response) throws IOException {
+
+        Instant[] range;
+        try {
+            range = resolveRange(period, from, to);
+        } catch (DateTimeParseException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        String f = format.trim().toLowerCase();
+        if (f.equals("csv")) {
+            response.setContentType("text/csv");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Content-Disposition", "attachment; filename=\"anomalies.csv\"");
+            Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            out.write("id,createdAt,anomalyType,orderId,clOrdID,sessionId,symbol,description\n");
+            analyticsService.exportAnomalies(range[0], range[1], r -> {
+                out.write(String.valueOf(r.getId()));
+                out.write(',');
+                out.write(r.getCreatedAt().toString());
+                for (String value : new String[] { r.getAnomalyType(), r.getOrderId(), r.getClOrdID(),
+                        r.getSessionId(), r.getSymbol(), r.getDescription() }) {
+                    out.write(',');
+                    out.write(csv(value));
+                }
+                out.write('\n');
+            });
+            out.flush();
+        } else if (f.equals("ndjson")) {
+            response.setContentType(NDJSON);
+            response.setCharacterEncoding("UTF-8");
+            JsonGenerator gen = objectMapper.getFactory().createGenerator(response.getOutputStream());
+            gen.setRootValueSeparator(null);
+            analyticsService.exportAnomalies(range[0], range[1], r -> {
+                gen.writeStartObject();
+                gen.writeNumberField("id", r.getId());
+                gen.writeStringField("createdAt", r.getCreatedAt().toString());
+                gen.writeStringField("anomalyType", r.getAnomalyType());
+                gen.writeStringField("orderId", r.getOrderId());
+                gen.writeStringField("clOrdID", r.getClOrdID());
+                gen.writeStringField("sessionId", r.getSessionId());
+                gen.writeStringField("symbol", r.getSymbol());
+                gen.writeStringField("description", r.getDescription());
+                gen.writeEndObject();
+                gen.writeRaw('\n');
+            });
+            gen.flush();
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "format must be csv or ndjson");
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
     /**
      * Record an anomaly (for integration with security engine / ingestion).
      * POST /api/analytics/anomalies
      * Body: { "anomalyType", "description", "orderId?", "clOrdID?", "sessionId?", "symbol?" }
+     * With async=true the record is handed to the write-behind writer and 202 Accepted is returned
+     * without an ID; use it for high-volume producers that do not need the ID.
      */
     @PostMapping("/anomalies")
-    public ResponseEntity<Map<String, Object>> recordAnomaly(@RequestBody Map<String, String> body) {
+    public ResponseEntity<Map<String, Object>> recordAnomaly(@RequestBody Map<String, String> body,
+                                                             @RequestParam(defaultValue = "false") boolean async) {
         String type = body.get("anomalyType");
         String description = body.get("description");
         if (type == null || type.isBlank()) {
@@ -90,6 +324,11 @@ public class AnalyticsController {
         if (description == null) {
             description = "";
         }
+        if (async) {
+            analyticsService.submitAnomaly(type, description, body.get("orderId"), body.get("clOrdID"),
+                body.get("sessionId"), body.get("symbol"));
+            return ResponseEntity.accepted().build();
+        }
         AnomalyRecord saved = analyticsService.recordAnomaly(
             type,
             description,
@@ -101,6 +340,139 @@ public class AnalyticsController {
         return ResponseEntity.ok(anomalyToMap(saved));
     }
 
+    /**
+     * Record many anomalies in one request.
+     * POST /api/analytics/anomalies/bulk
+     * Body: a JSON array of anomaly objects, or NDJSON (one object per line), with the same fields
+     * as the single-record endpoint. The body is stream-parsed and valid items are saved in one
+     * transaction. Response (NDJSON, written after commit): {"index": n, "id": id} per saved item
+     * or {"index": n, "error": "..."} per rejected item. Malformed JSON rejects the whole request.
+     */
+    @PostMapping(value = "/anomalies/bulk", consumes = { "application/json", NDJSON }, produces = NDJSON)
+    public void recordAnomalies(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long[] ids;
+        BulkAnomalyReader reader;
+        try (MappingIterator<JsonNode> items = objectMapper.readerFor(JsonNode.class)
+                .readValues(request.getInputStream())) {
+            reader = new BulkAnomalyReader(items);
+            ids = analyticsService.recordAnomalies(reader);
+        } catch (JsonProcessingException e) {
+            rejectMalformed(response, e);
+            return;
+        } catch (RuntimeException e) {
+            // MappingIterator wraps parse errors met while iterating; the transaction has rolled back
+            if (!(e.getCause() instanceof JsonProcessingException)) {
+                throw e;
+            }
+            rejectMalformed(response, (JsonProcessingException) e.getCause());
+            return;
+        }
+
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        OutputStream out = response.getOutputStream();
+        int saved = 0;
+        for (int index = 0; index < reader.count; index++) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("index", index);
+            String error = reader.errors.get(index);
+            if (error != null) {
+                line.put("error", error);
+            } else {
+                line.put("id", ids[saved++]);
+            }
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+            if ((index + 1) % BULK_FLUSH_INTERVAL == 0) {
+                out.flush();
+            }
+        }
+        out.flush();
+    }
+
+    private void rejectMalformed(HttpServletResponse response, JsonProcessingException e) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.setContentType("application/json");
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", "Malformed JSON: " + e.getOriginalMessage()));
+    }
+
+    /**
+     * Validate a bulk item against the AnomalyRecord columns so one bad item cannot fail the batch
+     *
+     * @return the error message, or null if the item is valid
+     */
+    private static String validateAnomaly(JsonNode item) {
+        if (!item.isObject()) {
+            return "Item must be a JSON object";
+        }
+        JsonNode type = item.get("anomalyType");
+        if (type == null || !type.isTextual() || type.asText().isBlank()) {
+            return "anomalyType is required";
+        }
+        String[] names = { "anomalyType", "description", "orderId", "clOrdID", "sessionId", "symbol" };
+        int[] maxLengths = { 64, 1024, 64, 64, 128, 32 };
+        for (int i = 0; i < names.length; i++) {
+            JsonNode value = item.get(names[i]);
+            if (value == null || value.isNull()) {
+                continue;
+            }
+            if (!value.isTextual()) {
+                return names[i] + " must be a string";
+            }
+            if (value.asText().length() > maxLengths[i]) {
+                return names[i] + " exceeds " + maxLengths[i] + " characters";
+            }
+        }
+        return null;
+    }
+
+    private static String text(JsonNode item, String name) {
+        JsonNode value = item.get(name);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    /**
+     * Lazily turns parsed bulk items into records, skipping invalid ones and remembering their errors
+     */
+    private static final class BulkAnomalyReader implements Iterator<AnomalyRecord> {
+        private final MappingIterator<JsonNode> items;
+        private final Map<Integer, String> errors = new HashMap<>();
+        private int count;
+        private AnomalyRecord next;
+
+        BulkAnomalyReader(MappingIterator<JsonNode> items) {
+            this.items = items;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && items.hasNext()) {
+                JsonNode item = items.next();
+                int index = count++;
+                String error = validateAnomaly(item);
+                if (error != null) {
+                    errors.put(index, error);
+                } else {
+                    String description = text(item, "description");
+                    next = AnalyticsService.newRecord(text(item, "anomalyType"),
+                        description != null ? description : "",
+                        text(item, "orderId"), text(item, "clOrdID"), text(item, "sessionId"), text(item, "symbol"));
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public AnomalyRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            AnomalyRecord record = next;
+            next = null;
+            return record;
+        }
+    }
+
     private Map<String, Object> anomalyToMap(AnomalyRecord r) {
         return Map.of(
             "id", r.getId(),
@@ -114,6 +486,29 @@ public class AnalyticsController {
         );
     }
 
+    /**
+     * Explicit from/to instants take precedence over period; a missing bound is open-ended
+     */
+    private Instant[] resolveRange(String period, String from, String to) {
+        if (from == null && to == null) {
+            return AnalyticsService.toRange(parsePeriod(period));
+        }
+        Instant start = from != null ? Instant.parse(from) : Instant.EPOCH;
+        Instant end = to != null ? Instant.parse(to) : Instant.now();
+        return new Instant[] { start, end };
+    }
+
+    private AnomalyRollup.Dimension parseDimension(String dimension) {
+        switch (dimension.trim().toLowerCase()) {
+            case "type":      return AnomalyRollup.Dimension.ANOMALY_TYPE;
+            case "order-id":  return AnomalyRollup.Dimension.ORDER_ID;
+            case "cl-ord-id": return AnomalyRollup.Dimension.CL_ORD_ID;
+            case "session":   return AnomalyRollup.Dimension.SESSION_ID;
+            case "symbol":    return AnomalyRollup.Dimension.SYMBOL;
+            default:          return null;
+        }
+    }
+
     private AnalyticsService.Period parsePeriod(String period) {
         if (period == null) return AnalyticsService.Period.DAY;
         switch (period.trim().toLowerCase()) {
@@ -0,0 +1,166 @@
+package com.fixsecurity.analytics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded LRU cache for analytics reports, keyed by (report, period, limit, time bucket).
+ * Reports cover a range ending "now", so each entry only lives for its time bucket. Committed
+ * anomaly writes invalidate all entries by bumping a generation counter; an invalidated entry is
+ * still served if it was loaded less than min-refresh-ms ago, so a write burst costs at most one
+ * reload per report per refresh window instead of one per poll.
+ */
+@Component
+public class AnalyticsReportCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long bucketMillis;
+    private final long minRefreshMs;
+
+    private final Map<Key, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public AnalyticsReportCache(@Value("${analytics.report-cache.enabled:true}") boolean enabled,
+                                @Value("${analytics.report-cache.max-entries:256}") int maxEntries,
+                                @Value("${analytics.report-cache.bucket-seconds:10}") long bucketSeconds,
+                                @Value("${analytics.report-cache.min-refresh-ms:1000}") long minRefreshMs) {
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.bucketMillis = Math.max(1, bucketSeconds) * 1000;
+        this.minRefreshMs = minRefreshMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > AnalyticsReportCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return the cached report, or load, cache and return it. The loader runs outside the cache lock.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(String report, AnalyticsService.Period period, int limit, Supplier<List<T>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long now = System.currentTimeMillis();
+        Key key = new Key(report, period, limit, now / bucketMillis);
+        long currentGeneration = generation.get();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.generation == currentGeneration || now - entry.loadedAt < minRefreshMs)) {
+                hits.increment();
+                return (List<T>) entry.value;
+            }
+        }
+        misses.increment();
+        // Tag with the generation read before loading, so a write committed meanwhile forces a reload
+        List<T> value = List.copyOf(loader.get());
+        synchronized (entries) {
+            entries.put(key, new Entry(value, currentGeneration, now));
+        }
+        return value;
+    }
+
+    /**
+     * Invalidate all reports once the current transaction commits, or immediately outside a transaction
+     */
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpGeneration();
+                }
+            });
+        } else {
+            bumpGeneration();
+        }
+    }
+
+    private void bumpGeneration() {
+        generation.incrementAndGet();
+        invalidations.increment();
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getInvalidations() { return invalidations.sum(); }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class Key {
+        private final String report;
+        private final AnalyticsService.Period period;
+        private final int limit;
+        private final long bucket;
+
+        Key(String report, AnalyticsService.Period period, int limit, long bucket) {
+            this.report = report;
+            this.period = period;
+            this.limit = limit;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return limit == other.limit && bucket == other.bucket
+                && period == other.period && report.equals(other.report);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(report, period, limit, bucket);
+        }
+    }
+
+    private static final class Entry {
+        private final List<?> value;
+        private final long generation;
+        private final long loadedAt;
+
+        Entry(List<?> value, long generation, long loadedAt) {
+            this.value = value;
+            this.generation = generation;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -1,15 +1,19 @@
 package com.fixsecurity.analytics;
 
+import com.fixsecurity.analytics.AnomalyRollup.Dimension;
+import jakarta.persistence.EntityManager;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Analytics service for anomaly and order-id reports by period (day, week, month).
@@ -18,11 +22,24 @@ import java.util.stream.Collectors;
 public class AnalyticsService {
 
     private static final int MAX_LIMIT = 1000;
+    private static final int BULK_CHUNK_SIZE = 500;
 
     private final AnomalyRecordRepository anomalyRecordRepository;
+    private final AnomalyBatchWriter anomalyBatchWriter;
+    private final EntityManager entityManager;
+    private final AnomalyRollupService anomalyRollupService;
+    private final AnalyticsReportCache reportCache;
+    private final AnomalyStreamHub streamHub;
 
-    public AnalyticsService(AnomalyRecordRepository anomalyRecordRepository) {
+    public AnalyticsService(AnomalyRecordRepository anomalyRecordRepository, AnomalyBatchWriter anomalyBatchWriter,
+                            EntityManager entityManager, AnomalyRollupService anomalyRollupService,
+                            AnalyticsReportCache reportCache, AnomalyStreamHub streamHub) {
         this.anomalyRecordRepository = anomalyRecordRepository;
+        this.anomalyBatchWriter = anomalyBatchWriter;
+        this.entityManager = entityManager;
+        this.anomalyRollupService = anomalyRollupService;
+        this.reportCache = reportCache;
+        this.streamHub = streamHub;
     }
 
     public enum Period {
@@ -43,7 +60,7 @@ public class AnalyticsService {
         }
     }
 
-    private static Instant[] toRange(Period period) {
+    static Instant[] toRange(Period period) {
         ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
         Instant end = now.toInstant();
         Instant start;
@@ -65,56 +82,183 @@ public class AnalyticsService {
 
     /**
      * Get top anomalies (newest first) for the given period, up to limit (capped at 1000).
+     * Served from the report cache when possible; the returned list is unmodifiable.
      */
     public List<AnomalyRecord> getTopAnomalies(Period period, int limit) {
         int capped = Math.min(Math.max(1, limit), MAX_LIMIT);
-        Instant[] range = toRange(period);
-        return anomalyRecordRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(
-            range[0], range[1], PageRequest.of(0, capped));
+        return reportCache.get("anomalies", period, capped, () -> {
+            Instant[] range = toRange(period);
+            return anomalyRecordRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(
+                range[0], range[1], PageRequest.of(0, capped));
+        });
+    }
+
+    /**
+     * Get one keyset page of anomalies in [from, to], newest first, up to limit (capped at 1000).
+     * Pass the cursor of the previous page's last record to continue; null starts at the newest.
+     */
+    @Transactional(readOnly = true)
+    public List<AnomalyRecord> getAnomalyPage(Instant from, Instant to, PageCursor after, int limit) {
+        int capped = Math.min(Math.max(1, limit), MAX_LIMIT);
+        if (after == null) {
+            return anomalyRecordRepository.findByCreatedAtBetweenOrderByCreatedAtDescIdDesc(
+                from, to, PageRequest.of(0, capped));
+        }
+        return anomalyRecordRepository.findPageBefore(from, to, after.getCreatedAt(), after.getId(), capped);
+    }
+
+    /**
+     * Stream every anomaly in [from, to], oldest first, to the writer. Records are read through a
+     * database cursor and detached once written, so memory stays flat whatever the export size.
+     *
+     * @return number of records written
+     */
+    @Transactional(readOnly = true)
+    public long exportAnomalies(Instant from, Instant to, RecordWriter writer) throws IOException {
+        long count = 0;
+        try (Stream<AnomalyRecord> records = anomalyRecordRepository.streamByCreatedAtBetween(from, to)) {
+            Iterator<AnomalyRecord> it = records.iterator();
+            while (it.hasNext()) {
+                AnomalyRecord r = it.next();
+                writer.write(r);
+                entityManager.detach(r);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Receives records during {@link #exportAnomalies}
+     */
+    @FunctionalInterface
+    public interface RecordWriter {
+        void write(AnomalyRecord record) throws IOException;
     }
 
     /**
      * Get top order IDs (and clOrdIDs) by anomaly count for the given period, up to limit (capped at 1000).
      * Combines order_id and cl_ord_id into a single list of "order identifiers" with counts.
+     * Answered from anomaly_record's covering indexes, through the report cache.
      */
     public List<OrderIdReportItem> getTopOrderIds(Period period, int limit) {
         int capped = Math.min(Math.max(1, limit), MAX_LIMIT);
+        return reportCache.get("order-ids", period, capped, () -> loadTopOrderIds(period, capped));
+    }
+
+    private List<OrderIdReportItem> loadTopOrderIds(Period period, int capped) {
         Instant[] range = toRange(period);
 
-        List<Object[]> byOrderId = anomalyRecordRepository.findTopOrderIdsByAnomalyCount(range[0], range[1]);
-        List<Object[]> byClOrdId = anomalyRecordRepository.findTopClOrdIdsByAnomalyCount(range[0], range[1]);
+        List<Object[]> rows = anomalyRecordRepository.findTopOrderIdentifiersByAnomalyCount(range[0], range[1], capped);
+        List<OrderIdReportItem> items = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            items.add(new OrderIdReportItem((String) row[0], ((Number) row[1]).longValue()));
+        }
+        return items;
+    }
+
+    /**
+     * Get the values of one dimension (anomaly type, session, symbol, ...) with the most anomalies
+     * in the given period, up to limit (capped at 1000).
+     * Rolled-up dimensions are answered from the rollups when enabled, others from anomaly_record,
+     * through the report cache.
+     */
+    public List<DimensionReportItem> getTopValues(Dimension dimension, Period period, int limit) {
+        int capped = Math.min(Math.max(1, limit), MAX_LIMIT);
+        return reportCache.get("breakdown:" + dimension.name(), period, capped,
+            () -> loadTopValues(dimension, period, capped));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<DimensionReportItem> loadTopValues(Dimension dimension, Period period, int capped) {
+        Instant[] range = toRange(period);
 
-        Map<String, Long> combined = new LinkedHashMap<>();
-        for (Object[] row : byOrderId) {
-            String id = (String) row[0];
-            Long count = ((Number) row[1]).longValue();
-            combined.merge(id, count, Long::sum);
+        List<Object[]> rows;
+        if (anomalyRollupService.isEnabled() && dimension.isRolledUp()) {
+            rows = anomalyRollupService.topValues(EnumSet.of(dimension), range[0], range[1], capped);
+        } else {
+            String column = "r." + dimension.getColumn();
+            rows = entityManager.createNativeQuery(
+                    "SELECT " + column + ", COUNT(*) AS cnt FROM anomaly_record r "
+                        + "WHERE r.created_at BETWEEN :from AND :to AND " + column + " IS NOT NULL AND " + column + " != '' "
+                        + "GROUP BY " + column + " ORDER BY cnt DESC LIMIT :limit")
+                .setParameter("from", range[0])
+                .setParameter("to", range[1])
+                .setParameter("limit", capped)
+                .getResultList();
         }
-        for (Object[] row : byClOrdId) {
-            String id = (String) row[0];
-            Long count = ((Number) row[1]).longValue();
-            combined.merge(id, count, Long::sum);
+        List<DimensionReportItem> items = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            items.add(new DimensionReportItem((String) row[0], ((Number) row[1]).longValue()));
         }
-
-        return combined.entrySet().stream()
-            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-            .limit(capped)
-            .map(e -> new OrderIdReportItem(e.getKey(), e.getValue()))
-            .collect(Collectors.toList());
+        return items;
     }
 
     /**
      * Record an anomaly for analytics (e.g. from security engine).
+     * Written through immediately so the returned record carries its ID.
      */
     @Transactional
     public AnomalyRecord recordAnomaly(String anomalyType, String description,
                                        String orderId, String clOrdID, String sessionId, String symbol) {
+        AnomalyRecord saved = anomalyRecordRepository.save(
+            newRecord(anomalyType, description, orderId, clOrdID, sessionId, symbol));
+        anomalyRollupService.record(List.of(saved));
+        reportCache.invalidate();
+        streamHub.publish(saved);
+        return saved;
+    }
+
+    /**
+     * Record an anomaly through the write-behind writer. Preferred for high-volume callers;
+     * when the writer is in ASYNC mode the record is persisted with a later batch.
+     */
+    public void submitAnomaly(String anomalyType, String description,
+                              String orderId, String clOrdID, String sessionId, String symbol) {
+        anomalyBatchWriter.submit(newRecord(anomalyType, description, orderId, clOrdID, sessionId, symbol));
+    }
+
+    /**
+     * Persist records in a single transaction, flushing and detaching every 500 rows so
+     * the persistence context stays small however many records the iterator yields.
+     *
+     * @return generated IDs in iteration order
+     */
+    @Transactional
+    public long[] recordAnomalies(Iterator<AnomalyRecord> records) {
+        long[] ids = new long[BULK_CHUNK_SIZE];
+        int count = 0;
+        List<AnomalyRecord> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+        while (records.hasNext()) {
+            chunk.add(records.next());
+            if (chunk.size() == BULK_CHUNK_SIZE || !records.hasNext()) {
+                for (AnomalyRecord saved : anomalyRecordRepository.saveAll(chunk)) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = saved.getId();
+                }
+                anomalyRollupService.record(chunk);
+                streamHub.publish(chunk);
+                entityManager.flush();
+                entityManager.clear();
+                chunk.clear();
+            }
+        }
+        if (count > 0) {
+            reportCache.invalidate();
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    static AnomalyRecord newRecord(String anomalyType, String description,
+                                   String orderId, String clOrdID, String sessionId, String symbol) {
         AnomalyRecord r = new AnomalyRecord(anomalyType, description);
         r.setOrderId(orderId);
         r.setClOrdID(clOrdID);
         r.setSessionId(sessionId);
         r.setSymbol(symbol);
-        return anomalyRecordRepository.save(r);
+        return r;
     }
 
     /**
@@ -134,4 +278,60 @@ public class AnalyticsService {
         public long getAnomalyCount() { return anomalyCount; }
         public void setAnomalyCount(long anomalyCount) { this.anomalyCount = anomalyCount; }
     }
+
+    /**
+     * DTO for dimension reports: dimension value and anomaly count.
+     */
+    public static class DimensionReportItem {
+        private String value;
+        private long anomalyCount;
+
+        public DimensionReportItem(String value, long anomalyCount) {
+            this.value = value;
+            this.anomalyCount = anomalyCount;
+        }
+
+        public String getValue() { return value; }
+        public void setValue(String value) { this.value = value; }
+        public long getAnomalyCount() { return anomalyCount; }
+        public void setAnomalyCount(long anomalyCount) { this.anomalyCount = anomalyCount; }
+    }
+
+    /**
+     * Keyset position (created_at, id) of the last record of a page, exchanged with clients as an opaque token.
+     */
+    public static class PageCursor {
+        private final Instant createdAt;
+        private final long id;
+
+        public PageCursor(Instant createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        public static PageCursor after(AnomalyRecord last) {
+            return new PageCursor(last.getCreatedAt(), last.getId());
+        }
+
+        public String encode() {
+            String raw = createdAt + "," + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+         */
+        public static PageCursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int comma = raw.indexOf(',');
+                return new PageCursor(Instant.parse(raw.substring(0, comma)), Long.parseLong(raw.substring(comma + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+        }
+
+        public Instant getCreatedAt() { return createdAt; }
+        public long getId() { return id; }
+    }
 }
@@ -0,0 +1,218 @@
+package com.fixsecurity.analytics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind persistence for anomaly records.
+ * In ASYNC mode records are placed on a bounded in-memory queue and a background writer
+ * saves them in multi-row batches (sequence-allocated IDs + JDBC batching), one transaction
+ * per batch. A full queue blocks the caller, so bursts apply back-pressure instead of growing
+ * the heap. In SYNC mode every record is saved immediately in its own transaction.
+ * <p>
+ * ASYNC trades durability for throughput: records still queued when the process dies are lost.
+ * On orderly shutdown the queue is flushed if analytics.anomaly-writer.flush-on-shutdown is set.
+ * A batch the database rejects outright, e.g. a ClOrdID longer than its column, is split until
+ * the offending records are isolated; those are logged and dropped and the rest are saved.
+ */
+@Component
+public class AnomalyBatchWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(AnomalyBatchWriter.class);
+    private static final long RETRY_BACKOFF_MS = 1000;
+
+    public enum Mode {
+        SYNC,
+        ASYNC
+    }
+
+    private final AnomalyRecordRepository anomalyRecordRepository;
+    private final AnomalyRollupService anomalyRollupService;
+    private final AnalyticsReportCache reportCache;
+    private final AnomalyStreamHub streamHub;
+    private final TransactionTemplate transactionTemplate;
+    private final Mode mode;
+    private final BlockingQueue<AnomalyRecord> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final boolean flushOnShutdown;
+    private final long shutdownTimeoutMs;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public AnomalyBatchWriter(AnomalyRecordRepository anomalyRecordRepository,
+                              AnomalyRollupService anomalyRollupService,
+                              AnalyticsReportCache reportCache,
+                              AnomalyStreamHub streamHub,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${analytics.anomaly-writer.mode:ASYNC}") Mode mode,
+                              @Value("${analytics.anomaly-writer.queue-capacity:10000}") int queueCapacity,
+                              @Value("${analytics.anomaly-writer.batch-size:500}") int batchSize,
+                              @Value("${analytics.anomaly-writer.flush-interval-ms:200}") long flushIntervalMs,
+                              @Value("${analytics.anomaly-writer.flush-on-shutdown:true}") boolean flushOnShutdown,
+                              @Value("${analytics.anomaly-writer.shutdown-timeout-ms:10000}") long shutdownTimeoutMs) {
+        this.anomalyRecordRepository = anomalyRecordRepository;
+        this.anomalyRollupService = anomalyRollupService;
+        this.reportCache = reportCache;
+        this.streamHub = streamHub;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushOnShutdown = flushOnShutdown;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode == Mode.ASYNC) {
+            running = true;
+            writerThread = new Thread(this::writeLoop, "anomaly-batch-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * Persist a record: immediately in SYNC mode, otherwise queued for the next batch.
+     * Blocks while the queue is full.
+     */
+    public void submit(AnomalyRecord record) {
+        if (mode == Mode.SYNC || !running) {
+            saveBatch(List.of(record));
+            return;
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            saveBatch(List.of(record));
+        }
+    }
+
+    /**
+     * Save records and their rollup counts as one batched transaction and return them with IDs assigned.
+     * Cached reports are invalidated, and stream subscribers notified, when the transaction commits.
+     */
+    public List<AnomalyRecord> saveBatch(List<AnomalyRecord> records) {
+        return transactionTemplate.execute(status -> {
+            List<AnomalyRecord> saved = anomalyRecordRepository.saveAll(records);
+            anomalyRollupService.record(saved);
+            reportCache.invalidate();
+            streamHub.publish(saved);
+            return saved;
+        });
+    }
+
+    public Mode getMode() { return mode; }
+    public int getQueuedCount() { return queue.size(); }
+    /** Records dropped because the database rejected them */
+    public long getRejectedCount() { return rejectedCount.get(); }
+
+    private void writeLoop() {
+        List<AnomalyRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AnomalyRecord first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Save a batch, retrying transient failures until it succeeds or the writer is stopped so that
+     * a database outage holds records (and, through the full queue, the callers) rather than
+     * dropping them. A permanent failure is not retried: the batch is halved and each half saved
+     * on its own, down to single records, which are dropped.
+     */
+    private void flush(List<AnomalyRecord> batch) throws InterruptedException {
+        while (true) {
+            try {
+                saveBatch(batch);
+                return;
+            } catch (RuntimeException e) {
+                batch.forEach(r -> r.setId(null));
+                if (isPermanent(e)) {
+                    reject(batch, e);
+                    return;
+                }
+                if (!running) {
+                    log.error("Dropping {} anomaly records after failed final flush", batch.size(), e);
+                    return;
+                }
+                log.warn("Failed to persist {} anomaly records, retrying", batch.size(), e);
+                Thread.sleep(RETRY_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void reject(List<AnomalyRecord> batch, RuntimeException e) throws InterruptedException {
+        if (batch.size() == 1) {
+            AnomalyRecord r = batch.get(0);
+            rejectedCount.incrementAndGet();
+            log.error("Dropping anomaly record rejected by the database: type={}, orderId={}, clOrdID={}, session={}",
+                r.getAnomalyType(), r.getOrderId(), r.getClOrdID(), r.getSessionId(), e);
+            return;
+        }
+        int half = batch.size() / 2;
+        flush(batch.subList(0, half));
+        flush(batch.subList(half, batch.size()));
+    }
+
+    /**
+     * Failures that saving the same records again cannot fix, such as constraint violations.
+     * Lost connections are reported as non-transient too, but an outage ends, so they are retried.
+     */
+    private static boolean isPermanent(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        if (!flushOnShutdown) {
+            int discarded = queue.size();
+            queue.clear();
+            if (discarded > 0) {
+                log.warn("Discarding {} queued anomaly records on shutdown", discarded);
+            }
+        }
+        writerThread.join(shutdownTimeoutMs);
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+            log.warn("Anomaly writer did not flush within {} ms; {} records left unsaved",
+                shutdownTimeoutMs, queue.size());
+        }
+    }
+}
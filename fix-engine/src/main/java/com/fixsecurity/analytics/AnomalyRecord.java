@@ -8,14 +8,21 @@ import java.time.Instant;
  */
 @Entity
 @Table(name = "anomaly_record", indexes = {
-    @Index(name = "idx_anomaly_created_at", columnList = "created_at"),
+    @Index(name = "idx_anomaly_created_order_id", columnList = "created_at, order_id"),
+    @Index(name = "idx_anomaly_created_cl_ord_id", columnList = "created_at, cl_ord_id"),
+    @Index(name = "idx_anomaly_created_id", columnList = "created_at, id"),
     @Index(name = "idx_anomaly_order_id", columnList = "order_id"),
     @Index(name = "idx_anomaly_cl_ord_id", columnList = "cl_ord_id")
 })
 public class AnomalyRecord {
 
+    /**
+     * Sequence-allocated so Hibernate can batch inserts; the pooled optimizer reserves
+     * allocationSize IDs per sequence call.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "anomaly_record_seq")
+    @SequenceGenerator(name = "anomaly_record_seq", sequenceName = "anomaly_record_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "order_id", length = 64)
@@ -1,12 +1,16 @@
 package com.fixsecurity.analytics;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository for querying anomaly records for analytics reports.
@@ -19,30 +23,56 @@ public interface AnomalyRecordRepository extends JpaRepository<AnomalyRecord, Lo
     List<AnomalyRecord> findByCreatedAtBetweenOrderByCreatedAtDesc(Instant from, Instant to, Pageable pageable);
 
     /**
-     * Get order IDs with the most anomalies in a time range (up to 1000).
+     * First keyset page: newest records in a time range, ordered by (created_at, id) descending.
+     */
+    List<AnomalyRecord> findByCreatedAtBetweenOrderByCreatedAtDescIdDesc(Instant from, Instant to, Pageable pageable);
+
+    /**
+     * Next keyset page: records strictly older than the cursor (created_at, id), newest first.
+     * The row comparison seeks directly into the (created_at, id) index, so every page costs the same.
      */
     @Query(value = """
-        SELECT r.order_id, COUNT(*) AS cnt
-        FROM anomaly_record r
+        SELECT * FROM anomaly_record r
         WHERE r.created_at BETWEEN :from AND :to
-          AND r.order_id IS NOT NULL AND r.order_id != ''
-        GROUP BY r.order_id
-        ORDER BY cnt DESC
-        LIMIT 1000
+          AND (r.created_at, r.id) < (:cursorCreatedAt, :cursorId)
+        ORDER BY r.created_at DESC, r.id DESC
+        LIMIT :limit
         """, nativeQuery = true)
-    List<Object[]> findTopOrderIdsByAnomalyCount(@Param("from") Instant from, @Param("to") Instant to);
+    List<AnomalyRecord> findPageBefore(@Param("from") Instant from, @Param("to") Instant to,
+                                       @Param("cursorCreatedAt") Instant cursorCreatedAt,
+                                       @Param("cursorId") long cursorId, @Param("limit") int limit);
 
     /**
-     * Same for cl_ord_id when order_id is not present (e.g. NewOrderSingle before execution).
+     * Stream all records in a time range, oldest first. Rows are fetched through a server-side
+     * cursor 500 at a time, so the stream must be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT r FROM AnomalyRecord r WHERE r.createdAt BETWEEN :from AND :to ORDER BY r.createdAt, r.id")
+    Stream<AnomalyRecord> streamByCreatedAtBetween(@Param("from") Instant from, @Param("to") Instant to);
+
+    /**
+     * Get order identifiers with the most anomalies in a time range. order_id and cl_ord_id
+     * (set on NewOrderSingle before an order ID exists) are counted as one identifier space,
+     * and the top-N is cut in the database. Each branch is an index-only scan: the order_id
+     * branch of the (created_at, order_id) index, the cl_ord_id branch of (created_at, cl_ord_id).
      */
     @Query(value = """
-        SELECT r.cl_ord_id, COUNT(*) AS cnt
-        FROM anomaly_record r
-        WHERE r.created_at BETWEEN :from AND :to
-          AND r.cl_ord_id IS NOT NULL AND r.cl_ord_id != ''
-        GROUP BY r.cl_ord_id
+        SELECT ids.order_id, COUNT(*) AS cnt
+        FROM (
+            SELECT r.order_id AS order_id
+            FROM anomaly_record r
+            WHERE r.created_at BETWEEN :from AND :to
+              AND r.order_id IS NOT NULL AND r.order_id != ''
+            UNION ALL
+            SELECT r.cl_ord_id
+            FROM anomaly_record r
+            WHERE r.created_at BETWEEN :from AND :to
+              AND r.cl_ord_id IS NOT NULL AND r.cl_ord_id != ''
+        ) ids
+        GROUP BY ids.order_id
         ORDER BY cnt DESC
-        LIMIT 1000
+        LIMIT :limit
         """, nativeQuery = true)
-    List<Object[]> findTopClOrdIdsByAnomalyCount(@Param("from") Instant from, @Param("to") Instant to);
+    List<Object[]> findTopOrderIdentifiersByAnomalyCount(@Param("from") Instant from, @Param("to") Instant to,
+                                                         @Param("limit") int limit);
 }
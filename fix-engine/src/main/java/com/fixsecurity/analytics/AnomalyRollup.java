@@ -0,0 +1,129 @@
+package com.fixsecurity.analytics;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Pre-aggregated anomaly count for one dimension value in one minute or hour bucket.
+ * Maintained by {@link AnomalyRollupService} in the same transaction as the raw anomaly_record rows.
+ */
+@Entity
+@Table(name = "anomaly_rollup", indexes = {
+    @Index(name = "idx_rollup_lookup", columnList = "granularity, dimension, bucket_start")
+})
+public class AnomalyRollup {
+
+    public enum Granularity {
+        MINUTE,
+        HOUR
+    }
+
+    /**
+     * Anomaly attributes that reports break down by, with their anomaly_record column. Only the
+     * low-cardinality ones are rolled up: order IDs and ClOrdIDs are close to unique per anomaly,
+     * so their buckets would hold about one row per anomaly and cost as much to scan as
+     * anomaly_record, which answers them from its (created_at, order_id) and (created_at,
+     * cl_ord_id) indexes instead.
+     */
+    public enum Dimension {
+        ANOMALY_TYPE("anomaly_type", true),
+        ORDER_ID("order_id", false),
+        CL_ORD_ID("cl_ord_id", false),
+        SESSION_ID("session_id", true),
+        SYMBOL("symbol", true);
+
+        private final String column;
+        private final boolean rolledUp;
+
+        Dimension(String column, boolean rolledUp) {
+            this.column = column;
+            this.rolledUp = rolledUp;
+        }
+
+        public String getColumn() { return column; }
+
+        /** Whether anomaly_rollup keeps counts for this dimension */
+        public boolean isRolledUp() { return rolledUp; }
+
+        /** Value of this dimension on a record */
+        public String valueOf(AnomalyRecord r) {
+            switch (this) {
+                case ANOMALY_TYPE: return r.getAnomalyType();
+                case ORDER_ID:     return r.getOrderId();
+                case CL_ORD_ID:    return r.getClOrdID();
+                case SESSION_ID:   return r.getSessionId();
+                case SYMBOL:       return r.getSymbol();
+                default:           throw new IllegalStateException("Unknown dimension: " + this);
+            }
+        }
+    }
+
+    @EmbeddedId
+    private Key key;
+
+    @Column(name = "anomaly_count", nullable = false)
+    private long anomalyCount;
+
+    public AnomalyRollup() {
+    }
+
+    public Key getKey() { return key; }
+    public void setKey(Key key) { this.key = key; }
+
+    public long getAnomalyCount() { return anomalyCount; }
+    public void setAnomalyCount(long anomalyCount) { this.anomalyCount = anomalyCount; }
+
+    /**
+     * Composite primary key: (granularity, dimension, bucket_start, dim_value)
+     */
+    @Embeddable
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Enumerated(EnumType.STRING)
+        @Column(name = "granularity", nullable = false, length = 8)
+        private Granularity granularity;
+
+        @Enumerated(EnumType.STRING)
+        @Column(name = "dimension", nullable = false, length = 16)
+        private Dimension dimension;
+
+        @Column(name = "bucket_start", nullable = false)
+        private Instant bucketStart;
+
+        @Column(name = "dim_value", nullable = false, length = 128)
+        private String dimValue;
+
+        public Key() {
+        }
+
+        public Key(Granularity granularity, Dimension dimension, Instant bucketStart, String dimValue) {
+            this.granularity = granularity;
+            this.dimension = dimension;
+            this.bucketStart = bucketStart;
+            this.dimValue = dimValue;
+        }
+
+        public Granularity getGranularity() { return granularity; }
+        public Dimension getDimension() { return dimension; }
+        public Instant getBucketStart() { return bucketStart; }
+        public String getDimValue() { return dimValue; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return granularity == other.granularity && dimension == other.dimension
+                && Objects.equals(bucketStart, other.bucketStart) && Objects.equals(dimValue, other.dimValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(granularity, dimension, bucketStart, dimValue);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.fixsecurity.analytics;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for reading and trimming anomaly rollups.
+ */
+public interface AnomalyRollupRepository extends JpaRepository<AnomalyRollup, AnomalyRollup.Key> {
+
+    /**
+     * Get the dimension values with the most anomalies in [from, to]. Whole hours before
+     * hourStart come from hour buckets and the rest from minute buckets, so the cost depends
+     * on the number of buckets and distinct values, not on the number of raw rows. Only
+     * meaningful for rolled-up dimensions. from and hourStart must be hour-aligned.
+     */
+    @Query(value = """
+        SELECT r.dim_value, SUM(r.anomaly_count) AS cnt
+        FROM anomaly_rollup r
+        WHERE r.dimension IN (:dimensions)
+          AND ((r.granularity = 'HOUR' AND r.bucket_start >= :from AND r.bucket_start < :hourStart)
+            OR (r.granularity = 'MINUTE' AND r.bucket_start >= :hourStart AND r.bucket_start <= :to))
+        GROUP BY r.dim_value
+        ORDER BY cnt DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Object[]> findTopValues(@Param("dimensions") Collection<String> dimensions,
+                                 @Param("from") Instant from, @Param("hourStart") Instant hourStart,
+                                 @Param("to") Instant to, @Param("limit") int limit);
+
+    /**
+     * Delete buckets of one granularity older than cutoff
+     */
+    @Modifying
+    @Query(value = "DELETE FROM anomaly_rollup WHERE granularity = :granularity AND bucket_start < :cutoff",
+        nativeQuery = true)
+    int deleteBucketsBefore(@Param("granularity") String granularity, @Param("cutoff") Instant cutoff);
+}
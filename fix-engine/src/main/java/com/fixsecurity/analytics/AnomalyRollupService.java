@@ -0,0 +1,184 @@
+package com.fixsecurity.analytics;
+
+import com.fixsecurity.analytics.AnomalyRollup.Dimension;
+import com.fixsecurity.analytics.AnomalyRollup.Granularity;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Incremental per-minute and per-hour anomaly counts by type, session and symbol, the dimensions
+ * with few distinct values (see {@link Dimension#isRolledUp}). Every write path adds its records
+ * here inside the transaction that inserts them, so the rollups match anomaly_record exactly.
+ * Counts are aggregated per batch and applied as one batched upsert. Minute buckets are kept for
+ * a day and hour buckets for a little over the longest report period.
+ */
+@Service
+public class AnomalyRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnomalyRollupService.class);
+
+    private static final String UPSERT = """
+        INSERT INTO anomaly_rollup (granularity, dimension, bucket_start, dim_value, anomaly_count)
+        VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (granularity, dimension, bucket_start, dim_value)
+        DO UPDATE SET anomaly_count = anomaly_rollup.anomaly_count + EXCLUDED.anomaly_count
+        """;
+
+    /** Upsert order; every transaction locks rollup rows in the same order, so they cannot deadlock */
+    private static final Comparator<AnomalyRollup.Key> KEY_ORDER =
+        Comparator.comparing(AnomalyRollup.Key::getGranularity)
+            .thenComparing(AnomalyRollup.Key::getDimension)
+            .thenComparing(AnomalyRollup.Key::getBucketStart)
+            .thenComparing(AnomalyRollup.Key::getDimValue);
+
+    private static final List<Dimension> ROLLED_UP =
+        Arrays.stream(Dimension.values()).filter(Dimension::isRolledUp).toList();
+
+    private final AnomalyRollupRepository anomalyRollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final boolean rebuildOnStartup;
+    private final Duration minuteRetention;
+    private final Duration hourRetention;
+
+    public AnomalyRollupService(AnomalyRollupRepository anomalyRollupRepository,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${analytics.rollup.enabled:true}") boolean enabled,
+                                @Value("${analytics.rollup.rebuild-on-startup:false}") boolean rebuildOnStartup,
+                                @Value("${analytics.rollup.minute-retention-hours:24}") long minuteRetentionHours,
+                                @Value("${analytics.rollup.hour-retention-days:35}") long hourRetentionDays) {
+        this.anomalyRollupRepository = anomalyRollupRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.minuteRetention = Duration.ofHours(Math.max(1, minuteRetentionHours));
+        // Month reports read 30 days of hour buckets
+        this.hourRetention = Duration.ofDays(Math.max(31, hourRetentionDays));
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /**
+     * Add records to the rollups. Must run in the transaction that inserts the records.
+     */
+    public void record(Collection<AnomalyRecord> records) {
+        if (!enabled || records.isEmpty()) {
+            return;
+        }
+        Map<AnomalyRollup.Key, Long> deltas = new HashMap<>();
+        for (AnomalyRecord r : records) {
+            Instant minute = r.getCreatedAt().truncatedTo(ChronoUnit.MINUTES);
+            Instant hour = r.getCreatedAt().truncatedTo(ChronoUnit.HOURS);
+            for (Dimension dimension : ROLLED_UP) {
+                String value = dimension.valueOf(r);
+                if (value == null || value.isEmpty()) {
+                    continue;
+                }
+                deltas.merge(new AnomalyRollup.Key(Granularity.MINUTE, dimension, minute, value), 1L, Long::sum);
+                deltas.merge(new AnomalyRollup.Key(Granularity.HOUR, dimension, hour, value), 1L, Long::sum);
+            }
+        }
+        List<Map.Entry<AnomalyRollup.Key, Long>> rows = new ArrayList<>(deltas.entrySet());
+        rows.sort(Map.Entry.comparingByKey(KEY_ORDER));
+        jdbcTemplate.batchUpdate(UPSERT, rows, rows.size(), this::bindUpsert);
+    }
+
+    private void bindUpsert(PreparedStatement ps, Map.Entry<AnomalyRollup.Key, Long> row) throws SQLException {
+        AnomalyRollup.Key key = row.getKey();
+        ps.setString(1, key.getGranularity().name());
+        ps.setString(2, key.getDimension().name());
+        ps.setObject(3, OffsetDateTime.ofInstant(key.getBucketStart(), ZoneOffset.UTC));
+        ps.setString(4, key.getDimValue());
+        ps.setLong(5, row.getValue());
+    }
+
+    /**
+     * Top values of rolled-up dimensions by anomaly count in [from, to], combining the given
+     * dimensions into one value space. from must be hour-aligned.
+     *
+     * @return rows of (value, count), highest count first
+     */
+    public List<Object[]> topValues(Collection<Dimension> dimensions, Instant from, Instant to, int limit) {
+        Instant hourStart = to.truncatedTo(ChronoUnit.HOURS);
+        List<String> names = new ArrayList<>(dimensions.size());
+        for (Dimension dimension : dimensions) {
+            if (!dimension.isRolledUp()) {
+                throw new IllegalArgumentException(dimension + " is not rolled up");
+            }
+            names.add(dimension.name());
+        }
+        return anomalyRollupRepository.findTopValues(names, from, hourStart, to, limit);
+    }
+
+    /**
+     * Recompute all rollups from anomaly_record, e.g. after enabling rollups on an existing
+     * database. Runs in one transaction; anomalies recorded concurrently may be counted twice,
+     * so run it before taking traffic.
+     */
+    public void rebuild() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM anomaly_rollup");
+            for (Granularity granularity : Granularity.values()) {
+                String unit = granularity == Granularity.MINUTE ? "minute" : "hour";
+                for (Dimension dimension : ROLLED_UP) {
+                    String column = "r." + dimension.getColumn();
+                    jdbcTemplate.update(
+                        "INSERT INTO anomaly_rollup (granularity, dimension, bucket_start, dim_value, anomaly_count) "
+                            + "SELECT '" + granularity.name() + "', '" + dimension.name() + "', "
+                            + "date_trunc('" + unit + "', r.created_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC', "
+                            + column + ", COUNT(*) FROM anomaly_record r "
+                            + "WHERE " + column + " IS NOT NULL AND " + column + " != '' GROUP BY 3, 4");
+                }
+            }
+        });
+    }
+
+    @PostConstruct
+    public void rebuildIfConfigured() {
+        if (enabled && rebuildOnStartup) {
+            rebuild();
+            log.info("Rebuilt anomaly rollups from anomaly_record");
+        }
+    }
+
+    /**
+     * Drop minute and hour buckets past their retention. This also clears buckets of dimensions
+     * that are no longer rolled up once they age out.
+     */
+    @Scheduled(fixedDelayString = "${analytics.rollup.purge-interval-ms:3600000}")
+    public void purgeExpiredBuckets() {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        purge(Granularity.MINUTE, now.minus(minuteRetention).truncatedTo(ChronoUnit.HOURS));
+        purge(Granularity.HOUR, now.minus(hourRetention).truncatedTo(ChronoUnit.HOURS));
+    }
+
+    private void purge(Granularity granularity, Instant cutoff) {
+        Integer deleted = transactionTemplate.execute(
+            status -> anomalyRollupRepository.deleteBucketsBefore(granularity.name(), cutoff));
+        if (deleted != null && deleted > 0) {
+            log.debug("Purged {} {} rollup buckets before {}", deleted, granularity, cutoff);
+        }
+    }
+}
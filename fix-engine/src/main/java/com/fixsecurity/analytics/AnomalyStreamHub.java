@@ -0,0 +1,287 @@
+package com.fixsecurity.analytics;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes anomalies to Server-Sent Events subscribers as they are recorded, so dashboards do
+ * not have to poll the report endpoints.
+ * <p>
+ * Publishing never blocks: each matching subscriber gets the event in its own bounded buffer,
+ * which drops its oldest event when full, and a per-subscriber drain task on a shared pool
+ * writes the buffer to the connection. A slow client therefore only loses its own oldest
+ * events (and is told how many in a "dropped" event) while recording and other subscribers
+ * carry on. Filters are applied before buffering, so unwanted events cost the client nothing.
+ */
+@Component
+public class AnomalyStreamHub {
+
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMs;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger senderThreads = new AtomicInteger();
+    private final ExecutorService senders = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "anomaly-stream-" + senderThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AnomalyStreamHub(@Value("${analytics.anomaly-stream.buffer-size:1024}") int bufferSize,
+                            @Value("${analytics.anomaly-stream.max-subscribers:100}") int maxSubscribers,
+                            @Value("${analytics.anomaly-stream.timeout-ms:0}") long timeoutMs) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Open a stream of anomalies matching the filter
+     *
+     * @return the emitter to return from the request handler, or null if the subscriber limit is reached
+     */
+    public SseEmitter subscribe(Filter filter) {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, filter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Publish records to subscribers once the current transaction commits, or immediately
+     * outside a transaction
+     */
+    public void publish(List<AnomalyRecord> records) {
+        if (subscribers.isEmpty() || records.isEmpty()) {
+            return;
+        }
+        // Snapshot now: the records may be detached or have their IDs reset by the time of commit
+        List<Event> events = new ArrayList<>(records.size());
+        for (AnomalyRecord r : records) {
+            events.add(new Event(r));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(events);
+                }
+            });
+        } else {
+            dispatch(events);
+        }
+    }
+
+    public void publish(AnomalyRecord record) {
+        publish(List.of(record));
+    }
+
+    private void dispatch(List<Event> events) {
+        for (Event event : events) {
+            event.sequence = sequence.incrementAndGet();
+            published.increment();
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.filter.matches(event)) {
+                    subscriber.offer(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep idle connections open through proxies, and notice clients that have gone away
+     */
+    @Scheduled(fixedDelayString = "${analytics.anomaly-stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeat();
+        }
+    }
+
+    public int getSubscriberCount() { return subscribers.size(); }
+    public long getPublished() { return published.sum(); }
+    public long getDropped() { return dropped.sum(); }
+
+    @PreDestroy
+    public void stop() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Which anomalies a subscriber receives. A null or empty set matches any value.
+     */
+    public static final class Filter {
+        private final Set<String> sessionIds;
+        private final Set<String> symbols;
+        private final Set<String> anomalyTypes;
+
+        public Filter(Set<String> sessionIds, Set<String> symbols, Set<String> anomalyTypes) {
+            this.sessionIds = sessionIds == null || sessionIds.isEmpty() ? null : Set.copyOf(sessionIds);
+            this.symbols = symbols == null || symbols.isEmpty() ? null : Set.copyOf(symbols);
+            this.anomalyTypes = anomalyTypes == null || anomalyTypes.isEmpty() ? null : Set.copyOf(anomalyTypes);
+        }
+
+        boolean matches(Event event) {
+            return matches(sessionIds, event.sessionId)
+                && matches(symbols, event.symbol)
+                && matches(anomalyTypes, event.anomalyType);
+        }
+
+        private static boolean matches(Set<String> allowed, String value) {
+            return allowed == null || (value != null && allowed.contains(value));
+        }
+    }
+
+    /**
+     * Copy of a record taken when it is published, numbered when dispatched
+     */
+    private static final class Event {
+        private final Long id;
+        private final String anomalyType;
+        private final String description;
+        private final String orderId;
+        private final String clOrdID;
+        private final String sessionId;
+        private final String symbol;
+        private final String createdAt;
+        private long sequence;
+
+        Event(AnomalyRecord r) {
+            this.id = r.getId();
+            this.anomalyType = r.getAnomalyType();
+            this.description = r.getDescription();
+            this.orderId = r.getOrderId();
+            this.clOrdID = r.getClOrdID();
+            this.sessionId = r.getSessionId();
+            this.symbol = r.getSymbol();
+            this.createdAt = r.getCreatedAt().toString();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("anomalyType", anomalyType);
+            map.put("description", description != null ? description : "");
+            map.put("orderId", orderId != null ? orderId : "");
+            map.put("clOrdID", clOrdID != null ? clOrdID : "");
+            map.put("sessionId", sessionId != null ? sessionId : "");
+            map.put("symbol", symbol != null ? symbol : "");
+            map.put("createdAt", createdAt);
+            return map;
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Filter filter;
+        private final ArrayDeque<Event> buffer = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private long droppedSinceSend;
+        private boolean heartbeatDue;
+
+        Subscriber(SseEmitter emitter, Filter filter) {
+            this.emitter = emitter;
+            this.filter = filter;
+        }
+
+        void offer(Event event) {
+            synchronized (buffer) {
+                if (buffer.size() == bufferSize) {
+                    buffer.pollFirst();
+                    droppedSinceSend++;
+                    dropped.increment();
+                }
+                buffer.addLast(event);
+            }
+            scheduleDrain();
+        }
+
+        void heartbeat() {
+            synchronized (buffer) {
+                heartbeatDue = true;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RuntimeException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        /**
+         * Write buffered events until the buffer is empty. Only one drain runs per subscriber,
+         * so events reach the client in order and a blocked write holds one pool thread.
+         */
+        private void drain() {
+            try {
+                while (true) {
+                    Event event;
+                    long droppedCount;
+                    boolean ping;
+                    synchronized (buffer) {
+                        event = buffer.pollFirst();
+                        droppedCount = droppedSinceSend;
+                        droppedSinceSend = 0;
+                        ping = heartbeatDue && event == null && droppedCount == 0;
+                        heartbeatDue = false;
+                        if (event == null && droppedCount == 0 && !ping) {
+                            draining.set(false);
+                            return;
+                        }
+                    }
+                    if (droppedCount > 0) {
+                        emitter.send(SseEmitter.event().name("dropped")
+                            .data(Map.of("count", droppedCount), MediaType.APPLICATION_JSON));
+                    }
+                    if (event != null) {
+                        emitter.send(SseEmitter.event().id(String.valueOf(event.sequence)).name("anomaly")
+                            .data(event.toMap(), MediaType.APPLICATION_JSON));
+                    }
+                    if (ping) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client went away or the emitter already completed; stay marked as draining so
+                // nothing is scheduled for it again
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
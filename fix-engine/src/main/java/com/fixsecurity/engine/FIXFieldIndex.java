@@ -0,0 +1,215 @@
+package com.fixsecurity.engine;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Primitive index over the tag=value fields of a raw FIX message.
+ * Stores the tag, value offset and value length of every field in parallel int arrays
+ * and decodes values from the underlying buffer only when they are requested.
+ * Lookups never throw: a missing or malformed field yields null / 0 / 0.0.
+ */
+public class FIXFieldIndex {
+    private static final int INITIAL_CAPACITY = 32;
+
+    /** Exact powers of ten usable for correctly rounded fast-path double decoding */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private byte[] buffer;
+    private int[] tags = new int[INITIAL_CAPACITY];
+    private int[] valueOffsets = new int[INITIAL_CAPACITY];
+    private int[] valueLengths = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Clear all entries and point the index at a new buffer.
+     */
+    public void reset(byte[] buffer) {
+        this.buffer = buffer;
+        this.size = 0;
+    }
+
+    /**
+     * Append a field. Offsets are absolute positions in the current buffer.
+     */
+    public void add(int tag, int valueOffset, int valueLength) {
+        if (size == tags.length) {
+            grow();
+        }
+        tags[size] = tag;
+        valueOffsets[size] = valueOffset;
+        valueLengths[size] = valueLength;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = tags.length * 2;
+        tags = Arrays.copyOf(tags, capacity);
+        valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+        valueLengths = Arrays.copyOf(valueLengths, capacity);
+    }
+
+    public byte[] getBuffer() { return buffer; }
+    public int size() { return size; }
+    public int tagAt(int i) { return tags[i]; }
+    public int valueOffsetAt(int i) { return valueOffsets[i]; }
+    public int valueLengthAt(int i) { return valueLengths[i]; }
+
+    /**
+     * Position of the first occurrence of a tag, or -1 if absent
+     */
+    public int indexOf(int tag) {
+        for (int i = 0; i < size; i++) {
+            if (tags[i] == tag) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int tag) {
+        return indexOf(tag) >= 0;
+    }
+
+    public String getString(int tag) {
+        int i = indexOf(tag);
+        return i < 0 ? null : new String(buffer, valueOffsets[i], valueLengths[i], StandardCharsets.ISO_8859_1);
+    }
+
+    public int getInt(int tag) {
+        int i = indexOf(tag);
+        return i < 0 ? 0 : decodeInt(buffer, valueOffsets[i], valueLengths[i]);
+    }
+
+    public double getDouble(int tag) {
+        int i = indexOf(tag);
+        return i < 0 ? 0.0 : decodeDouble(buffer, valueOffsets[i], valueLengths[i]);
+    }
+
+    /**
+     * Compare a field's value with an ASCII string without decoding it
+     */
+    public boolean valueEquals(int tag, String expected) {
+        int i = indexOf(tag);
+        if (i < 0 || valueLengths[i] != expected.length()) {
+            return false;
+        }
+        int offset = valueOffsets[i];
+        for (int j = 0; j < valueLengths[i]; j++) {
+            if (buffer[offset + j] != expected.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the tag -> field map in the form exposed by {@link ParsedMessage#getAllFields()}:
+     * keys are the tag number, values the full "tag=value" text, first occurrence wins.
+     * The trailer CheckSum(10) is excluded, as in {@link FIXMessageParser}.
+     */
+    public Map<String, String> toFieldMap() {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            int tag = tags[i];
+            if (tag == 10) {
+                continue;
+            }
+            String key = String.valueOf(tag);
+            if (!fields.containsKey(key)) {
+                int fieldStart = valueOffsets[i] - key.length() - 1;
+                int fieldLength = valueLengths[i] + key.length() + 1;
+                fields.put(key, new String(buffer, fieldStart, fieldLength, StandardCharsets.ISO_8859_1));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Decode an optionally signed decimal integer; returns 0 if the bytes are not a valid int.
+     */
+    static int decodeInt(byte[] buf, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && buf[i] == '-') {
+            negative = true;
+            i++;
+        }
+        if (i == end) {
+            return 0;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return 0;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return 0;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? 0 : (int) value;
+    }
+
+    /**
+     * Decode an optionally signed decimal number of the form [-]digits[.digits].
+     * Up to 15 significant digits are decoded exactly as mantissa / 10^scale,
+     * which IEEE division rounds identically to {@link Double#parseDouble}.
+     * Longer values fall back to Double.parseDouble after validation, so no
+     * exception is ever thrown. Returns 0.0 for malformed input.
+     */
+    static double decodeDouble(byte[] buf, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && buf[i] == '-') {
+            negative = true;
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int scale = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b == '.') {
+                if (seenPoint) {
+                    return 0.0;
+                }
+                seenPoint = true;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                return 0.0;
+            }
+            digits++;
+            if (significantDigits > 0 || digit != 0) {
+                significantDigits++;
+            }
+            if (significantDigits <= 15) {
+                mantissa = mantissa * 10 + digit;
+                if (seenPoint) {
+                    scale++;
+                }
+            }
+        }
+        if (digits == 0) {
+            return 0.0;
+        }
+        if (significantDigits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(buf, offset, length, StandardCharsets.ISO_8859_1));
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+}
@@ -2,6 +2,7 @@ package com.fixsecurity.engine;
 
 import quickfix.*;
 import quickfix.field.*;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Iterator;
@@ -11,6 +12,7 @@ import java.util.Iterator;
  * Parses FIX protocol messages and extracts key information
  */
 public class FIXMessageParser {
+    private static final FIXTagValueParser CHECKSUM_VALIDATOR = new FIXTagValueParser();
     
     /**
      * Parse a FIX message string into a structured object
@@ -72,6 +74,7 @@ public class FIXMessageParser {
     
     private void extractExecutionReportFields(Message message, ParsedMessage parsed) {
         parsed.setOrderID(getStringField(message, OrderID.FIELD));
+        parsed.setClOrdID(getStringField(message, ClOrdID.FIELD));
         parsed.setExecID(getStringField(message, ExecID.FIELD));
         parsed.setExecType(getStringField(message, ExecType.FIELD));
         parsed.setOrdStatus(getStringField(message, OrdStatus.FIELD));
@@ -143,15 +146,15 @@ public class FIXMessageParser {
     }
     
     /**
-     * Validate FIX message checksum
+     * Validate FIX message checksum.
+     * Uses a single byte scan instead of building a second QuickFIX/J Message.
      */
     public boolean validateChecksum(String fixString) {
-        try {
-            Message message = new Message(fixString);
-            return message.getTrailer().getInt(CheckSum.FIELD) == 
-                   MessageUtils.checksum(fixString.substring(0, fixString.lastIndexOf("10=")));
-        } catch (Exception e) {
+        if (fixString == null) {
             return false;
         }
+        byte[] data = fixString.getBytes(StandardCharsets.ISO_8859_1);
+        ValidationStatus status = CHECKSUM_VALIDATOR.validate(data, 0, data.length);
+        return status == ValidationStatus.VALID || status == ValidationStatus.INVALID_BODY_LENGTH;
     }
 }
@@ -0,0 +1,111 @@
+package com.fixsecurity.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a stream of concatenated FIX messages into individual messages.
+ * A message ends after its SOH-terminated CheckSum(10) field or at a line break,
+ * so both back-to-back SOH framed messages and one-message-per-line input are accepted.
+ * Only the current message is held in memory; its bytes are reused by the next call to {@link #next()}.
+ */
+public class FIXMessageStreamReader {
+    public static final int DEFAULT_MAX_MESSAGE_BYTES = 64 * 1024;
+
+    private static final int SOH = 0x01;
+
+    private final InputStream in;
+    private final int maxMessageBytes;
+    private final byte[] readBuffer = new byte[8192];
+    private int readPos;
+    private int readLimit;
+
+    private byte[] message = new byte[1024];
+    private int messageLength;
+    private boolean oversized;
+
+    public FIXMessageStreamReader(InputStream in) {
+        this(in, DEFAULT_MAX_MESSAGE_BYTES);
+    }
+
+    public FIXMessageStreamReader(InputStream in, int maxMessageBytes) {
+        this.in = in;
+        this.maxMessageBytes = maxMessageBytes;
+    }
+
+    /**
+     * Advance to the next message
+     *
+     * @return false when the stream is exhausted
+     */
+    public boolean next() throws IOException {
+        messageLength = 0;
+        oversized = false;
+
+        int b = read();
+        while (b == '\n' || b == '\r' || b == SOH || b == ' ' || b == '\t') {
+            b = read();
+        }
+        if (b == -1) {
+            return false;
+        }
+
+        int fieldPos = 0;
+        boolean checkSumField = false;
+        for (; b != -1; b = read()) {
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            append((byte) b);
+            if (b == SOH) {
+                if (checkSumField && fieldPos >= 3) {
+                    break;
+                }
+                fieldPos = 0;
+                checkSumField = false;
+                continue;
+            }
+            if (fieldPos == 0) {
+                checkSumField = b == '1';
+            } else if (fieldPos == 1) {
+                checkSumField &= b == '0';
+            } else if (fieldPos == 2) {
+                checkSumField &= b == '=';
+            }
+            fieldPos++;
+        }
+        return true;
+    }
+
+    /** Bytes of the current message, valid in [0, length()) until the next call to next() */
+    public byte[] buffer() { return message; }
+    public int length() { return messageLength; }
+
+    /** True if the current message was longer than the configured maximum and has been truncated */
+    public boolean isOversized() { return oversized; }
+    public int getMaxMessageBytes() { return maxMessageBytes; }
+
+    private void append(byte b) {
+        if (messageLength == maxMessageBytes) {
+            oversized = true;
+            return;
+        }
+        if (messageLength == message.length) {
+            message = Arrays.copyOf(message, Math.min(message.length * 2, maxMessageBytes));
+        }
+        message[messageLength++] = b;
+    }
+
+    private int read() throws IOException {
+        if (readPos == readLimit) {
+            readLimit = in.read(readBuffer, 0, readBuffer.length);
+            readPos = 0;
+            if (readLimit <= 0) {
+                readLimit = 0;
+                return -1;
+            }
+        }
+        return readBuffer[readPos++] & 0xFF;
+    }
+}
@@ -0,0 +1,239 @@
+package com.fixsecurity.engine;
+
+import quickfix.field.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zero-copy FIX parser.
+ * Scans SOH-delimited tag=value bytes directly, records each field's position in a
+ * {@link FIXFieldIndex} and decodes only the fields needed to fill a {@link ParsedMessage}.
+ * Produces the same ParsedMessage as {@link FIXMessageParser} for well-formed messages
+ * without building a QuickFIX/J Message or using exceptions for missing fields.
+ * BodyLength(9) and CheckSum(10) are verified during the same scan; the outcome is reported
+ * on the result or, if configured, causes the message to be rejected.
+ */
+public class FIXTagValueParser {
+
+    private static final byte SOH = 0x01;
+    private static final byte EQUALS = '=';
+
+    private static final ThreadLocal<FlyweightParsedMessage> THREAD_MESSAGE =
+        ThreadLocal.withInitial(FlyweightParsedMessage::new);
+
+    private final boolean rejectInvalid;
+
+    /**
+     * Create a parser that reports BodyLength/CheckSum problems through
+     * {@link ParsedMessage#getValidationStatus()} instead of rejecting the message.
+     */
+    public FIXTagValueParser() {
+        this(false);
+    }
+
+    /**
+     * @param rejectInvalid if true, a BodyLength or CheckSum mismatch raises InvalidMessageException,
+     *                      as FIXMessageParser does for bad checksums
+     */
+    public FIXTagValueParser(boolean rejectInvalid) {
+        this.rejectInvalid = rejectInvalid;
+    }
+
+    public ParsedMessage parse(String fixString) throws InvalidMessageException {
+        if (fixString == null) {
+            throw new InvalidMessageException("Failed to parse FIX message: message is null");
+        }
+        return parse(fixString.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    public ParsedMessage parse(byte[] data) throws InvalidMessageException {
+        return parse(data, 0, data.length);
+    }
+
+    /**
+     * Parse the remaining bytes of a buffer without changing its position.
+     * Heap buffers are read in place; direct buffers are copied once into a byte array.
+     */
+    public ParsedMessage parse(ByteBuffer buffer) throws InvalidMessageException {
+        if (buffer.hasArray()) {
+            return parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return parse(copy, 0, copy.length);
+    }
+
+    /**
+     * Parse a FIX message held in data[offset, offset + length)
+     *
+     * @throws InvalidMessageException if the bytes are not a framed tag=value message
+     */
+    public ParsedMessage parse(byte[] data, int offset, int length) throws InvalidMessageException {
+        FIXFieldIndex index = new FIXFieldIndex();
+        ValidationStatus status = scan(data, offset, length, index);
+        ParsedMessage parsed = new ParsedMessage();
+        checkValidation(status, parsed);
+        extractMessageInfo(index, parsed);
+        parsed.setAllFields(index.toFieldMap());
+        return parsed;
+    }
+
+    /**
+     * Parse into a caller-owned flyweight, resetting it first. No field map is built;
+     * the flyweight keeps referencing data until it is reset again.
+     */
+    public FlyweightParsedMessage parseInto(byte[] data, int offset, int length, FlyweightParsedMessage target)
+            throws InvalidMessageException {
+        target.reset();
+        ValidationStatus status = scan(data, offset, length, target.fieldIndex());
+        checkValidation(status, target);
+        extractMessageInfo(target.fieldIndex(), target);
+        return target;
+    }
+
+    /**
+     * Parse into the calling thread's reusable flyweight. The result is only valid until
+     * the same thread parses its next message and must not be handed to other threads.
+     */
+    public FlyweightParsedMessage parseReusable(byte[] data, int offset, int length) throws InvalidMessageException {
+        return parseInto(data, offset, length, THREAD_MESSAGE.get());
+    }
+
+    /**
+     * Index every field of the message and, in the same pass, verify BodyLength(9) and CheckSum(10).
+     * Framing rules follow QuickFIX/J: the message must start with BeginString(8), BodyLength(9),
+     * MsgType(35), end with CheckSum(10), and every field must be terminated by SOH.
+     *
+     * @return whether the declared BodyLength and CheckSum match the bytes scanned
+     */
+    ValidationStatus scan(byte[] data, int offset, int length, FIXFieldIndex index) throws InvalidMessageException {
+        index.reset(data);
+        int end = offset + length;
+        int pos = offset;
+        int sum = 0;
+        int bodyStart = -1;
+        int lastFieldStart = offset;
+        int sumBeforeLastField = 0;
+        while (pos < end) {
+            int tag = 0;
+            int tagStart = pos;
+            int sumAtFieldStart = sum;
+            while (pos < end && data[pos] != EQUALS) {
+                int digit = data[pos] - '0';
+                if (digit < 0 || digit > 9 || pos - tagStart >= 9) {
+                    throw invalid("Bad tag format at offset " + (pos - offset));
+                }
+                tag = tag * 10 + digit;
+                sum += data[pos];
+                pos++;
+            }
+            if (pos == end) {
+                throw invalid("Equal sign not found in field at offset " + (tagStart - offset));
+            }
+            if (pos == tagStart) {
+                throw invalid("Empty tag at offset " + (tagStart - offset));
+            }
+            sum += EQUALS;
+            int valueStart = ++pos;
+            while (pos < end && data[pos] != SOH) {
+                sum += data[pos];
+                pos++;
+            }
+            if (pos == end) {
+                throw invalid("SOH not found at end of field: " + tag);
+            }
+            sum += SOH;
+            if (index.size() == 2) {
+                bodyStart = tagStart;
+            }
+            index.add(tag, valueStart, pos - valueStart);
+            lastFieldStart = tagStart;
+            sumBeforeLastField = sumAtFieldStart;
+            pos++;
+        }
+
+        if (index.size() < 4 || index.tagAt(0) != BeginString.FIELD
+                || index.tagAt(1) != BodyLength.FIELD || index.tagAt(2) != MsgType.FIELD) {
+            throw invalid("Header fields out of order");
+        }
+        int last = index.size() - 1;
+        if (index.tagAt(last) != CheckSum.FIELD) {
+            throw invalid("CheckSum(10) must be the last field");
+        }
+
+        int declaredChecksum = FIXFieldIndex.decodeInt(data, index.valueOffsetAt(last), index.valueLengthAt(last));
+        if (index.valueLengthAt(last) != 3 || declaredChecksum != (sumBeforeLastField & 0xFF)) {
+            return ValidationStatus.INVALID_CHECKSUM;
+        }
+        if (index.getInt(BodyLength.FIELD) != lastFieldStart - bodyStart) {
+            return ValidationStatus.INVALID_BODY_LENGTH;
+        }
+        return ValidationStatus.VALID;
+    }
+
+    /**
+     * Verify BodyLength and CheckSum of a raw message without extracting any fields
+     */
+    public ValidationStatus validate(byte[] data, int offset, int length) {
+        try {
+            return scan(data, offset, length, new FIXFieldIndex());
+        } catch (InvalidMessageException e) {
+            return ValidationStatus.MALFORMED;
+        }
+    }
+
+    /**
+     * Apply the parser's validation mode to the status computed by scan
+     */
+    private void checkValidation(ValidationStatus status, ParsedMessage parsed) throws InvalidMessageException {
+        if (rejectInvalid && status != ValidationStatus.VALID) {
+            throw invalid(status == ValidationStatus.INVALID_CHECKSUM
+                ? "CheckSum(10) does not match message" : "BodyLength(9) does not match message");
+        }
+        parsed.setValidationStatus(status);
+    }
+
+    private static InvalidMessageException invalid(String reason) {
+        return new InvalidMessageException("Failed to parse FIX message: " + reason);
+    }
+
+    /**
+     * Fill the typed fields of a ParsedMessage from an index, mirroring FIXMessageParser.
+     */
+    void extractMessageInfo(FIXFieldIndex index, ParsedMessage parsed) {
+        parsed.setMsgType(index.getString(MsgType.FIELD));
+        parsed.setSenderCompID(index.getString(SenderCompID.FIELD));
+        parsed.setTargetCompID(index.getString(TargetCompID.FIELD));
+        parsed.setMsgSeqNum(index.getInt(MsgSeqNum.FIELD));
+        parsed.setSendingTime(index.getString(SendingTime.FIELD));
+
+        String msgType = parsed.getMsgType();
+
+        if ("D".equals(msgType)) { // NewOrderSingle
+            parsed.setSymbol(index.getString(Symbol.FIELD));
+            parsed.setSide(index.getString(Side.FIELD));
+            parsed.setOrderQty(index.getDouble(OrderQty.FIELD));
+            parsed.setPrice(index.getDouble(Price.FIELD));
+            parsed.setOrdType(index.getString(OrdType.FIELD));
+            parsed.setTimeInForce(index.getString(TimeInForce.FIELD));
+            parsed.setClOrdID(index.getString(ClOrdID.FIELD));
+        } else if ("8".equals(msgType)) { // ExecutionReport
+            parsed.setOrderID(index.getString(OrderID.FIELD));
+            parsed.setClOrdID(index.getString(ClOrdID.FIELD));
+            parsed.setExecID(index.getString(ExecID.FIELD));
+            parsed.setExecType(index.getString(ExecType.FIELD));
+            parsed.setOrdStatus(index.getString(OrdStatus.FIELD));
+            parsed.setLastQty(index.getDouble(LastQty.FIELD));
+            parsed.setLastPx(index.getDouble(LastPx.FIELD));
+            parsed.setCumQty(index.getDouble(CumQty.FIELD));
+            parsed.setAvgPx(index.getDouble(AvgPx.FIELD));
+        } else if ("A".equals(msgType)) { // Logon
+            parsed.setEncryptMethod(index.getInt(EncryptMethod.FIELD));
+            parsed.setHeartBtInt(index.getInt(HeartBtInt.FIELD));
+            parsed.setUsername(index.getString(Username.FIELD));
+        } else if ("5".equals(msgType)) { // Logout
+            parsed.setText(index.getString(Text.FIELD));
+        }
+    }
+}
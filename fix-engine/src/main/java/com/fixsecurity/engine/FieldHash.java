@@ -0,0 +1,62 @@
+package com.fixsecurity.engine;
+
+/**
+ * 64-bit FNV-1a hashes of field values, for keying per-account, per-symbol or per-order state
+ * without keeping the strings. Characters are hashed by their low byte, the ISO-8859-1 byte a
+ * flyweight message holds, so {@link #hashField} read in place equals {@link #hash} of the value.
+ */
+public final class FieldHash {
+    /** FNV-1a offset basis, the hash of an empty value */
+    public static final long SEED = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private FieldHash() {
+    }
+
+    /**
+     * FNV-1a over the value's characters, continuing from {@code seed} so several values can be
+     * combined into one key. A null or empty value leaves the seed unchanged.
+     */
+    public static long hash(String value, long seed) {
+        long h = seed;
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                h = (h ^ (value.charAt(i) & 0xff)) * PRIME;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * {@link #hash} of a field's value, read in place on flyweight messages
+     */
+    public static long hashField(ParsedMessage message, int tag, long seed) {
+        if (!(message instanceof FlyweightParsedMessage)) {
+            return hash(message.getFieldValue(tag), seed);
+        }
+        FIXFieldIndex index = ((FlyweightParsedMessage) message).fieldIndex();
+        int i = index.indexOf(tag);
+        if (i < 0) {
+            return seed;
+        }
+        byte[] buffer = index.getBuffer();
+        long h = seed;
+        for (int p = index.valueOffsetAt(i), end = p + index.valueLengthAt(i); p < end; p++) {
+            h = (h ^ (buffer[p] & 0xff)) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * 64-bit finalizer from MurmurHash3, so hashes of similar values differ in every bit and a
+     * table can take its stripe and slot from different ends. Only 0 maps to 0.
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * FIX Protocol Engine - Spring Boot application entry point.
@@ -13,6 +14,7 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 @ComponentScan(basePackages = "com.fixsecurity")
 @EntityScan("com.fixsecurity.analytics")
 @EnableJpaRepositories("com.fixsecurity.analytics")
+@EnableScheduling
 public class FixEngineApplication {
 
     public static void main(String[] args) {
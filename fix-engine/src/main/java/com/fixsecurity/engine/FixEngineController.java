@@ -1,10 +1,16 @@
 package com.fixsecurity.engine;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -14,7 +20,16 @@ import java.util.Map;
 @RequestMapping
 public class FixEngineController {
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int BATCH_FLUSH_INTERVAL = 256;
+
     private final FIXMessageParser parser = new FIXMessageParser();
+    private final FIXTagValueParser batchParser = new FIXTagValueParser();
+    private final ObjectMapper objectMapper;
+
+    public FixEngineController(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
 
     @GetMapping("/api/status")
     public ResponseEntity<Map<String, Object>> root() {
@@ -24,7 +39,8 @@ public class FixEngineController {
         body.put("status", "running");
         body.put("endpoints", Map.of(
             "health", "GET /health",
-            "parse", "POST /api/parse (body: raw FIX message string)"
+            "parse", "POST /api/parse (body: raw FIX message string)",
+            "parseBatch", "POST /api/parse/batch (body: SOH- or newline-separated FIX messages, response: NDJSON)"
         ));
         return ResponseEntity.ok(body);
     }
@@ -55,6 +71,41 @@ public class FixEngineController {
         }
     }
 
+    /**
+     * Parse many FIX messages in one request and stream one JSON result per line (NDJSON).
+     * POST body: FIX messages separated by newlines or framed back-to-back by their CheckSum(10) field.
+     * The body is read and the response written incrementally, so neither is held in memory.
+     * Each line is {"index": n, "result": {...}} or {"index": n, "error": "..."}; a bad message
+     * does not fail the rest of the batch. Results carry the BodyLength/CheckSum "validationStatus".
+     */
+    @PostMapping(value = "/api/parse/batch", consumes = { "text/plain", "application/octet-stream" }, produces = NDJSON)
+    public void parseFixMessageBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        FIXMessageStreamReader reader = new FIXMessageStreamReader(request.getInputStream());
+        OutputStream out = response.getOutputStream();
+        long index = 0;
+        while (reader.next()) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("index", index);
+            if (reader.isOversized()) {
+                line.put("error", "Message exceeds " + reader.getMaxMessageBytes() + " bytes");
+            } else {
+                try {
+                    line.put("result", parsedToMap(batchParser.parseReusable(reader.buffer(), 0, reader.length())));
+                } catch (InvalidMessageException e) {
+                    line.put("error", e.getMessage());
+                }
+            }
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+            if (++index % BATCH_FLUSH_INTERVAL == 0) {
+                out.flush();
+            }
+        }
+        out.flush();
+    }
+
     private Map<String, Object> parsedToMap(ParsedMessage p) {
         Map<String, Object> m = new HashMap<>();
         m.put("msgType", p.getMsgType());
@@ -69,6 +120,7 @@ public class FixEngineController {
         if (p.getClOrdID() != null) m.put("clOrdID", p.getClOrdID());
         if (p.getOrderID() != null) m.put("orderID", p.getOrderID());
         if (p.getOrdStatus() != null) m.put("ordStatus", p.getOrdStatus());
+        if (p.getValidationStatus() != null) m.put("validationStatus", p.getValidationStatus().name());
         m.put("allFields", p.getAllFields());
         return m;
     }
@@ -0,0 +1,89 @@
+package com.fixsecurity.engine;
+
+import java.util.Map;
+
+/**
+ * Reusable ParsedMessage backed by a {@link FIXFieldIndex} over the original message bytes.
+ * Typed fields are filled as usual, but the String map returned by {@link #getAllFields()}
+ * is only built when a caller asks for it. Instances are meant to be reset and reused by a
+ * single thread; the contents are valid until the next reset or until the source buffer changes.
+ */
+public class FlyweightParsedMessage extends ParsedMessage {
+    private final FIXFieldIndex fieldIndex = new FIXFieldIndex();
+    private Map<String, String> allFields;
+
+    /**
+     * Clear all fields so the instance can hold the next message
+     */
+    public void reset() {
+        fieldIndex.reset(null);
+        allFields = null;
+        setMsgType(null);
+        setSenderCompID(null);
+        setTargetCompID(null);
+        setMsgSeqNum(0);
+        setSendingTime(null);
+        setParsedTime(null);
+        setSymbol(null);
+        setSide(null);
+        setOrderQty(0.0);
+        setPrice(0.0);
+        setOrdType(null);
+        setTimeInForce(null);
+        setClOrdID(null);
+        setOrderID(null);
+        setExecID(null);
+        setExecType(null);
+        setOrdStatus(null);
+        setLastQty(0.0);
+        setLastPx(0.0);
+        setCumQty(0.0);
+        setAvgPx(0.0);
+        setEncryptMethod(0);
+        setHeartBtInt(0);
+        setUsername(null);
+        setText(null);
+        setValidationStatus(null);
+    }
+
+    /**
+     * Field positions of the current message; not exposed as a bean property so
+     * serializers only see the regular ParsedMessage fields.
+     */
+    public FIXFieldIndex fieldIndex() {
+        return fieldIndex;
+    }
+
+    /**
+     * Builds the tag -> field map on first access. The returned map is a new object
+     * owned by the caller's view of this message and is dropped on {@link #reset()}.
+     */
+    @Override
+    public Map<String, String> getAllFields() {
+        if (allFields == null) {
+            allFields = fieldIndex.toFieldMap();
+        }
+        return allFields;
+    }
+
+    /**
+     * Answered from the field index without building the field map
+     */
+    @Override
+    public boolean hasField(int tag) {
+        return allFields != null ? allFields.containsKey(String.valueOf(tag)) : fieldIndex.contains(tag);
+    }
+
+    /**
+     * Decoded from the field index without building the field map
+     */
+    @Override
+    public String getFieldValue(int tag) {
+        return allFields != null ? super.getFieldValue(tag) : fieldIndex.getString(tag);
+    }
+
+    @Override
+    public void setAllFields(Map<String, String> allFields) {
+        this.allFields = allFields;
+    }
+}
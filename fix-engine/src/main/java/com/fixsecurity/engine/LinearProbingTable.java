@@ -0,0 +1,176 @@
+package com.fixsecurity.engine;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Open-addressing table of 64-bit keys, the base of the primitive per-key state tables such as
+ * compliance window sums, price statistics and order state. Subclasses keep their values in
+ * parallel arrays indexed by slot. Instances are not thread-safe; owners split keys over several
+ * tables as lock stripes.
+ * <p>
+ * Keys must already be mixed (see {@link FieldHash#mix}) and are never 0, which marks an empty
+ * slot. A key's home slot is its low bits, so owners should pick the stripe from its high bits.
+ * Lookups probe linearly, and {@link #remove} shifts later entries of the probe run back into the
+ * hole, so no tombstones are needed.
+ */
+public abstract class LinearProbingTable {
+    protected long[] keys;
+    protected int mask;
+    private final int maxCapacity;
+    private final int loadPercent;
+    private int size;
+
+    /**
+     * @param capacity    initial number of slots, a power of two
+     * @param maxCapacity slots the table may grow to, a power of two; equal to capacity for a
+     *                    fixed-size table
+     * @param loadPercent share of the slots that may be used before the table grows or, at
+     *                    maxCapacity, refuses new keys
+     */
+    protected LinearProbingTable(int capacity, int maxCapacity, int loadPercent) {
+        this.keys = new long[capacity];
+        this.mask = capacity - 1;
+        this.maxCapacity = Math.max(capacity, maxCapacity);
+        this.loadPercent = loadPercent;
+    }
+
+    /**
+     * Smallest power of two at least twice {@code keys}, so that many keys fit at half load
+     */
+    public static int capacityFor(int keys) {
+        return Integer.highestOneBit(Math.max(2, keys) * 2 - 1) << 1;
+    }
+
+    /** Keys currently held */
+    public int size() {
+        return size;
+    }
+
+    /** Current number of slots */
+    public int capacity() {
+        return keys.length;
+    }
+
+    protected final int home(long key) {
+        return (int) key & mask;
+    }
+
+    /**
+     * @return the key's slot, or the bitwise complement of the empty slot where it would go
+     */
+    public final int find(long key) {
+        int slot = home(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == key) {
+                return slot;
+            }
+            if (k == 0) {
+                return ~slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Claim the first empty slot of the key's probe run, growing the table if it is at its load
+     * limit. The key is not looked up first, and the slot's values are left for the caller to set.
+     *
+     * @return the slot, or -1 if the table is at its load limit and maxCapacity
+     */
+    public final int insert(long key) {
+        if ((size + 1) * 100L > (long) keys.length * loadPercent) {
+            if (keys.length >= maxCapacity) {
+                return -1;
+            }
+            grow();
+        }
+        int slot = emptySlot(key);
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Backward-shift deletion: move later entries of the probe run into the hole so lookups
+     * never need tombstones
+     */
+    public final void remove(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != 0) {
+            int home = home(keys[next]);
+            // Move the entry unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                moveSlot(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        clearSlot(hole);
+        size--;
+    }
+
+    /**
+     * Remove every entry whose slot matches the condition
+     *
+     * @return number of entries removed
+     */
+    public final int removeIf(IntPredicate condition) {
+        int removed = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            // Re-check the slot after a removal, since backward shifting may refill it
+            while (keys[slot] != 0 && condition.test(slot)) {
+                remove(slot);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Copy the values of slot {@code from} to slot {@code to}
+     */
+    protected abstract void moveSlot(int from, int to);
+
+    /**
+     * Release references held by an emptied slot; tables of primitives need not override this
+     */
+    protected void clearSlot(int slot) {
+    }
+
+    /**
+     * Reallocate the value arrays at {@code capacity} slots, moving old slot i's values to
+     * {@code newSlots[i]} (-1 for empty slots). Only called on tables below their maxCapacity.
+     */
+    protected void rehash(int[] newSlots, int capacity) {
+        throw new IllegalStateException(getClass().getName() + " does not grow");
+    }
+
+    private int emptySlot(long key) {
+        int slot = home(key);
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] newSlots = new int[oldKeys.length];
+        keys = new long[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) {
+                newSlots[i] = -1;
+            } else {
+                int slot = emptySlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                newSlots[i] = slot;
+            }
+        }
+        rehash(newSlots, keys.length);
+    }
+}
@@ -45,6 +45,18 @@ public class ParsedMessage {
     // All fields as key-value pairs
     private Map<String, String> allFields = new HashMap<>();
     
+    // BodyLength/CheckSum verification outcome; null if the parser did not check
+    private ValidationStatus validationStatus;
+    
+    // Field map keys for low tags, so lookups by tag do not format the tag each time
+    private static final String[] TAG_KEYS = new String[128];
+    
+    static {
+        for (int tag = 0; tag < TAG_KEYS.length; tag++) {
+            TAG_KEYS[tag] = String.valueOf(tag);
+        }
+    }
+    
     // Getters and Setters
     public String getMsgType() { return msgType; }
     public void setMsgType(String msgType) { this.msgType = msgType; }
@@ -121,6 +133,31 @@ public class ParsedMessage {
     public String getText() { return text; }
     public void setText(String text) { this.text = text; }
     
+    public ValidationStatus getValidationStatus() { return validationStatus; }
+    public void setValidationStatus(ValidationStatus validationStatus) { this.validationStatus = validationStatus; }
+    
     public Map<String, String> getAllFields() { return allFields; }
     public void setAllFields(Map<String, String> allFields) { this.allFields = allFields; }
+    
+    /**
+     * Check whether the message carried the given tag
+     */
+    public boolean hasField(int tag) {
+        Map<String, String> fields = getAllFields();
+        return fields != null && fields.containsKey(tagKey(tag));
+    }
+    
+    /**
+     * Value of any tag the message carried, e.g. one without a getter, or null if absent
+     */
+    public String getFieldValue(int tag) {
+        Map<String, String> fields = getAllFields();
+        String field = fields != null ? fields.get(tagKey(tag)) : null;
+        // Field map values are "tag=value"
+        return field != null ? field.substring(field.indexOf('=') + 1) : null;
+    }
+    
+    private static String tagKey(int tag) {
+        return tag >= 0 && tag < TAG_KEYS.length ? TAG_KEYS[tag] : String.valueOf(tag);
+    }
 }
@@ -0,0 +1,12 @@
+package com.fixsecurity.engine;
+
+/**
+ * Outcome of BodyLength(9) and CheckSum(10) verification for a raw FIX message
+ */
+public enum ValidationStatus {
+    VALID,
+    INVALID_BODY_LENGTH,
+    INVALID_CHECKSUM,
+    /** The bytes are not a framed tag=value message */
+    MALFORMED
+}
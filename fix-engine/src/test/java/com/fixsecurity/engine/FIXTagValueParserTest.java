@@ -0,0 +1,177 @@
+package com.fixsecurity.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that FIXTagValueParser produces the same ParsedMessage as the QuickFIX/J based
+ * FIXMessageParser over a corpus of messages.
+ */
+class FIXTagValueParserTest {
+
+    private final FIXMessageParser quickfixParser = new FIXMessageParser();
+    private final FIXTagValueParser tagValueParser = new FIXTagValueParser(true);
+
+    @Test
+    void matchesQuickFixParserOnCorpus() throws Exception {
+        for (String message : corpus()) {
+            ParsedMessage expected = quickfixParser.parse(message);
+            assertSameFields(expected, tagValueParser.parse(message), message);
+            byte[] bytes = message.getBytes(StandardCharsets.ISO_8859_1);
+            assertSameFields(expected, tagValueParser.parse(ByteBuffer.wrap(bytes)), message);
+        }
+    }
+
+    @Test
+    void flyweightMatchesQuickFixParserOnCorpus() throws Exception {
+        for (String message : corpus()) {
+            ParsedMessage expected = quickfixParser.parse(message);
+            byte[] bytes = message.getBytes(StandardCharsets.ISO_8859_1);
+            FlyweightParsedMessage flyweight = tagValueParser.parseReusable(bytes, 0, bytes.length);
+            assertSameFields(expected, flyweight, message);
+        }
+    }
+
+    @Test
+    void parsesMessageInsideLargerBuffer() throws Exception {
+        String message = fix("D", "49=CLIENT1|56=BROKER|34=7|52=20240102-14:30:00.000|11=ORD1|55=AAPL|54=1|38=100|40=2|44=187.25|");
+        byte[] framed = ("junk" + message + "trailer").getBytes(StandardCharsets.ISO_8859_1);
+        ParsedMessage parsed = tagValueParser.parse(framed, 4, message.length());
+        assertSameFields(quickfixParser.parse(message), parsed, message);
+    }
+
+    @Test
+    void rejectsBadChecksumLikeQuickFix() throws Exception {
+        String message = fix("0", "49=CLIENT1|56=BROKER|34=2|52=20240102-14:30:00.000|");
+        int checksum = Integer.parseInt(message.substring(message.length() - 4, message.length() - 1));
+        String corrupted = message.substring(0, message.length() - 4) + String.format("%03d\u0001", (checksum + 1) & 0xFF);
+        assertThrows(InvalidMessageException.class, () -> quickfixParser.parse(corrupted));
+        assertThrows(InvalidMessageException.class, () -> tagValueParser.parse(corrupted));
+        assertEquals(ValidationStatus.INVALID_CHECKSUM,
+            new FIXTagValueParser().parse(corrupted).getValidationStatus());
+    }
+
+    @Test
+    void rejectsMalformedFraming() {
+        String[] malformed = {
+            "",
+            "8=FIX.4.4\u00019=5\u0001",
+            "35=D\u00018=FIX.4.4\u00019=5\u000110=000\u0001",
+            "8=FIX.4.4\u00019=12\u000135=D\u000149=A\u0001",
+            "8=FIX.4.4\u00019=12\u000135=D\u000149A\u000110=000\u0001",
+            "8=FIX.4.4\u00019=12\u000135=D\u0001x9=A\u000110=000\u0001",
+        };
+        for (String message : malformed) {
+            assertThrows(InvalidMessageException.class, () -> tagValueParser.parse(message), message);
+            assertEquals(ValidationStatus.MALFORMED, tagValueParser.validate(
+                message.getBytes(StandardCharsets.ISO_8859_1), 0, message.length()), message);
+        }
+    }
+
+    private static void assertSameFields(ParsedMessage expected, ParsedMessage actual, String message) {
+        String m = message.replace('\u0001', '|');
+        assertEquals(expected.getMsgType(), actual.getMsgType(), m);
+        assertEquals(expected.getSenderCompID(), actual.getSenderCompID(), m);
+        assertEquals(expected.getTargetCompID(), actual.getTargetCompID(), m);
+        assertEquals(expected.getMsgSeqNum(), actual.getMsgSeqNum(), m);
+        assertEquals(expected.getSendingTime(), actual.getSendingTime(), m);
+        assertEquals(expected.getSymbol(), actual.getSymbol(), m);
+        assertEquals(expected.getSide(), actual.getSide(), m);
+        assertEquals(expected.getOrderQty(), actual.getOrderQty(), m);
+        assertEquals(expected.getPrice(), actual.getPrice(), m);
+        assertEquals(expected.getOrdType(), actual.getOrdType(), m);
+        assertEquals(expected.getTimeInForce(), actual.getTimeInForce(), m);
+        assertEquals(expected.getClOrdID(), actual.getClOrdID(), m);
+        assertEquals(expected.getOrderID(), actual.getOrderID(), m);
+        assertEquals(expected.getExecID(), actual.getExecID(), m);
+        assertEquals(expected.getExecType(), actual.getExecType(), m);
+        assertEquals(expected.getOrdStatus(), actual.getOrdStatus(), m);
+        assertEquals(expected.getLastQty(), actual.getLastQty(), m);
+        assertEquals(expected.getLastPx(), actual.getLastPx(), m);
+        assertEquals(expected.getCumQty(), actual.getCumQty(), m);
+        assertEquals(expected.getAvgPx(), actual.getAvgPx(), m);
+        assertEquals(expected.getEncryptMethod(), actual.getEncryptMethod(), m);
+        assertEquals(expected.getHeartBtInt(), actual.getHeartBtInt(), m);
+        assertEquals(expected.getUsername(), actual.getUsername(), m);
+        assertEquals(expected.getText(), actual.getText(), m);
+        // Before getAllFields, which makes a flyweight build its field map
+        for (String field : expected.getAllFields().values()) {
+            int tag = Integer.parseInt(field.substring(0, field.indexOf('=')));
+            String value = field.substring(field.indexOf('=') + 1);
+            assertEquals(value, actual.getFieldValue(tag), m + " tag " + tag);
+            assertEquals(FieldHash.hash(value, FieldHash.SEED), FieldHash.hashField(actual, tag, FieldHash.SEED),
+                m + " tag " + tag);
+        }
+        assertNull(actual.getFieldValue(9999), m);
+        assertEquals(FieldHash.SEED, FieldHash.hashField(actual, 9999, FieldHash.SEED), m);
+        assertEquals(expected.getAllFields(), actual.getAllFields(), m);
+        assertEquals(ValidationStatus.VALID, actual.getValidationStatus(), m);
+        for (String tag : expected.getAllFields().keySet()) {
+            assertTrue(actual.hasField(Integer.parseInt(tag)), m + " tag " + tag);
+        }
+        assertFalse(actual.hasField(9999), m);
+    }
+
+    /**
+     * Hand-written messages covering each MsgType the parsers extract, optional fields left
+     * out, user-defined tags, plus a seeded random mix of orders and fills
+     */
+    private static List<String> corpus() {
+        List<String> corpus = new ArrayList<>();
+        String header = "49=CLIENT1|56=BROKER|34=%d|52=20240102-14:30:00.000|";
+        corpus.add(fix("A", String.format(header, 1) + "98=0|108=30|553=trader1|"));
+        corpus.add(fix("A", String.format(header, 1) + "98=0|108=30|141=Y|"));
+        corpus.add(fix("0", String.format(header, 2)));
+        corpus.add(fix("1", String.format(header, 3) + "112=TEST1|"));
+        corpus.add(fix("D", String.format(header, 4) + "11=ORD1|21=1|55=AAPL|54=1|60=20240102-14:30:00|38=100|40=2|44=187.25|59=0|"));
+        corpus.add(fix("D", String.format(header, 5) + "11=ORD2|1=ACC7|55=MSFT|54=2|38=2500.5|40=1|"));
+        corpus.add(fix("D", String.format(header, 6) + "11=ORD3|55=BRK.A|54=5|38=1|40=2|44=0.0001|5001=custom|"));
+        corpus.add(fix("D", "49=CLIENT1|56=BROKER|34=7|"));
+        corpus.add(fix("F", String.format(header, 8) + "41=ORD1|11=ORD1C|55=AAPL|54=1|38=100|"));
+        corpus.add(fix("G", String.format(header, 9) + "41=ORD1|11=ORD1R|55=AAPL|54=1|38=150|40=2|44=187.5|"));
+        corpus.add(fix("8", String.format(header, 10) + "37=O1|11=ORD1|17=E1|150=0|39=0|55=AAPL|54=1|14=0|6=0|151=100|"));
+        corpus.add(fix("8", String.format(header, 11) + "37=O1|11=ORD1|17=E2|150=F|39=1|55=AAPL|54=1|32=40|31=187.2|14=40|6=187.2|151=60|"));
+        corpus.add(fix("8", String.format(header, 12) + "37=O1|11=ORD1|17=E3|150=2|39=2|32=60|31=187.3|14=100|6=187.26|151=0|58=done|"));
+        corpus.add(fix("5", String.format(header, 13) + "58=End of day|"));
+        corpus.add(fix("5", String.format(header, 14)));
+        corpus.add(fix("3", String.format(header, 15) + "45=4|58=Value is incorrect|"));
+
+        Random random = new Random(42);
+        String[] symbols = { "AAPL", "MSFT", "GOOG", "IBM", "VOD.L" };
+        for (int i = 0; i < 200; i++) {
+            int seq = 100 + i;
+            String sender = "SENDER" + random.nextInt(5);
+            String symbol = symbols[random.nextInt(symbols.length)];
+            String prefix = "49=" + sender + "|56=BROKER|34=" + seq + "|52=20240102-14:" + (10 + random.nextInt(50)) + ":00|";
+            if (random.nextBoolean()) {
+                corpus.add(fix("D", prefix + "11=C" + seq + "|55=" + symbol + "|54=" + (1 + random.nextInt(2))
+                    + "|38=" + (1 + random.nextInt(10_000)) + "|40=2|44=" + (10 + random.nextInt(500)) + "." + random.nextInt(100) + "|"));
+            } else {
+                int qty = 1 + random.nextInt(500);
+                corpus.add(fix("8", prefix + "37=O" + seq + "|11=C" + seq + "|17=E" + seq + "|150=F|39=1|55=" + symbol
+                    + "|54=1|32=" + qty + "|31=" + (10 + random.nextInt(500)) + ".5|14=" + qty + "|6=12.5|151=0|"));
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * Frame a body given with '|' separators: BeginString, BodyLength, MsgType, then CheckSum
+     */
+    static String fix(String msgType, String body) {
+        String content = ("35=" + msgType + "|" + body).replace('|', '\u0001');
+        String message = "8=FIX.4.4\u00019=" + content.length() + "\u0001" + content;
+        int sum = 0;
+        for (byte b : message.getBytes(StandardCharsets.ISO_8859_1)) {
+            sum += b;
+        }
+        return message + String.format("10=%03d\u0001", sum & 0xFF);
+    }
+}
@@ -0,0 +1,123 @@
+package com.fixsecurity.ingestion;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fixsecurity.engine.ParsedMessage;
+import com.fixsecurity.security.AnomalyResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Pipeline sink that records detected anomalies in the analytics service through its bulk
+ * endpoint, POST /api/analytics/anomalies/bulk, so they are stored, rolled up and pushed to
+ * subscribers of the anomaly stream.
+ * <p>
+ * Each batch is sent as one NDJSON request, which the service saves in one transaction; results
+ * without anomalies are not sent. A failed request is thrown back to the pipeline to retry, so a
+ * response lost after the commit records that batch twice. Items the service rejects, e.g. a
+ * ClOrdID longer than its column, are logged and dropped, since sending them again cannot succeed.
+ */
+public class AnalyticsAnomalySink implements PipelineResultSink {
+    public static final String BULK_PATH = "/api/analytics/anomalies/bulk";
+
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsAnomalySink.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_DESCRIPTION_LENGTH = 1024;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+    private final URI endpoint;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param baseUrl analytics service root, e.g. http://localhost:8081
+     */
+    public AnalyticsAnomalySink(String baseUrl) {
+        this(HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build(), baseUrl);
+    }
+
+    public AnalyticsAnomalySink(HttpClient client, String baseUrl) {
+        this.client = client;
+        this.endpoint = URI.create(baseUrl.replaceAll("/+$", "") + BULK_PATH);
+    }
+
+    @Override
+    public void persist(List<PipelineResult> batch) throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int items = 0;
+        for (PipelineResult result : batch) {
+            AnomalyResult anomalies = result.getAnomalyResult();
+            if (anomalies == null || !anomalies.hasAnomalies()) {
+                continue;
+            }
+            ParsedMessage message = result.getParsedMessage();
+            for (AnomalyResult.Anomaly anomaly : anomalies.getAnomalies()) {
+                ObjectNode item = objectMapper.createObjectNode();
+                item.put("anomalyType", anomaly.getType());
+                item.put("description", truncate(anomaly.getDescription()));
+                item.put("orderId", anomaly.getOrderId());
+                item.put("clOrdID", anomaly.getClOrdID());
+                item.put("sessionId", result.getSessionId());
+                item.put("symbol", message != null ? message.getSymbol() : null);
+                body.write(objectMapper.writeValueAsBytes(item));
+                body.write('\n');
+                items++;
+            }
+        }
+        if (items == 0) {
+            return;
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+            .timeout(REQUEST_TIMEOUT)
+            .header("Content-Type", NDJSON)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+            .build();
+        HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Analytics bulk insert of " + items + " anomalies failed with HTTP "
+                    + response.statusCode());
+            }
+            lines.forEach(this::logRejected);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Log a response line for an item the service rejected; saved items carry an id instead
+     */
+    private void logRejected(String line) {
+        if (line.isBlank()) {
+            return;
+        }
+        try {
+            JsonNode status = objectMapper.readTree(line);
+            if (status.has("error")) {
+                log.warn("Analytics rejected anomaly {} of the batch: {}", status.path("index").asInt(),
+                    status.get("error").asText());
+            }
+        } catch (IOException e) {
+            log.warn("Unreadable analytics bulk response line: {}", line);
+        }
+    }
+
+    private static String truncate(String description) {
+        return description == null || description.length() <= MAX_DESCRIPTION_LENGTH ? description
+            : description.substring(0, MAX_DESCRIPTION_LENGTH);
+    }
+}
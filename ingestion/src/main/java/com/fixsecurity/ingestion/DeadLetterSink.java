@@ -0,0 +1,220 @@
+package com.fixsecurity.ingestion;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Destination for records Kafka did not accept. Failures are handed over without blocking
+ * (typically from Kafka's I/O thread) and handled on a dedicated thread: each record is
+ * re-sent to the dead-letter topic, if one is configured, with the original topic and error
+ * in headers, and otherwise, or if that send also fails, appended to a local spill file.
+ * When the hand-over queue is full the record is counted as dropped.
+ * <p>
+ * Spill file records are: int topic length, topic, int key length (-1 for null), key,
+ * int value length, value. {@link #readSpillFile} reads them back for replay.
+ */
+public class DeadLetterSink implements AutoCloseable {
+    public static final String ORIGINAL_TOPIC_HEADER = "dlq.original.topic";
+    public static final String ERROR_HEADER = "dlq.error";
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterSink.class);
+    /** Queued by {@link #close} to stop the worker once everything ahead of it is handled */
+    private static final Failed STOP = new Failed(null, null, true);
+
+    private final Producer<String, byte[]> producer;
+    private final String deadLetterTopic;
+    private final Path spillFile;
+    private final ProducerMetrics metrics;
+    private final BlockingQueue<Failed> queue;
+    private final Thread worker;
+    private DataOutputStream spill;
+    private boolean closed;
+
+    /**
+     * @param deadLetterTopic topic for failed records, or null to spill straight to the file
+     */
+    public DeadLetterSink(Producer<String, byte[]> producer, String deadLetterTopic, Path spillFile,
+                          ProducerMetrics metrics, int queueCapacity) {
+        this.producer = producer;
+        this.deadLetterTopic = deadLetterTopic;
+        this.spillFile = spillFile;
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.worker = new Thread(this::run, "kafka-dead-letter");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Hand over a failed record; never blocks
+     */
+    public void accept(ProducerRecord<String, byte[]> record, Exception error) {
+        if (!queue.offer(new Failed(record, error, deadLetterTopic == null))) {
+            metrics.onDropped();
+        }
+    }
+
+    /**
+     * The worker is never interrupted: an interrupt during a spill write would close the file
+     * channel and lose every later spilled record
+     */
+    private void run() {
+        List<Failed> batch = new ArrayList<>();
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                Failed first = queue.take();
+                batch.add(first);
+                queue.drainTo(batch);
+                for (Failed failed : batch) {
+                    if (failed == STOP) {
+                        stopped = true;
+                    } else {
+                        handle(failed);
+                    }
+                }
+                if (spill != null) {
+                    spill.flush();
+                }
+            } catch (InterruptedException e) {
+                // Only STOP ends the worker
+            } catch (IOException e) {
+                log.error("Failed to write spill file {}", spillFile, e);
+                for (Failed failed : batch) {
+                    if (failed == STOP) {
+                        stopped = true;
+                    } else {
+                        metrics.onDropped();
+                    }
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void handle(Failed failed) throws IOException {
+        if (failed.spillOnly) {
+            writeSpill(failed.record);
+            metrics.onSpilled();
+            return;
+        }
+        // The original record's headers were made read-only when it was sent
+        ProducerRecord<String, byte[]> dlq = new ProducerRecord<>(deadLetterTopic, null,
+            failed.record.key(), failed.record.value(), new RecordHeaders(failed.record.headers().toArray()));
+        dlq.headers().add(ORIGINAL_TOPIC_HEADER, failed.record.topic().getBytes(StandardCharsets.UTF_8));
+        dlq.headers().add(ERROR_HEADER, String.valueOf(failed.error).getBytes(StandardCharsets.UTF_8));
+        try {
+            producer.send(dlq, (metadata, exception) -> {
+                if (exception != null) {
+                    if (!queue.offer(new Failed(failed.record, exception, true))) {
+                        metrics.onDropped();
+                    }
+                } else {
+                    metrics.onDeadLettered();
+                }
+            });
+        } catch (RuntimeException e) {
+            writeSpill(failed.record);
+            metrics.onSpilled();
+        }
+    }
+
+    private void writeSpill(ProducerRecord<String, byte[]> record) throws IOException {
+        if (spill == null) {
+            spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        writeBytes(record.topic().getBytes(StandardCharsets.UTF_8));
+        writeBytes(record.key() == null ? null : record.key().getBytes(StandardCharsets.UTF_8));
+        writeBytes(record.value());
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            spill.writeInt(-1);
+            return;
+        }
+        spill.writeInt(bytes.length);
+        spill.write(bytes);
+    }
+
+    /**
+     * Read every record from a spill file, e.g. to re-send them once the broker is back
+     */
+    public static void readSpillFile(Path file, Consumer<ProducerRecord<String, byte[]>> action) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] topic;
+                try {
+                    topic = readBytes(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                byte[] key = readBytes(in);
+                byte[] value = readBytes(in);
+                action.accept(new ProducerRecord<>(new String(topic, StandardCharsets.UTF_8),
+                    key == null ? null : new String(key, StandardCharsets.UTF_8), value));
+            }
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Stop the worker, wait for dead-letter sends already made, then spill whatever is left
+     * and close the spill file. Later calls do nothing.
+     */
+    @Override
+    public synchronized void close() throws InterruptedException, IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.put(STOP);
+        worker.join();
+        producer.flush();
+        Failed failed;
+        while ((failed = queue.poll()) != null) {
+            writeSpill(failed.record);
+            metrics.onSpilled();
+        }
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    private static final class Failed {
+        private final ProducerRecord<String, byte[]> record;
+        private final Exception error;
+        private final boolean spillOnly;
+
+        Failed(ProducerRecord<String, byte[]> record, Exception error, boolean spillOnly) {
+            this.record = record;
+            this.error = error;
+            this.spillOnly = spillOnly;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.fixsecurity.ingestion;
+
+import com.fixsecurity.compliance.ComplianceRuleEngine;
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.InvalidMessageException;
+import com.fixsecurity.security.AnomalyDetector;
+import com.fixsecurity.security.AnomalyResult;
+import org.apache.kafka.clients.consumer.CommitFailedException;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RebalanceInProgressException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Kafka consumer pipeline for raw FIX messages: parse -> detect -> comply.
+ * Each polled batch is parsed in parallel, then every message is routed to a worker chosen
+ * by its session so AnomalyDetector sees a session's messages in order. When the whole batch
+ * has been processed the results are handed to a {@link PipelineResultSink}, and offsets are
+ * committed only after the sink returns. Queues between stages are bounded: a full parser
+ * queue makes the polling thread parse inline, and a full worker queue blocks it, so a slow
+ * sink stops consumption instead of growing the heap.
+ * <p>
+ * Delivery is at-least-once. When the sink fails, the batch's results are kept and only the
+ * sink write is retried, with capped exponential back-off, so the stateful detectors never see
+ * a message twice; meanwhile the consumer's partitions are paused and it keeps polling to stay
+ * in its group. A failed offset commit (e.g. after a rebalance) is logged and counted, and the
+ * batch is redelivered to the partition's next owner. Any other failure stops the pipeline and
+ * is reported through {@link #getState()} and {@link #getFailure()}.
+ */
+public class KafkaMessagePipeline implements AutoCloseable {
+    public static final String RAW_TOPIC = "fix-messages-raw";
+
+    private static final Logger log = LoggerFactory.getLogger(KafkaMessagePipeline.class);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long RETRY_BACKOFF_MS = 1000;
+    private static final long MAX_RETRY_BACKOFF_MS = 30_000;
+    private static final long ORDER_SWEEP_INTERVAL_MS = 10_000;
+
+    private final Consumer<String, byte[]> consumer;
+    private final String topic;
+    private final PipelineResultSink sink;
+    private final AnomalyDetector detector;
+    private final ComplianceRuleEngine complianceEngine;
+    private final FIXTagValueParser parser = new FIXTagValueParser();
+    private final ThreadPoolExecutor parserPool;
+    private final SessionWorker[] workers;
+
+    /** Lifecycle of the polling thread */
+    public enum State { NEW, RUNNING, STOPPED, FAILED }
+
+    private volatile State state = State.NEW;
+    private volatile Throwable failure;
+    private volatile boolean running;
+    private boolean closed;
+    private boolean pausedForRetry;
+    private long nextOrderSweepMillis;
+    private Thread pollThread;
+    private final LongAdder sinkRetries = new LongAdder();
+    private final LongAdder commitFailures = new LongAdder();
+    private final LongAdder rebalances = new LongAdder();
+
+    public KafkaMessagePipeline(String bootstrapServers, String groupId, PipelineResultSink sink) {
+        this(new KafkaConsumer<>(consumerProperties(bootstrapServers, groupId)), RAW_TOPIC, sink,
+            new AnomalyDetector(), new ComplianceRuleEngine(),
+            Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    /**
+     * @param consumer       consumer to read from; any {@link Consumer}, e.g. a MockConsumer in tests
+     * @param parserThreads  threads parsing records of a batch in parallel
+     * @param workerCount    session-ordered detect/comply workers
+     * @param queueCapacity  bound of the parser queue and of each worker queue
+     */
+    public KafkaMessagePipeline(Consumer<String, byte[]> consumer, String topic, PipelineResultSink sink,
+                                AnomalyDetector detector, ComplianceRuleEngine complianceEngine,
+                                int parserThreads, int workerCount, int queueCapacity) {
+        this.consumer = consumer;
+        this.topic = topic;
+        this.sink = sink;
+        this.detector = detector;
+        this.complianceEngine = complianceEngine;
+        this.parserPool = new ThreadPoolExecutor(parserThreads, parserThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.workers = new SessionWorker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new SessionWorker(queueCapacity);
+        }
+    }
+
+    public static Properties consumerProperties(String bootstrapServers, String groupId) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
+        return props;
+    }
+
+    /**
+     * Subscribe and start consuming on a background thread
+     */
+    public synchronized void start() {
+        if (state != State.NEW) {
+            return;
+        }
+        running = true;
+        state = State.RUNNING;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].start("fix-pipeline-worker-" + i);
+        }
+        pollThread = new Thread(this::pollLoop, "fix-pipeline-poll");
+        pollThread.start();
+    }
+
+    private void pollLoop() {
+        try {
+            consumer.subscribe(List.of(topic), new RebalanceListener());
+            while (running) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                if (!records.isEmpty()) {
+                    processBatch(records);
+                }
+                sweepOrdersIfDue();
+            }
+            state = State.STOPPED;
+        } catch (WakeupException e) {
+            if (running) {
+                fail(e);
+            } else {
+                state = State.STOPPED;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (running) {
+                fail(e);
+            } else {
+                state = State.STOPPED;
+            }
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        } finally {
+            try {
+                consumer.close();
+            } catch (RuntimeException e) {
+                log.warn("Failed to close pipeline consumer", e);
+            }
+        }
+    }
+
+    private void fail(Throwable e) {
+        failure = e;
+        running = false;
+        state = State.FAILED;
+        log.error("FIX pipeline stopped consuming after an unexpected failure", e);
+    }
+
+    /**
+     * Let the detector evict finished orders and idle symbols, at most every sweep interval, and
+     * hand stale orders it reports to the sink like per-message anomalies
+     */
+    private void sweepOrdersIfDue() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        if (now < nextOrderSweepMillis) {
+            return;
+        }
+        nextOrderSweepMillis = now + ORDER_SWEEP_INTERVAL_MS;
+        detector.evictIdleSymbols();
+        AnomalyResult stale = detector.sweepOrders();
+        if (stale.hasAnomalies() && !persist(List.of(PipelineResult.ofAnomalies(stale)))) {
+            log.warn("Pipeline closing; {} stale order anomalies were not persisted", stale.getAnomalies().size());
+        }
+    }
+
+    private void processBatch(ConsumerRecords<String, byte[]> records) throws InterruptedException {
+        List<ConsumerRecord<String, byte[]>> batch = new ArrayList<>(records.count());
+        records.forEach(batch::add);
+
+        // Stage 1: parse the batch in parallel
+        List<Future<PipelineResult>> parsing = new ArrayList<>(batch.size());
+        for (ConsumerRecord<String, byte[]> record : batch) {
+            parsing.add(parserPool.submit(() -> parse(record)));
+        }
+
+        // Stage 2: route to session-ordered workers, preserving record order per session
+        List<PipelineResult> results = new ArrayList<>(batch.size());
+        CountDownLatch processed = new CountDownLatch(batch.size());
+        for (Future<PipelineResult> future : parsing) {
+            PipelineResult result = await(future);
+            results.add(result);
+            if (result.getParsedMessage() == null) {
+                processed.countDown();
+            } else {
+                workers[Math.floorMod(result.getSessionId().hashCode(), workers.length)].submit(result, processed);
+            }
+        }
+        processed.await();
+
+        // Stage 3: persist, then commit
+        if (persist(results)) {
+            commit(nextOffsets(batch));
+        }
+    }
+
+    /**
+     * Hand results to the sink, retrying the write alone until it succeeds or the pipeline
+     * closes. While retrying, every assigned partition is paused and the wait is spent in
+     * poll, which keeps the consumer in its group without fetching new records.
+     *
+     * @return false if the pipeline closed before the results were persisted
+     */
+    private boolean persist(List<PipelineResult> results) throws InterruptedException {
+        long backoff = RETRY_BACKOFF_MS;
+        try {
+            while (true) {
+                try {
+                    sink.persist(results);
+                    return true;
+                } catch (Exception e) {
+                    if (!running) {
+                        log.warn("Pipeline closing with {} unpersisted results; they will be re-read from the last commit",
+                            results.size());
+                        return false;
+                    }
+                    sinkRetries.increment();
+                    log.warn("Failed to persist {} pipeline results, retrying in {} ms", results.size(), backoff, e);
+                }
+                pausedForRetry = true;
+                // Re-pause every time: partitions assigned by a rebalance since start unpaused
+                consumer.pause(consumer.assignment());
+                pollWhilePaused(backoff);
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MS);
+            }
+        } finally {
+            if (pausedForRetry) {
+                pausedForRetry = false;
+                consumer.resume(consumer.paused());
+            }
+        }
+    }
+
+    /**
+     * Spend the back-off in poll so the consumer stays in its group. Partitions are paused, so
+     * nothing should be fetched; anything that is gets put back for after the retry.
+     */
+    private void pollWhilePaused(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        for (long remaining = millis; remaining > 0 && running; remaining = deadline - System.currentTimeMillis()) {
+            long before = System.currentTimeMillis();
+            ConsumerRecords<String, byte[]> unexpected =
+                consumer.poll(Duration.ofMillis(Math.min(remaining, POLL_TIMEOUT.toMillis())));
+            if (!unexpected.isEmpty()) {
+                List<ConsumerRecord<String, byte[]>> records = new ArrayList<>(unexpected.count());
+                unexpected.forEach(records::add);
+                rewind(records);
+            } else if (System.currentTimeMillis() - before < 10) {
+                // Consumers such as MockConsumer return at once instead of waiting out the timeout
+                Thread.sleep(Math.min(remaining, 100));
+            }
+        }
+    }
+
+    /**
+     * Commit the offsets of partitions still assigned. A commit that fails because the group
+     * rebalanced or the broker did not answer in time leaves the batch to be redelivered.
+     */
+    private void commit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.keySet().retainAll(consumer.assignment());
+        if (offsets.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(offsets);
+        } catch (CommitFailedException | RebalanceInProgressException | TimeoutException e) {
+            commitFailures.increment();
+            log.warn("Offset commit failed, batch will be redelivered: {}", e.toString());
+        }
+    }
+
+    private PipelineResult parse(ConsumerRecord<String, byte[]> record) {
+        PipelineResult result = new PipelineResult(record.topic(), record.partition(), record.offset());
+        byte[] value = record.value();
+        if (value == null) {
+            result.setError("Empty record");
+            return result;
+        }
+        try {
+            result.setParsedMessage(parser.parse(value));
+        } catch (InvalidMessageException e) {
+            result.setError(e.getMessage());
+        } catch (RuntimeException e) {
+            result.setError("Parse failed: " + e);
+        }
+        return result;
+    }
+
+    private static PipelineResult await(Future<PipelineResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Parser task failed", e.getCause());
+        }
+    }
+
+    private static Map<TopicPartition, OffsetAndMetadata> nextOffsets(List<ConsumerRecord<String, byte[]>> batch) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : batch) {
+            offsets.put(new TopicPartition(record.topic(), record.partition()),
+                new OffsetAndMetadata(record.offset() + 1));
+        }
+        return offsets;
+    }
+
+    /**
+     * Seek every partition in the records back to its first record so they are fetched again
+     */
+    private void rewind(List<ConsumerRecord<String, byte[]>> batch) {
+        Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : batch) {
+            firstOffsets.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+        }
+        firstOffsets.forEach(consumer::seek);
+    }
+
+    public State getState() { return state; }
+
+    /** What stopped the pipeline when {@link #getState()} is FAILED, otherwise null */
+    public Throwable getFailure() { return failure; }
+
+    public long getSinkRetries() { return sinkRetries.sum(); }
+    public long getCommitFailures() { return commitFailures.sum(); }
+    public long getRebalances() { return rebalances.sum(); }
+
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (state == State.NEW || closed) {
+                return;
+            }
+            closed = true;
+            running = false;
+        }
+        consumer.wakeup();
+        pollThread.join();
+        for (SessionWorker worker : workers) {
+            worker.stop();
+        }
+        parserPool.shutdown();
+        parserPool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Logs partition movement and keeps newly assigned partitions paused while a sink write is
+     * being retried. Runs on the polling thread, inside poll.
+     */
+    private final class RebalanceListener implements ConsumerRebalanceListener {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            rebalances.increment();
+            log.info("Pipeline partitions revoked: {}", partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            log.info("Pipeline partitions assigned: {}", partitions);
+            if (pausedForRetry) {
+                consumer.pause(partitions);
+            }
+        }
+    }
+
+    /**
+     * Single-threaded detect/comply stage for the sessions hashed to it
+     */
+    private final class SessionWorker {
+        private final BlockingQueue<Task> queue;
+        private Thread thread;
+
+        SessionWorker(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void start(String name) {
+            thread = new Thread(this::run, name);
+            thread.start();
+        }
+
+        /**
+         * Enqueue a parsed message, blocking while the queue is full
+         */
+        void submit(PipelineResult result, CountDownLatch processed) throws InterruptedException {
+            queue.put(new Task(result, processed));
+        }
+
+        void stop() throws InterruptedException {
+            thread.interrupt();
+            thread.join();
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    Task task = queue.take();
+                    PipelineResult result = task.result;
+                    try {
+                        result.setAnomalyResult(detector.detectAnomalies(result.getParsedMessage()));
+                        result.setComplianceResult(complianceEngine.evaluateViolations(result.getParsedMessage()));
+                    } catch (RuntimeException e) {
+                        result.setError("Processing failed: " + e.getMessage());
+                    } finally {
+                        task.processed.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Task {
+        private final PipelineResult result;
+        private final CountDownLatch processed;
+
+        Task(PipelineResult result, CountDownLatch processed) {
+            this.result = result;
+            this.processed = processed;
+        }
+    }
+}
@@ -1,80 +1,234 @@
 package com.fixsecurity.ingestion;
 
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import com.fixsecurity.engine.ParsedMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 /**
- * Kafka producer for sending parsed FIX messages to Kafka topics
+ * Kafka producer for sending parsed FIX messages to Kafka topics.
+ * Records are keyed by session (SenderCompID-TargetCompID), so each session's messages land on
+ * one partition in order. Values are JSON or, with {@link ProducerSettings#highThroughput()},
+ * the compact {@link ParsedMessageCodec} encoding; the "encoding" header tells consumers which.
+ * <p>
+ * Delivery outcomes are counted in {@link ProducerMetrics} (see {@link ProducerMetricsServer} to
+ * expose them) rather than logged, and records Kafka rejects go to a {@link DeadLetterSink}.
+ * Callers that need the outcome of an individual send can wait on the returned future.
+ * <p>
+ * With {@link ProducerSettings#setJournalDirectory} set, raw messages are written to a
+ * {@link RawMessageJournal} instead and forwarded from there, so capture never waits on Kafka.
  */
 public class KafkaMessageProducer {
-    private KafkaProducer<String, String> producer;
-    private ObjectMapper objectMapper;
-    private String topicName;
-    
+    public static final String ENCODING_HEADER = "encoding";
+
+    private static final byte[] JSON_ENCODING = "json".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BINARY_ENCODING =
+        ("fix-binary-v" + ParsedMessageCodec.VERSION).getBytes(StandardCharsets.UTF_8);
+    private static final Future<RecordMetadata> JOURNALED = CompletableFuture.completedFuture(null);
+    private static final Logger log = LoggerFactory.getLogger(KafkaMessageProducer.class);
+
+    private final Producer<String, byte[]> producer;
+    private final ObjectMapper objectMapper;
+    private final String topicName;
+    private final ProducerSettings settings;
+    private final ProducerMetrics metrics = new ProducerMetrics();
+    private final DeadLetterSink deadLetters;
+    private final RawMessageJournal journal;
+
     public KafkaMessageProducer(String bootstrapServers, String topicName) {
+        this(bootstrapServers, topicName, ProducerSettings.defaults());
+    }
+
+    public KafkaMessageProducer(String bootstrapServers, String topicName, ProducerSettings settings) {
+        this(new KafkaProducer<>(producerProperties(bootstrapServers, settings)),
+            settings.getJournalDirectory() == null ? null
+                : new KafkaConsumer<>(RawMessageJournal.recoveryConsumerProperties(bootstrapServers)),
+            topicName, settings);
+    }
+
+    /**
+     * @param producer producer to send with; any {@link Producer}, e.g. a MockProducer in tests
+     */
+    public KafkaMessageProducer(Producer<String, byte[]> producer, String topicName, ProducerSettings settings) {
+        this(producer, null, topicName, settings);
+    }
+
+    /**
+     * @param journalConsumer consumer the journal uses on recovery to skip records already in
+     *                        Kafka; null for at-least-once replay. Unused without a journal.
+     */
+    public KafkaMessageProducer(Producer<String, byte[]> producer, Consumer<String, byte[]> journalConsumer,
+                                String topicName, ProducerSettings settings) {
+        this.producer = producer;
         this.topicName = topicName;
+        this.settings = settings;
         this.objectMapper = new ObjectMapper();
-        
+        this.deadLetters = new DeadLetterSink(producer, settings.getDeadLetterTopic(), settings.getSpillFile(),
+            metrics, settings.getDeadLetterQueueCapacity());
+        if (settings.getJournalDirectory() != null) {
+            try {
+                this.journal = new RawMessageJournal(settings, producer, journalConsumer,
+                    KafkaMessagePipeline.RAW_TOPIC, metrics, deadLetters);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open journal in " + settings.getJournalDirectory(), e);
+            }
+        } else {
+            this.journal = null;
+        }
+    }
+
+    public static Properties producerProperties(String bootstrapServers, ProducerSettings settings) {
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
         props.put(ProducerConfig.ACKS_CONFIG, "all");
         props.put(ProducerConfig.RETRIES_CONFIG, 3);
-        props.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
-        props.put(ProducerConfig.LINGER_MS_CONFIG, 1);
-        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 33554432);
-        
-        this.producer = new KafkaProducer<>(props);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, settings.getCompressionType());
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, settings.getBatchSize());
+        props.put(ProducerConfig.LINGER_MS_CONFIG, settings.getLingerMs());
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, settings.getBufferMemory());
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, settings.getMaxBlockMs());
+        props.put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, settings.getMaxRequestSize());
+        return props;
+    }
+
+    /**
+     * Partition key for a message: its session, matching AnomalyDetector's SenderCompID-TargetCompID
+     */
+    public static String sessionKey(ParsedMessage message) {
+        return message.getSenderCompID() + "-" + message.getTargetCompID();
+    }
+
+    /**
+     * Encode a message value with the configured encoding
+     */
+    public byte[] encode(ParsedMessage message) throws Exception {
+        if (settings.getEncoding() == ProducerSettings.Encoding.BINARY) {
+            return ParsedMessageCodec.encode(message, settings.isIncludeAllFields());
+        }
+        return objectMapper.writeValueAsBytes(message);
     }
-    
+
+    public ProducerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** The raw message journal, or null when raw messages are sent directly */
+    public RawMessageJournal getJournal() {
+        return journal;
+    }
+
     /**
      * Send a parsed FIX message to Kafka
+     *
+     * @return completes with the record's metadata, or exceptionally if it was not delivered
+     * @throws IllegalArgumentException if the message cannot be encoded
      */
-    public void sendMessage(ParsedMessage message) {
+    public Future<RecordMetadata> sendMessage(ParsedMessage message) {
+        byte[] value;
         try {
-            String messageJson = objectMapper.writeValueAsString(message);
-            String key = message.getSenderCompID() + "-" + message.getMsgSeqNum();
-            
-            ProducerRecord<String, String> record = new ProducerRecord<>(
-                topicName, 
-                key, 
-                messageJson
-            );
-            
-            producer.send(record, (metadata, exception) -> {
-                if (exception != null) {
-                    System.err.println("Error sending message: " + exception.getMessage());
-                } else {
-                    System.out.println("Message sent to topic: " + metadata.topic() + 
-                                     ", partition: " + metadata.partition() + 
-                                     ", offset: " + metadata.offset());
-                }
-            });
+            value = encode(message);
         } catch (Exception e) {
-            System.err.println("Failed to serialize message: " + e.getMessage());
+            metrics.onRejected();
+            throw new IllegalArgumentException("Failed to serialize message: " + e.getMessage(), e);
         }
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topicName, sessionKey(message), value);
+        record.headers().add(ENCODING_HEADER,
+            settings.getEncoding() == ProducerSettings.Encoding.BINARY ? BINARY_ENCODING : JSON_ENCODING);
+        return send(record);
     }
-    
+
     /**
      * Send raw FIX message string to Kafka
+     *
+     * @return the send future; when journaling, an already completed future with no metadata,
+     *         since delivery then happens from the journal
+     * @throws IllegalArgumentException when journaling, if the message is too large for one Kafka request
      */
-    public void sendRawMessage(String rawFixMessage, String sessionId) {
-        ProducerRecord<String, String> record = new ProducerRecord<>(
-            "fix-messages-raw",
+    public Future<RecordMetadata> sendRawMessage(String rawFixMessage, String sessionId) {
+        if (journal != null) {
+            journal.append(sessionId, rawFixMessage.getBytes(StandardCharsets.UTF_8));
+            return JOURNALED;
+        }
+        return send(new ProducerRecord<>(
+            KafkaMessagePipeline.RAW_TOPIC,
             sessionId,
-            rawFixMessage
-        );
-        
-        producer.send(record);
+            rawFixMessage.getBytes(StandardCharsets.UTF_8)
+        ));
     }
-    
+
+    private Future<RecordMetadata> send(ProducerRecord<String, byte[]> record) {
+        DeliveryCallback callback = new DeliveryCallback(record);
+        metrics.onSend(callback.bytes);
+        try {
+            return producer.send(record, callback);
+        } catch (RuntimeException e) {
+            // Buffer full past max.block.ms, producer closed, record too large, ...
+            callback.onCompletion(null, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Drain the journal, flush outstanding records, hand any failures to the dead-letter sink and close
+     */
     public void close() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        producer.flush();
+        try {
+            deadLetters.close();
+        } catch (Exception e) {
+            log.warn("Failed to close dead-letter sink", e);
+        }
         producer.close();
     }
+
+    /**
+     * Per-record completion: counters only, no I/O, since it runs on Kafka's I/O thread
+     */
+    private final class DeliveryCallback implements Callback {
+        private final ProducerRecord<String, byte[]> record;
+        private final int bytes;
+        private final long startNanos = System.nanoTime();
+
+        DeliveryCallback(ProducerRecord<String, byte[]> record) {
+            this.record = record;
+            this.bytes = record.value().length;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            long latency = System.nanoTime() - startNanos;
+            if (exception == null) {
+                metrics.onAck(bytes, latency);
+            } else {
+                metrics.onFailure(bytes, latency);
+                deadLetters.accept(record, exception);
+            }
+        }
+    }
 }
@@ -0,0 +1,322 @@
+package com.fixsecurity.ingestion;
+
+import com.fixsecurity.engine.ParsedMessage;
+import com.fixsecurity.engine.ValidationStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, schema-versioned binary encoding of {@link ParsedMessage} for Kafka.
+ * <p>
+ * Layout (version 1):
+ * <pre>
+ *   byte    magic (0xFB)
+ *   byte    version (1)
+ *   byte    flags (bit 0: allFields present)
+ *   varint  presence bitmask, bit i set if field i below is present (non-null / non-zero)
+ *   fields  in bit order; strings are varint length + UTF-8, ints are zigzag varints,
+ *           doubles are 8-byte IEEE 754, parsedTime is zigzag epoch-second (UTC) + varint nanos,
+ *           validationStatus is one byte ordinal
+ *   allFields (if flagged): varint count, then count x (string key, string value)
+ * </pre>
+ * New fields are appended with new bit numbers and a new version; decoders reject versions they do not know.
+ */
+public final class ParsedMessageCodec {
+    public static final byte MAGIC = (byte) 0xFB;
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_ALL_FIELDS = 1;
+
+    private static final int MSG_TYPE = 0;
+    private static final int SENDER_COMP_ID = 1;
+    private static final int TARGET_COMP_ID = 2;
+    private static final int MSG_SEQ_NUM = 3;
+    private static final int SENDING_TIME = 4;
+    private static final int PARSED_TIME = 5;
+    private static final int SYMBOL = 6;
+    private static final int SIDE = 7;
+    private static final int ORDER_QTY = 8;
+    private static final int PRICE = 9;
+    private static final int ORD_TYPE = 10;
+    private static final int TIME_IN_FORCE = 11;
+    private static final int CL_ORD_ID = 12;
+    private static final int ORDER_ID = 13;
+    private static final int EXEC_ID = 14;
+    private static final int EXEC_TYPE = 15;
+    private static final int ORD_STATUS = 16;
+    private static final int LAST_QTY = 17;
+    private static final int LAST_PX = 18;
+    private static final int CUM_QTY = 19;
+    private static final int AVG_PX = 20;
+    private static final int ENCRYPT_METHOD = 21;
+    private static final int HEART_BT_INT = 22;
+    private static final int USERNAME = 23;
+    private static final int TEXT = 24;
+    private static final int VALIDATION_STATUS = 25;
+
+    private ParsedMessageCodec() {
+    }
+
+    public static byte[] encode(ParsedMessage m, boolean includeAllFields) {
+        int presence = 0;
+        presence |= bit(MSG_TYPE, m.getMsgType() != null);
+        presence |= bit(SENDER_COMP_ID, m.getSenderCompID() != null);
+        presence |= bit(TARGET_COMP_ID, m.getTargetCompID() != null);
+        presence |= bit(MSG_SEQ_NUM, m.getMsgSeqNum() != 0);
+        presence |= bit(SENDING_TIME, m.getSendingTime() != null);
+        presence |= bit(PARSED_TIME, m.getParsedTime() != null);
+        presence |= bit(SYMBOL, m.getSymbol() != null);
+        presence |= bit(SIDE, m.getSide() != null);
+        presence |= bit(ORDER_QTY, m.getOrderQty() != 0);
+        presence |= bit(PRICE, m.getPrice() != 0);
+        presence |= bit(ORD_TYPE, m.getOrdType() != null);
+        presence |= bit(TIME_IN_FORCE, m.getTimeInForce() != null);
+        presence |= bit(CL_ORD_ID, m.getClOrdID() != null);
+        presence |= bit(ORDER_ID, m.getOrderID() != null);
+        presence |= bit(EXEC_ID, m.getExecID() != null);
+        presence |= bit(EXEC_TYPE, m.getExecType() != null);
+        presence |= bit(ORD_STATUS, m.getOrdStatus() != null);
+        presence |= bit(LAST_QTY, m.getLastQty() != 0);
+        presence |= bit(LAST_PX, m.getLastPx() != 0);
+        presence |= bit(CUM_QTY, m.getCumQty() != 0);
+        presence |= bit(AVG_PX, m.getAvgPx() != 0);
+        presence |= bit(ENCRYPT_METHOD, m.getEncryptMethod() != 0);
+        presence |= bit(HEART_BT_INT, m.getHeartBtInt() != 0);
+        presence |= bit(USERNAME, m.getUsername() != null);
+        presence |= bit(TEXT, m.getText() != null);
+        presence |= bit(VALIDATION_STATUS, m.getValidationStatus() != null);
+
+        Map<String, String> allFields = includeAllFields ? m.getAllFields() : null;
+        boolean withAllFields = allFields != null && !allFields.isEmpty();
+
+        Writer w = new Writer(withAllFields ? 64 + allFields.size() * 24 : 128);
+        w.writeByte(MAGIC);
+        w.writeByte(VERSION);
+        w.writeByte(withAllFields ? FLAG_ALL_FIELDS : 0);
+        w.writeVarint(presence);
+
+        if (has(presence, MSG_TYPE)) w.writeString(m.getMsgType());
+        if (has(presence, SENDER_COMP_ID)) w.writeString(m.getSenderCompID());
+        if (has(presence, TARGET_COMP_ID)) w.writeString(m.getTargetCompID());
+        if (has(presence, MSG_SEQ_NUM)) w.writeZigzag(m.getMsgSeqNum());
+        if (has(presence, SENDING_TIME)) w.writeString(m.getSendingTime());
+        if (has(presence, PARSED_TIME)) {
+            w.writeZigzag(m.getParsedTime().toEpochSecond(ZoneOffset.UTC));
+            w.writeVarint(m.getParsedTime().getNano());
+        }
+        if (has(presence, SYMBOL)) w.writeString(m.getSymbol());
+        if (has(presence, SIDE)) w.writeString(m.getSide());
+        if (has(presence, ORDER_QTY)) w.writeDouble(m.getOrderQty());
+        if (has(presence, PRICE)) w.writeDouble(m.getPrice());
+        if (has(presence, ORD_TYPE)) w.writeString(m.getOrdType());
+        if (has(presence, TIME_IN_FORCE)) w.writeString(m.getTimeInForce());
+        if (has(presence, CL_ORD_ID)) w.writeString(m.getClOrdID());
+        if (has(presence, ORDER_ID)) w.writeString(m.getOrderID());
+        if (has(presence, EXEC_ID)) w.writeString(m.getExecID());
+        if (has(presence, EXEC_TYPE)) w.writeString(m.getExecType());
+        if (has(presence, ORD_STATUS)) w.writeString(m.getOrdStatus());
+        if (has(presence, LAST_QTY)) w.writeDouble(m.getLastQty());
+        if (has(presence, LAST_PX)) w.writeDouble(m.getLastPx());
+        if (has(presence, CUM_QTY)) w.writeDouble(m.getCumQty());
+        if (has(presence, AVG_PX)) w.writeDouble(m.getAvgPx());
+        if (has(presence, ENCRYPT_METHOD)) w.writeZigzag(m.getEncryptMethod());
+        if (has(presence, HEART_BT_INT)) w.writeZigzag(m.getHeartBtInt());
+        if (has(presence, USERNAME)) w.writeString(m.getUsername());
+        if (has(presence, TEXT)) w.writeString(m.getText());
+        if (has(presence, VALIDATION_STATUS)) w.writeByte(m.getValidationStatus().ordinal());
+
+        if (withAllFields) {
+            w.writeVarint(allFields.size());
+            for (Map.Entry<String, String> field : allFields.entrySet()) {
+                w.writeString(field.getKey());
+                w.writeString(field.getValue());
+            }
+        }
+        return w.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if data is not a ParsedMessage in a known version of this format
+     */
+    public static ParsedMessage decode(byte[] data) {
+        Reader r = new Reader(data);
+        if (data.length < 3 || r.readByte() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary ParsedMessage");
+        }
+        int version = r.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported ParsedMessage encoding version: " + version);
+        }
+        int flags = r.readByte();
+        int presence = (int) r.readVarint();
+
+        ParsedMessage m = new ParsedMessage();
+        if (has(presence, MSG_TYPE)) m.setMsgType(r.readString());
+        if (has(presence, SENDER_COMP_ID)) m.setSenderCompID(r.readString());
+        if (has(presence, TARGET_COMP_ID)) m.setTargetCompID(r.readString());
+        if (has(presence, MSG_SEQ_NUM)) m.setMsgSeqNum((int) r.readZigzag());
+        if (has(presence, SENDING_TIME)) m.setSendingTime(r.readString());
+        if (has(presence, PARSED_TIME)) {
+            long epochSecond = r.readZigzag();
+            int nanos = (int) r.readVarint();
+            m.setParsedTime(LocalDateTime.ofEpochSecond(epochSecond, nanos, ZoneOffset.UTC));
+        }
+        if (has(presence, SYMBOL)) m.setSymbol(r.readString());
+        if (has(presence, SIDE)) m.setSide(r.readString());
+        if (has(presence, ORDER_QTY)) m.setOrderQty(r.readDouble());
+        if (has(presence, PRICE)) m.setPrice(r.readDouble());
+        if (has(presence, ORD_TYPE)) m.setOrdType(r.readString());
+        if (has(presence, TIME_IN_FORCE)) m.setTimeInForce(r.readString());
+        if (has(presence, CL_ORD_ID)) m.setClOrdID(r.readString());
+        if (has(presence, ORDER_ID)) m.setOrderID(r.readString());
+        if (has(presence, EXEC_ID)) m.setExecID(r.readString());
+        if (has(presence, EXEC_TYPE)) m.setExecType(r.readString());
+        if (has(presence, ORD_STATUS)) m.setOrdStatus(r.readString());
+        if (has(presence, LAST_QTY)) m.setLastQty(r.readDouble());
+        if (has(presence, LAST_PX)) m.setLastPx(r.readDouble());
+        if (has(presence, CUM_QTY)) m.setCumQty(r.readDouble());
+        if (has(presence, AVG_PX)) m.setAvgPx(r.readDouble());
+        if (has(presence, ENCRYPT_METHOD)) m.setEncryptMethod((int) r.readZigzag());
+        if (has(presence, HEART_BT_INT)) m.setHeartBtInt((int) r.readZigzag());
+        if (has(presence, USERNAME)) m.setUsername(r.readString());
+        if (has(presence, TEXT)) m.setText(r.readString());
+        if (has(presence, VALIDATION_STATUS)) {
+            int ordinal = r.readByte();
+            if (ordinal < 0 || ordinal >= ValidationStatus.values().length) {
+                throw new IllegalArgumentException("Unknown validation status: " + ordinal);
+            }
+            m.setValidationStatus(ValidationStatus.values()[ordinal]);
+        }
+
+        if ((flags & FLAG_ALL_FIELDS) != 0) {
+            int count = (int) r.readVarint();
+            Map<String, String> allFields = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                allFields.put(r.readString(), r.readString());
+            }
+            m.setAllFields(allFields);
+        }
+        return m;
+    }
+
+    private static int bit(int index, boolean present) {
+        return present ? 1 << index : 0;
+    }
+
+    private static boolean has(int presence, int index) {
+        return (presence & (1 << index)) != 0;
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (bits >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int readByte() {
+            check(1);
+            return buf[pos++];
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                check(1);
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at offset " + pos);
+        }
+
+        long readZigzag() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        double readDouble() {
+            check(8);
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buf[pos++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            check(length);
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        private void check(int length) {
+            if (length < 0 || pos + length > buf.length) {
+                throw new IllegalArgumentException("Truncated ParsedMessage at offset " + pos);
+            }
+        }
+    }
+}
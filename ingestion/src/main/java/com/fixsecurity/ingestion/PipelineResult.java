@@ -0,0 +1,61 @@
+package com.fixsecurity.ingestion;
+
+import com.fixsecurity.compliance.ComplianceResult;
+import com.fixsecurity.engine.ParsedMessage;
+import com.fixsecurity.security.AnomalyResult;
+
+/**
+ * Outcome of running one raw Kafka record through parse -> detect -> comply, or anomalies the
+ * pipeline found on its own, such as stale orders from the periodic sweep, which carry no record:
+ * no topic, and a partition and offset of -1.
+ */
+public class PipelineResult {
+    private final String topic;
+    private final int partition;
+    private final long offset;
+    private ParsedMessage parsedMessage;
+    private AnomalyResult anomalyResult;
+    private ComplianceResult complianceResult;
+    private String error;
+
+    public PipelineResult(String topic, int partition, long offset) {
+        this.topic = topic;
+        this.partition = partition;
+        this.offset = offset;
+    }
+
+    /**
+     * A result for anomalies not tied to a consumed record
+     */
+    public static PipelineResult ofAnomalies(AnomalyResult anomalyResult) {
+        PipelineResult result = new PipelineResult(null, -1, -1);
+        result.setAnomalyResult(anomalyResult);
+        return result;
+    }
+
+    /**
+     * Session key used for ordering, matching AnomalyDetector's SenderCompID-TargetCompID
+     */
+    public String getSessionId() {
+        return parsedMessage == null ? null
+            : parsedMessage.getSenderCompID() + "-" + parsedMessage.getTargetCompID();
+    }
+
+    public boolean isSuccess() { return error == null; }
+
+    public String getTopic() { return topic; }
+    public int getPartition() { return partition; }
+    public long getOffset() { return offset; }
+
+    public ParsedMessage getParsedMessage() { return parsedMessage; }
+    public void setParsedMessage(ParsedMessage parsedMessage) { this.parsedMessage = parsedMessage; }
+
+    public AnomalyResult getAnomalyResult() { return anomalyResult; }
+    public void setAnomalyResult(AnomalyResult anomalyResult) { this.anomalyResult = anomalyResult; }
+
+    public ComplianceResult getComplianceResult() { return complianceResult; }
+    public void setComplianceResult(ComplianceResult complianceResult) { this.complianceResult = complianceResult; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
@@ -0,0 +1,14 @@
+package com.fixsecurity.ingestion;
+
+import java.util.List;
+
+/**
+ * Destination for pipeline results, e.g. the analytics database.
+ * {@link #persist} must only return once the batch is durable: the pipeline commits the
+ * batch's Kafka offsets right after it returns. If it throws, the pipeline calls it again with
+ * the same results after a back-off, so it should tolerate a partly written earlier attempt.
+ */
+public interface PipelineResultSink {
+
+    void persist(List<PipelineResult> batch) throws Exception;
+}
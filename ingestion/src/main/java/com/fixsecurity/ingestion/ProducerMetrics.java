@@ -0,0 +1,87 @@
+package com.fixsecurity.ingestion;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivery counters for {@link KafkaMessageProducer}. All updates are lock-free so they can be
+ * made from the send path and from Kafka's I/O thread without contention.
+ */
+public class ProducerMetrics {
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder inFlightRecords = new LongAdder();
+    private final LongAdder inFlightBytes = new LongAdder();
+    private final LatencyHistogram sendLatencyMicros = new LatencyHistogram();
+
+    void onSend(int bytes) {
+        sent.increment();
+        inFlightRecords.increment();
+        inFlightBytes.add(bytes);
+    }
+
+    void onAck(int bytes, long latencyNanos) {
+        acked.increment();
+        complete(bytes, latencyNanos);
+    }
+
+    void onFailure(int bytes, long latencyNanos) {
+        failed.increment();
+        complete(bytes, latencyNanos);
+    }
+
+    /** A record that could not be encoded or handed to the client at all */
+    void onRejected() {
+        failed.increment();
+    }
+
+    void onDeadLettered() { deadLettered.increment(); }
+    void onSpilled() { spilled.increment(); }
+    void onDropped() { dropped.increment(); }
+
+    private void complete(int bytes, long latencyNanos) {
+        inFlightRecords.decrement();
+        inFlightBytes.add(-bytes);
+        sendLatencyMicros.record(latencyNanos / 1000);
+    }
+
+    public long getSent() { return sent.sum(); }
+    public long getAcked() { return acked.sum(); }
+    public long getFailed() { return failed.sum(); }
+    public long getDeadLettered() { return deadLettered.sum(); }
+    public long getSpilled() { return spilled.sum(); }
+    public long getDropped() { return dropped.sum(); }
+    public long getInFlightRecords() { return inFlightRecords.sum(); }
+    public long getInFlightBytes() { return inFlightBytes.sum(); }
+    public LatencyHistogram getSendLatencyMicros() { return sendLatencyMicros; }
+
+    /**
+     * Point-in-time view of all counters, suitable for JSON
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("count", sendLatencyMicros.count());
+        latency.put("p50", sendLatencyMicros.percentile(50));
+        latency.put("p90", sendLatencyMicros.percentile(90));
+        latency.put("p99", sendLatencyMicros.percentile(99));
+        latency.put("p999", sendLatencyMicros.percentile(99.9));
+        latency.put("max", sendLatencyMicros.max());
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("sent", getSent());
+        m.put("acked", getAcked());
+        m.put("failed", getFailed());
+        m.put("deadLettered", getDeadLettered());
+        m.put("spilled", getSpilled());
+        m.put("dropped", getDropped());
+        m.put("inFlightRecords", getInFlightRecords());
+        m.put("inFlightBytes", getInFlightBytes());
+        m.put("sendLatencyMicros", latency);
+        return m;
+    }
+}
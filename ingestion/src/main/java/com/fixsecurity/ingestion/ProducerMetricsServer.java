@@ -0,0 +1,50 @@
+package com.fixsecurity.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * Minimal HTTP endpoint serving {@link ProducerMetrics#snapshot()} as JSON on GET /metrics.
+ * Ingestion runs outside the Spring application, so this uses the JDK's built-in server.
+ */
+public class ProducerMetricsServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ProducerMetrics metrics;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ProducerMetricsServer(ProducerMetrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/metrics", this::handle);
+        this.server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = objectMapper.writeValueAsBytes(metrics.snapshot());
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
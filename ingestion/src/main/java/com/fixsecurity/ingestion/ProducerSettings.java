@@ -0,0 +1,117 @@
+package com.fixsecurity.ingestion;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Tuning for {@link KafkaMessageProducer}. The defaults reproduce the original JSON producer;
+ * {@link #highThroughput()} switches to the binary encoding with larger, compressed batches.
+ */
+public class ProducerSettings {
+
+    /**
+     * Value encoding for parsed messages
+     */
+    public enum Encoding {
+        /** Jackson JSON of the whole ParsedMessage */
+        JSON,
+        /** {@link ParsedMessageCodec} binary layout */
+        BINARY
+    }
+
+    private Encoding encoding = Encoding.JSON;
+    private boolean includeAllFields = true;
+    private String compressionType = "none";
+    private int lingerMs = 1;
+    private int batchSize = 16384;
+    private long bufferMemory = 33554432L;
+    private int maxBlockMs = 60000;
+    private int maxRequestSize = 1048576;
+    private String deadLetterTopic;
+    private Path spillFile = Paths.get("kafka-spill.bin");
+    private int deadLetterQueueCapacity = 10000;
+    private Path journalDirectory;
+    private int journalSegmentBytes = 64 * 1024 * 1024;
+    private int journalMaxInFlight = 10000;
+    private long journalFlushIntervalMs = 100;
+    private long journalCloseTimeoutMs = 30000;
+    private int journalRecoveryScanLimit = 1_000_000;
+
+    public static ProducerSettings defaults() {
+        return new ProducerSettings();
+    }
+
+    /**
+     * Binary values, lz4 compression and 256 KB batches that linger up to 10 ms to fill
+     */
+    public static ProducerSettings highThroughput() {
+        return new ProducerSettings()
+            .setEncoding(Encoding.BINARY)
+            .setCompressionType("lz4")
+            .setLingerMs(10)
+            .setBatchSize(262144)
+            .setBufferMemory(67108864L);
+    }
+
+    public Encoding getEncoding() { return encoding; }
+    public ProducerSettings setEncoding(Encoding encoding) { this.encoding = encoding; return this; }
+
+    /** Whether the binary encoding carries the allFields map; JSON always includes it */
+    public boolean isIncludeAllFields() { return includeAllFields; }
+    public ProducerSettings setIncludeAllFields(boolean includeAllFields) { this.includeAllFields = includeAllFields; return this; }
+
+    /** Kafka compression.type: none, gzip, snappy, lz4 or zstd */
+    public String getCompressionType() { return compressionType; }
+    public ProducerSettings setCompressionType(String compressionType) { this.compressionType = compressionType; return this; }
+
+    public int getLingerMs() { return lingerMs; }
+    public ProducerSettings setLingerMs(int lingerMs) { this.lingerMs = lingerMs; return this; }
+
+    public int getBatchSize() { return batchSize; }
+    public ProducerSettings setBatchSize(int batchSize) { this.batchSize = batchSize; return this; }
+
+    public long getBufferMemory() { return bufferMemory; }
+    public ProducerSettings setBufferMemory(long bufferMemory) { this.bufferMemory = bufferMemory; return this; }
+
+    /** How long send() may block on a full buffer or missing metadata before failing the record */
+    public int getMaxBlockMs() { return maxBlockMs; }
+    public ProducerSettings setMaxBlockMs(int maxBlockMs) { this.maxBlockMs = maxBlockMs; return this; }
+
+    /** Kafka max.request.size; the journal rejects raw messages too large to fit in one request */
+    public int getMaxRequestSize() { return maxRequestSize; }
+    public ProducerSettings setMaxRequestSize(int maxRequestSize) { this.maxRequestSize = maxRequestSize; return this; }
+
+    /** Topic for records that could not be delivered; null spills them to {@link #getSpillFile()} only */
+    public String getDeadLetterTopic() { return deadLetterTopic; }
+    public ProducerSettings setDeadLetterTopic(String deadLetterTopic) { this.deadLetterTopic = deadLetterTopic; return this; }
+
+    /** Local file for failed records the dead-letter topic could not take either */
+    public Path getSpillFile() { return spillFile; }
+    public ProducerSettings setSpillFile(Path spillFile) { this.spillFile = spillFile; return this; }
+
+    public int getDeadLetterQueueCapacity() { return deadLetterQueueCapacity; }
+    public ProducerSettings setDeadLetterQueueCapacity(int deadLetterQueueCapacity) { this.deadLetterQueueCapacity = deadLetterQueueCapacity; return this; }
+
+    /** Directory for the {@link RawMessageJournal}; null sends raw messages to Kafka directly */
+    public Path getJournalDirectory() { return journalDirectory; }
+    public ProducerSettings setJournalDirectory(Path journalDirectory) { this.journalDirectory = journalDirectory; return this; }
+
+    public int getJournalSegmentBytes() { return journalSegmentBytes; }
+    public ProducerSettings setJournalSegmentBytes(int journalSegmentBytes) { this.journalSegmentBytes = journalSegmentBytes; return this; }
+
+    /** Journaled records the drainer may have sent but not yet had acknowledged */
+    public int getJournalMaxInFlight() { return journalMaxInFlight; }
+    public ProducerSettings setJournalMaxInFlight(int journalMaxInFlight) { this.journalMaxInFlight = journalMaxInFlight; return this; }
+
+    /** How often journal pages and the checkpoint are forced to disk */
+    public long getJournalFlushIntervalMs() { return journalFlushIntervalMs; }
+    public ProducerSettings setJournalFlushIntervalMs(long journalFlushIntervalMs) { this.journalFlushIntervalMs = journalFlushIntervalMs; return this; }
+
+    /** How long close() keeps draining the journal before leaving the rest for the next start */
+    public long getJournalCloseTimeoutMs() { return journalCloseTimeoutMs; }
+    public ProducerSettings setJournalCloseTimeoutMs(long journalCloseTimeoutMs) { this.journalCloseTimeoutMs = journalCloseTimeoutMs; return this; }
+
+    /** Most records read back from the end of each partition on recovery to find ones already delivered */
+    public int getJournalRecoveryScanLimit() { return journalRecoveryScanLimit; }
+    public ProducerSettings setJournalRecoveryScanLimit(int journalRecoveryScanLimit) { this.journalRecoveryScanLimit = journalRecoveryScanLimit; return this; }
+}
@@ -0,0 +1,724 @@
+package com.fixsecurity.ingestion;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Memory-mapped, append-only journal in front of Kafka for raw FIX messages.
+ * <p>
+ * {@link #append} copies a message into the current mapped segment and returns; it never waits
+ * for the broker. A drainer thread reads committed records in order and sends them to the raw
+ * topic, and a checkpoint file records the first record not yet acknowledged. Segments wholly
+ * before the checkpoint are deleted. Records are: int body length, int CRC32C of the body, then
+ * the body: long sequence, short key length (-1 for null), key, payload. A segment that has no
+ * room for the next record ends with a length of -1.
+ * <p>
+ * On open, the journal is scanned from the checkpoint and the write position is set after the
+ * last record with a valid CRC and sequence. Records after the checkpoint may already have
+ * reached Kafka before a crash; every record carries the journal id and its sequence in headers,
+ * and the drainer sends to an explicit partition, so on recovery each partition is read back from
+ * its end until records from before the checkpoint appear, and the records found there are skipped
+ * instead of sent twice. Without a recovery consumer, or beyond
+ * {@link ProducerSettings#getJournalRecoveryScanLimit()} records per partition, replay is
+ * at-least-once.
+ * <p>
+ * A record that fails with a retriable error is re-sent after a backoff, and nothing newer is sent
+ * until every failed record has been re-sent, so a session's records stay in journal order. A
+ * record Kafka rejects for good goes to the dead-letter sink instead; {@link #append} already
+ * refuses messages too large for one Kafka request.
+ * <p>
+ * Data pages and the checkpoint are forced to disk every flush interval, so a process crash
+ * loses nothing and an OS crash loses at most that interval.
+ */
+public class RawMessageJournal implements AutoCloseable {
+    public static final String JOURNAL_ID_HEADER = "journal.id";
+    public static final String JOURNAL_SEQ_HEADER = "journal.seq";
+
+    private static final int LENGTH_AND_CRC = 8;
+    private static final int BODY_HEADER = 8 + 2;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    /** Allowance for batch, record and journal header overhead within max.request.size */
+    private static final int RECORD_OVERHEAD = 256;
+    private static final int RECOVERY_SCAN_WINDOW = 10000;
+    private static final Duration RECOVERY_POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    private static final long RETRY_BACKOFF_NANOS = 1_000_000_000L;
+    private static final Logger log = LoggerFactory.getLogger(RawMessageJournal.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxMessageBytes;
+    private final int recoveryScanLimit;
+    private final Producer<String, byte[]> producer;
+    private final String topic;
+    private final ProducerMetrics metrics;
+    private final DeadLetterSink deadLetters;
+    private final int maxInFlight;
+    private final long flushIntervalNanos;
+    private final long closeTimeoutNanos;
+    private final Checkpoint checkpoint;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+
+    // Writer state, guarded by this
+    private final CRC32C writeCrc = new CRC32C();
+    private MappedByteBuffer writeBuffer;
+    private long writeSegment;
+    private int writeOffset;
+    private long nextSeq;
+    private boolean closed;
+
+    /** Sequence of the next record to be appended; every record below it is readable */
+    private volatile long committedSeq;
+
+    // Drainer state, drainer thread only
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private Consumer<String, byte[]> recoveryConsumer;
+    /** Records found in Kafka on recovery, by sequence relative to deliveredBase */
+    private BitSet alreadyDelivered = new BitSet();
+    private long deliveredBase;
+    private long readSegment;
+    private int readOffset;
+    private long readSeq;
+    private int partitionCount;
+    private long lastFlushNanos = System.nanoTime();
+    private long lastRetryNanos;
+    private long forcedFromSegment;
+    private long stopDeadline;
+
+    private volatile boolean running = true;
+    private final Thread drainer;
+
+    /**
+     * Open or recover the journal in {@link ProducerSettings#getJournalDirectory()} and start draining
+     *
+     * @param recoveryConsumer consumer the drainer uses once to find replayed records already in
+     *                         Kafka, then closes; null for at-least-once replay
+     * @param deadLetters      destination for records Kafka rejects for good
+     */
+    public RawMessageJournal(ProducerSettings settings, Producer<String, byte[]> producer,
+                             Consumer<String, byte[]> recoveryConsumer, String topic,
+                             ProducerMetrics metrics, DeadLetterSink deadLetters) throws IOException {
+        this.directory = settings.getJournalDirectory();
+        this.segmentSize = settings.getJournalSegmentBytes();
+        this.maxMessageBytes = settings.getMaxRequestSize() - RECORD_OVERHEAD;
+        this.recoveryScanLimit = settings.getJournalRecoveryScanLimit();
+        this.producer = producer;
+        this.topic = topic;
+        this.metrics = metrics;
+        this.deadLetters = deadLetters;
+        this.maxInFlight = settings.getJournalMaxInFlight();
+        this.flushIntervalNanos = settings.getJournalFlushIntervalMs() * 1_000_000L;
+        this.closeTimeoutNanos = settings.getJournalCloseTimeoutMs() * 1_000_000L;
+
+        Files.createDirectories(directory);
+        this.checkpoint = new Checkpoint(directory.resolve(CHECKPOINT_FILE));
+        recover();
+        this.recoveryConsumer = readSeq < committedSeq ? recoveryConsumer : null;
+        if (this.recoveryConsumer == null && recoveryConsumer != null) {
+            recoveryConsumer.close();
+        }
+
+        this.drainer = new Thread(this::drain, "raw-message-journal");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Properties for the consumer that reads partition tails on recovery
+     */
+    public static Properties recoveryConsumerProperties(String bootstrapServers) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        return props;
+    }
+
+    /**
+     * Append a message for delivery. Only copies into the mapped segment, or maps a new one when
+     * the current segment is full; never waits for Kafka.
+     *
+     * @return the message's journal sequence
+     * @throws IllegalArgumentException if the message is too large for one Kafka request or a segment
+     * @throws IllegalStateException    if the journal is closed
+     */
+    public long append(String key, byte[] payload) {
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        int keyLength = keyBytes == null ? 0 : keyBytes.length;
+        int bodyLength = BODY_HEADER + keyLength + payload.length;
+        int recordLength = LENGTH_AND_CRC + bodyLength;
+        if (keyLength + payload.length > maxMessageBytes) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes exceeds the "
+                + maxMessageBytes + " bytes one Kafka request can carry");
+        }
+        if (recordLength > segmentSize || keyLength > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes does not fit in a journal segment");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (writeOffset + recordLength > writeBuffer.capacity()) {
+                roll();
+            }
+            long seq = nextSeq++;
+            MappedByteBuffer buffer = writeBuffer;
+            int offset = writeOffset;
+            int body = offset + LENGTH_AND_CRC;
+            buffer.putLong(body, seq);
+            buffer.putShort(body + 8, keyBytes == null ? -1 : (short) keyLength);
+            if (keyBytes != null) {
+                buffer.put(body + BODY_HEADER, keyBytes);
+            }
+            buffer.put(body + BODY_HEADER + keyLength, payload);
+            writeCrc.reset();
+            writeCrc.update(buffer.slice(body, bodyLength));
+            buffer.putInt(offset + 4, (int) writeCrc.getValue());
+            buffer.putInt(offset, bodyLength);
+            writeOffset = offset + recordLength;
+            committedSeq = seq + 1;
+            return seq;
+        }
+    }
+
+    /** Sequence the next appended message will get */
+    public long getAppendedSequence() {
+        return committedSeq;
+    }
+
+    /** Every message below this sequence has been acknowledged by Kafka */
+    public long getDeliveredSequence() {
+        return checkpoint.nextSeq;
+    }
+
+    private void roll() {
+        if (writeOffset + 4 <= writeBuffer.capacity()) {
+            writeBuffer.putInt(writeOffset, END_OF_SEGMENT);
+        }
+        try {
+            writeSegment++;
+            writeBuffer = mapSegment(writeSegment);
+            writeOffset = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment " + writeSegment, e);
+        }
+    }
+
+    /**
+     * Map a segment at its existing size, so segments written under an earlier segment size stay
+     * readable, or create it at the configured size
+     */
+    private MappedByteBuffer mapSegment(long id) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(id),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Journal segment " + segmentPath(id) + " is larger than 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size == 0 ? segmentSize : size);
+            segments.put(id, buffer);
+            return buffer;
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Map segments from the checkpoint on, find the end of the valid records and position the
+     * writer and drainer
+     */
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(SEGMENT_SUFFIX))
+                .map(n -> Long.parseLong(n.substring(SEGMENT_PREFIX.length(), n.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .forEach(ids::add);
+        }
+        long expected = checkpoint.segment;
+        for (long id : ids) {
+            if (id < checkpoint.segment) {
+                // Already delivered
+                Files.delete(segmentPath(id));
+            } else if (id == expected) {
+                mapSegment(id);
+                expected++;
+            } else {
+                throw new IOException("Journal segment " + expected + " is missing before segment " + id
+                    + " in " + directory);
+            }
+        }
+        if (segments.isEmpty()) {
+            mapSegment(checkpoint.segment);
+        }
+
+        long segment = checkpoint.segment;
+        int offset = checkpoint.offset;
+        long seq = checkpoint.nextSeq;
+        CRC32C crc = new CRC32C();
+        while (true) {
+            MappedByteBuffer buffer = segments.get(segment);
+            int length = offset + 4 <= buffer.capacity() ? buffer.getInt(offset) : END_OF_SEGMENT;
+            if (length == END_OF_SEGMENT) {
+                if (segments.containsKey(segment + 1)) {
+                    segment++;
+                    offset = 0;
+                    continue;
+                }
+                // Crashed between ending the segment and mapping the next
+                segment++;
+                offset = 0;
+                mapSegment(segment);
+                break;
+            }
+            if (length < BODY_HEADER || offset + LENGTH_AND_CRC + length > buffer.capacity()) {
+                break;
+            }
+            int body = offset + LENGTH_AND_CRC;
+            crc.reset();
+            crc.update(buffer.slice(body, length));
+            if ((int) crc.getValue() != buffer.getInt(offset + 4) || buffer.getLong(body) != seq) {
+                break;
+            }
+            seq++;
+            offset = body + length;
+        }
+
+        // Clear a torn tail and anything after it so it cannot be mistaken for records later
+        MappedByteBuffer tail = segments.get(segment);
+        int i = offset;
+        for (; i + 8 <= tail.capacity(); i += 8) {
+            if (tail.getLong(i) != 0L) {
+                tail.putLong(i, 0L);
+            }
+        }
+        for (; i < tail.capacity(); i++) {
+            tail.put(i, (byte) 0);
+        }
+        for (long id : new ArrayList<>(segments.tailMap(segment, false).keySet())) {
+            segments.remove(id);
+            Files.delete(segmentPath(id));
+        }
+
+        writeSegment = segment;
+        writeOffset = offset;
+        writeBuffer = tail;
+        nextSeq = seq;
+        committedSeq = seq;
+        readSegment = checkpoint.segment;
+        readOffset = checkpoint.offset;
+        readSeq = checkpoint.nextSeq;
+        deliveredBase = readSeq;
+        forcedFromSegment = checkpoint.segment;
+    }
+
+    /**
+     * Our records from {@link #deliveredBase} on that are already in the topic. Each partition is
+     * read backwards from its end, a window at a time, until a window holds one of our records from
+     * before the checkpoint (anything older was sent before that record was acknowledged), or the
+     * start of the partition or the scan limit is reached.
+     */
+    private BitSet deliveredSinceCheckpoint(Consumer<String, byte[]> consumer) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (PartitionInfo info : consumer.partitionsFor(topic)) {
+            partitions.add(new TopicPartition(topic, info.partition()));
+        }
+        Map<TopicPartition, Long> begin = consumer.beginningOffsets(partitions);
+        Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+        consumer.assign(partitions);
+        consumer.pause(partitions);
+
+        BitSet delivered = new BitSet();
+        for (TopicPartition tp : partitions) {
+            long limit = Math.max(begin.get(tp), end.get(tp) - recoveryScanLimit);
+            long windowEnd = end.get(tp);
+            boolean reachedCheckpoint = false;
+            consumer.resume(List.of(tp));
+            while (!reachedCheckpoint && windowEnd > limit) {
+                long windowStart = Math.max(limit, windowEnd - RECOVERY_SCAN_WINDOW);
+                reachedCheckpoint = scanWindow(consumer, tp, windowStart, windowEnd, delivered);
+                windowEnd = windowStart;
+            }
+            consumer.pause(List.of(tp));
+            if (!reachedCheckpoint && limit > begin.get(tp)) {
+                log.warn("Journal recovery stopped after {} records of {} without reaching the checkpoint; "
+                    + "older replayed records may be sent again", recoveryScanLimit, tp);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Mark our records in [start, end) of a partition in {@code delivered}
+     *
+     * @return whether one of them is from before the checkpoint
+     */
+    private boolean scanWindow(Consumer<String, byte[]> consumer, TopicPartition tp, long start, long end,
+                               BitSet delivered) {
+        byte[] id = checkpoint.journalId;
+        boolean reachedCheckpoint = false;
+        consumer.seek(tp, start);
+        while (consumer.position(tp) < end) {
+            for (ConsumerRecord<String, byte[]> record : consumer.poll(RECOVERY_POLL_TIMEOUT)) {
+                Header journal = record.headers().lastHeader(JOURNAL_ID_HEADER);
+                Header seq = record.headers().lastHeader(JOURNAL_SEQ_HEADER);
+                if (record.offset() >= end || journal == null || seq == null || !Arrays.equals(journal.value(), id)) {
+                    continue;
+                }
+                long relative = ByteBuffer.wrap(seq.value()).getLong() - deliveredBase;
+                if (relative < 0) {
+                    reachedCheckpoint = true;
+                } else if (relative < Integer.MAX_VALUE) {
+                    delivered.set((int) relative);
+                }
+            }
+        }
+        return reachedCheckpoint;
+    }
+
+    private void drain() {
+        // Looked up here rather than in the constructor so that opening never waits for the broker
+        while (recoveryConsumer != null && !closeTimedOut()) {
+            try {
+                alreadyDelivered = deliveredSinceCheckpoint(recoveryConsumer);
+                recoveryConsumer.close();
+                recoveryConsumer = null;
+            } catch (RuntimeException e) {
+                log.warn("Journal recovery lookup failed, retrying", e);
+                LockSupport.parkNanos(RETRY_BACKOFF_NANOS);
+            }
+        }
+        if (recoveryConsumer != null) {
+            // Close timed out before the lookup succeeded; the backlog stays journaled for the next open
+            recoveryConsumer.close();
+            advanceCheckpoint(true);
+            return;
+        }
+
+        while (running || !(readSeq >= committedSeq && inFlight.isEmpty() || closeTimedOut())) {
+            try {
+                if (partitionCount == 0) {
+                    partitionCount = producer.partitionsFor(topic).size();
+                    if (partitionCount == 0) {
+                        throw new IllegalStateException("No partitions for topic " + topic);
+                    }
+                }
+                retryFailed();
+                int sent = 0;
+                // Nothing newer goes out while a failed record waits for its retry
+                while (inFlight.size() < maxInFlight && readSeq < committedSeq && failedCount.get() == 0) {
+                    sendNext();
+                    sent++;
+                }
+                advanceCheckpoint(false);
+                if (sent == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (RuntimeException e) {
+                // Metadata unavailable or producer failure: keep the journal, try again later
+                log.warn("Journal drainer error, retrying", e);
+                LockSupport.parkNanos(RETRY_BACKOFF_NANOS);
+            }
+        }
+        advanceCheckpoint(true);
+    }
+
+    private boolean closeTimedOut() {
+        if (running) {
+            return false;
+        }
+        if (stopDeadline == 0) {
+            stopDeadline = System.nanoTime() + closeTimeoutNanos;
+        }
+        return System.nanoTime() > stopDeadline;
+    }
+
+    private void sendNext() {
+        MappedByteBuffer buffer = segments.get(readSegment);
+        int length = readOffset + 4 <= buffer.capacity() ? buffer.getInt(readOffset) : END_OF_SEGMENT;
+        if (length == END_OF_SEGMENT) {
+            readSegment++;
+            readOffset = 0;
+            buffer = segments.get(readSegment);
+            length = buffer.getInt(0);
+        }
+        int body = readOffset + LENGTH_AND_CRC;
+        long seq = buffer.getLong(body);
+        short keyLength = buffer.getShort(body + 8);
+        String key = null;
+        int payloadStart = body + BODY_HEADER;
+        if (keyLength >= 0) {
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(payloadStart, keyBytes);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            payloadStart += keyLength;
+        }
+        byte[] payload = new byte[body + length - payloadStart];
+        buffer.get(payloadStart, payload);
+
+        readOffset = body + length;
+        readSeq = seq + 1;
+
+        int partition = key == null ? (int) (seq % partitionCount)
+            : Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % partitionCount;
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(JOURNAL_ID_HEADER, checkpoint.journalId);
+        headers.add(JOURNAL_SEQ_HEADER, ByteBuffer.allocate(8).putLong(seq).array());
+        InFlight entry = new InFlight(seq, readSegment, readOffset,
+            new ProducerRecord<>(topic, partition, key, payload, headers));
+        inFlight.add(entry);
+
+        long relative = seq - deliveredBase;
+        if (relative < Integer.MAX_VALUE && alreadyDelivered.get((int) relative)) {
+            entry.state = InFlight.ACKED;
+        } else {
+            entry.send();
+        }
+    }
+
+    /**
+     * Re-send records whose delivery failed, in journal order, at most once per backoff period
+     */
+    private void retryFailed() {
+        if (failedCount.get() == 0 || System.nanoTime() - lastRetryNanos < RETRY_BACKOFF_NANOS) {
+            return;
+        }
+        lastRetryNanos = System.nanoTime();
+        for (InFlight entry : inFlight) {
+            if (entry.state == InFlight.FAILED) {
+                failedCount.decrementAndGet();
+                entry.send();
+            }
+        }
+    }
+
+    /**
+     * Drop acknowledged records from the head of the in-flight queue and, every flush interval
+     * (or when forced), make the data and the new checkpoint durable and delete drained segments
+     */
+    private void advanceCheckpoint(boolean force) {
+        InFlight head;
+        InFlight last = null;
+        while ((head = inFlight.peek()) != null && head.state == InFlight.ACKED) {
+            last = inFlight.poll();
+        }
+        if (last != null) {
+            checkpoint.pending(last.seq + 1, last.segment, last.nextOffset);
+        }
+        long now = System.nanoTime();
+        if (!force && now - lastFlushNanos < flushIntervalNanos) {
+            return;
+        }
+        lastFlushNanos = now;
+        for (MappedByteBuffer buffer : segments.tailMap(forcedFromSegment).values()) {
+            buffer.force();
+        }
+        forcedFromSegment = readSegment;
+        if (checkpoint.write()) {
+            for (long id : new ArrayList<>(segments.headMap(checkpoint.segment).keySet())) {
+                segments.remove(id);
+                try {
+                    Files.deleteIfExists(segmentPath(id));
+                } catch (IOException e) {
+                    log.warn("Failed to delete journal segment {}", id, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop accepting messages, deliver what is journaled (up to the close timeout) and write a
+     * final checkpoint. Anything left is delivered after the next open.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+        }
+        running = false;
+        drainer.join();
+    }
+
+    private final class InFlight implements Callback {
+        static final int PENDING = 0;
+        static final int ACKED = 1;
+        static final int FAILED = 2;
+
+        final long seq;
+        final long segment;
+        final int nextOffset;
+        final ProducerRecord<String, byte[]> record;
+        volatile int state;
+        long startNanos;
+
+        InFlight(long seq, long segment, int nextOffset, ProducerRecord<String, byte[]> record) {
+            this.seq = seq;
+            this.segment = segment;
+            this.nextOffset = nextOffset;
+            this.record = record;
+        }
+
+        void send() {
+            state = PENDING;
+            startNanos = System.nanoTime();
+            metrics.onSend(record.value().length);
+            try {
+                producer.send(record, this);
+            } catch (RuntimeException e) {
+                onCompletion(null, e);
+            }
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            long latency = System.nanoTime() - startNanos;
+            if (exception == null) {
+                metrics.onAck(record.value().length, latency);
+                state = ACKED;
+            } else if (exception instanceof ApiException && !(exception instanceof RetriableException)) {
+                // Rejected for good, e.g. RecordTooLargeException: re-sending would fail forever
+                // and hold the checkpoint back
+                metrics.onFailure(record.value().length, latency);
+                deadLetters.accept(record, exception);
+                state = ACKED;
+            } else {
+                metrics.onFailure(record.value().length, latency);
+                failedCount.incrementAndGet();
+                state = FAILED;
+            }
+        }
+    }
+
+    /**
+     * Durable position of the first unacknowledged record. Two CRC-protected slots are written
+     * alternately so a torn write leaves the previous checkpoint readable.
+     * Layout: 16-byte journal id, then two slots of long generation, long next sequence,
+     * long segment, int offset, int CRC32C of the preceding 28 bytes.
+     */
+    private static final class Checkpoint {
+        private static final int ID_BYTES = 16;
+        private static final int SLOT_BYTES = 32;
+        private static final int FILE_BYTES = ID_BYTES + 2 * SLOT_BYTES;
+
+        private final MappedByteBuffer buffer;
+        private final byte[] journalId = new byte[ID_BYTES];
+        private long generation;
+        private volatile long nextSeq;
+        private long segment;
+        private int offset;
+        private long pendingSeq;
+        private long pendingSegment;
+        private int pendingOffset;
+
+        Checkpoint(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                boolean created = channel.size() == 0;
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+                if (created) {
+                    UUID id = UUID.randomUUID();
+                    buffer.putLong(0, id.getMostSignificantBits());
+                    buffer.putLong(8, id.getLeastSignificantBits());
+                    buffer.force();
+                }
+            }
+            buffer.get(0, journalId);
+            generation = -1;
+            for (int slot = 0; slot < 2; slot++) {
+                int base = ID_BYTES + slot * SLOT_BYTES;
+                if (buffer.getInt(base + 28) == slotCrc(base) && buffer.getLong(base) > generation) {
+                    generation = buffer.getLong(base);
+                    nextSeq = buffer.getLong(base + 8);
+                    segment = buffer.getLong(base + 16);
+                    offset = buffer.getInt(base + 24);
+                }
+            }
+            if (generation < 0) {
+                generation = 0;
+                nextSeq = 0;
+                segment = 0;
+                offset = 0;
+            }
+            pendingSeq = nextSeq;
+            pendingSegment = segment;
+            pendingOffset = offset;
+        }
+
+        void pending(long seq, long segment, int offset) {
+            pendingSeq = seq;
+            pendingSegment = segment;
+            pendingOffset = offset;
+        }
+
+        /**
+         * Persist the pending position if it moved
+         *
+         * @return whether a new checkpoint was written
+         */
+        boolean write() {
+            if (pendingSeq == nextSeq) {
+                return false;
+            }
+            generation++;
+            int base = ID_BYTES + (int) (generation & 1) * SLOT_BYTES;
+            buffer.putLong(base, generation);
+            buffer.putLong(base + 8, pendingSeq);
+            buffer.putLong(base + 16, pendingSegment);
+            buffer.putInt(base + 24, pendingOffset);
+            buffer.putInt(base + 28, slotCrc(base));
+            buffer.force();
+            segment = pendingSegment;
+            offset = pendingOffset;
+            nextSeq = pendingSeq;
+            return true;
+        }
+
+        private int slotCrc(int base) {
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(base, 28));
+            return (int) crc.getValue();
+        }
+    }
+}
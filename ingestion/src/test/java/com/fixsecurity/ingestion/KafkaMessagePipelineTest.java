@@ -0,0 +1,209 @@
+package com.fixsecurity.ingestion;
+
+import com.fixsecurity.compliance.ComplianceRuleEngine;
+import com.fixsecurity.engine.ParsedMessage;
+import com.fixsecurity.security.AnomalyDetector;
+import com.fixsecurity.security.AnomalyResult;
+import org.apache.kafka.clients.consumer.CommitFailedException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs KafkaMessagePipeline against a MockConsumer and checks when offsets are committed, how a
+ * failing sink is retried and how commit failures and close are handled.
+ */
+class KafkaMessagePipelineTest {
+    private static final String TOPIC = "fix-messages-raw";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+    private static final long TIMEOUT_MS = 10_000;
+
+    private final CountingDetector detector = new CountingDetector();
+    private KafkaMessagePipeline pipeline;
+
+    @AfterEach
+    void closePipeline() throws InterruptedException {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    void commitsOffsetsOnlyAfterSinkReturns() throws Exception {
+        RecordingConsumer consumer = consumer();
+        CountDownLatch persisting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<PipelineResult> persisted = Collections.synchronizedList(new ArrayList<>());
+        start(consumer, batch -> {
+            persisting.countDown();
+            assertTrue(release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            persisted.addAll(batch);
+        });
+        deliver(consumer, 0, 20);
+
+        assertTrue(persisting.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Thread.sleep(200);
+        assertNull(committed(consumer), "committed while the sink was still writing");
+
+        release.countDown();
+        waitUntil(() -> committed(consumer) != null);
+        assertEquals(20, committed(consumer).offset());
+        assertEquals(20, persisted.size());
+        assertTrue(persisted.stream().allMatch(r -> r.isSuccess() && r.getAnomalyResult() != null));
+    }
+
+    @Test
+    void failingSinkIsRetriedWithoutReprocessingWhilePartitionsArePaused() throws Exception {
+        RecordingConsumer consumer = consumer();
+        AtomicInteger attempts = new AtomicInteger();
+        List<Set<TopicPartition>> pausedDuringAttempt = Collections.synchronizedList(new ArrayList<>());
+        start(consumer, batch -> {
+            // The sink runs on the polling thread, so it can look at the consumer directly
+            pausedDuringAttempt.add(consumer.paused());
+            if (attempts.incrementAndGet() <= 2) {
+                throw new IllegalStateException("database unavailable");
+            }
+        });
+        deliver(consumer, 0, 10);
+
+        waitUntil(() -> committed(consumer) != null);
+        assertEquals(10, committed(consumer).offset());
+        assertEquals(3, attempts.get());
+        assertEquals(2, pipeline.getSinkRetries());
+        assertEquals(10, detector.calls.get(), "messages were detected again on retry");
+        assertEquals(Set.of(), pausedDuringAttempt.get(0));
+        assertEquals(Set.of(PARTITION), pausedDuringAttempt.get(1));
+        assertEquals(Set.of(PARTITION), pausedDuringAttempt.get(2));
+        waitUntil(() -> consumer.paused().isEmpty());
+        assertEquals(KafkaMessagePipeline.State.RUNNING, pipeline.getState());
+    }
+
+    @Test
+    void commitFailureIsCountedAndConsumptionContinues() throws Exception {
+        RecordingConsumer consumer = consumer();
+        consumer.commitFailuresLeft.set(1);
+        AtomicInteger persisted = new AtomicInteger();
+        start(consumer, batch -> persisted.addAndGet(batch.size()));
+        deliver(consumer, 0, 5);
+
+        waitUntil(() -> pipeline.getCommitFailures() == 1);
+        assertNull(committed(consumer));
+        assertEquals(KafkaMessagePipeline.State.RUNNING, pipeline.getState());
+
+        deliver(consumer, 5, 5);
+        waitUntil(() -> committed(consumer) != null);
+        assertEquals(10, committed(consumer).offset());
+        assertEquals(10, persisted.get());
+        assertEquals(1, pipeline.getCommitFailures());
+        assertEquals(KafkaMessagePipeline.State.RUNNING, pipeline.getState());
+    }
+
+    @Test
+    void closeDuringRetryReturnsWithoutCommitting() throws Exception {
+        RecordingConsumer consumer = consumer();
+        start(consumer, batch -> {
+            throw new IllegalStateException("database unavailable");
+        });
+        deliver(consumer, 0, 3);
+        waitUntil(() -> pipeline.getSinkRetries() >= 1);
+
+        long started = System.currentTimeMillis();
+        pipeline.close();
+        assertTrue(System.currentTimeMillis() - started < 5_000, "close waited out the retry back-off");
+        assertEquals(KafkaMessagePipeline.State.STOPPED, pipeline.getState());
+        assertTrue(consumer.closed());
+        assertTrue(consumer.commits.isEmpty(), "committed a batch that was never persisted");
+    }
+
+    private void start(MockConsumer<String, byte[]> consumer, PipelineResultSink sink) {
+        pipeline = new KafkaMessagePipeline(consumer, TOPIC, sink, detector, new ComplianceRuleEngine(), 2, 2, 64);
+        consumer.schedulePollTask(() -> consumer.rebalance(List.of(PARTITION)));
+        pipeline.start();
+    }
+
+    private static RecordingConsumer consumer() {
+        RecordingConsumer consumer = new RecordingConsumer();
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        return consumer;
+    }
+
+    private static void deliver(MockConsumer<String, byte[]> consumer, int firstOffset, int count) {
+        consumer.schedulePollTask(() -> {
+            for (int offset = firstOffset; offset < firstOffset + count; offset++) {
+                consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, offset, "CLIENT" + offset % 3, order(offset + 1)));
+            }
+        });
+    }
+
+    private static OffsetAndMetadata committed(RecordingConsumer consumer) {
+        synchronized (consumer.commits) {
+            return consumer.commits.isEmpty() ? null : consumer.commits.get(consumer.commits.size() - 1).get(PARTITION);
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for the pipeline");
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * A NewOrderSingle from one of three sessions, sequenced per session
+     */
+    private static byte[] order(int n) {
+        String content = ("35=D|49=CLIENT" + n % 3 + "|56=BROKER|34=" + (n / 3 + 1) + "|52=20240102-14:30:00.000|11=ORD"
+            + n + "|55=AAPL|54=1|38=100|40=2|44=187.25|").replace('|', '\u0001');
+        String message = "8=FIX.4.4\u00019=" + content.length() + "\u0001" + content;
+        int sum = 0;
+        for (byte b : message.getBytes(StandardCharsets.ISO_8859_1)) {
+            sum += b;
+        }
+        return (message + String.format("10=%03d\u0001", sum & 0xFF)).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * MockConsumer that keeps every successful commit, readable after close, and can fail commits
+     */
+    private static final class RecordingConsumer extends MockConsumer<String, byte[]> {
+        private final List<Map<TopicPartition, OffsetAndMetadata>> commits = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger commitFailuresLeft = new AtomicInteger();
+
+        RecordingConsumer() {
+            super(OffsetResetStrategy.EARLIEST);
+        }
+
+        @Override
+        public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+            if (commitFailuresLeft.getAndDecrement() > 0) {
+                throw new CommitFailedException();
+            }
+            super.commitSync(offsets);
+            commits.add(new HashMap<>(offsets));
+        }
+    }
+
+    private static final class CountingDetector extends AnomalyDetector {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public AnomalyResult detectAnomalies(ParsedMessage message) {
+            calls.incrementAndGet();
+            return super.detectAnomalies(message);
+        }
+    }
+}
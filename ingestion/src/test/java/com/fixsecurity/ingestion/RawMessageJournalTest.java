@@ -0,0 +1,373 @@
+package com.fixsecurity.ingestion;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that RawMessageJournal replays after a crash without losing or duplicating records.
+ * A crash is simulated by copying the directory of a journal that is still running (its mapped
+ * pages are what a killed process leaves behind) and opening a second journal on the copy,
+ * after tearing or removing parts of it where a test needs to.
+ */
+class RawMessageJournalTest {
+    private static final String TOPIC = "fix-messages-raw";
+    private static final int PARTITIONS = 3;
+    private static final long TIMEOUT_MS = 10_000;
+
+    // On-disk layout, see RawMessageJournal and its Checkpoint
+    private static final int LENGTH_AND_CRC = 8;
+    private static final int CHECKPOINT_ID_BYTES = 16;
+    private static final int CHECKPOINT_SLOT_BYTES = 32;
+
+    @TempDir
+    Path tmp;
+
+    private final List<AutoCloseable> open = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() throws Exception {
+        Collections.reverse(open);
+        for (AutoCloseable closeable : open) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedAndItsSequenceReused() throws Exception {
+        Path dir = tmp.resolve("crashed");
+        RawMessageJournal crashed = open(dir, 1 << 20, unacknowledged(), null);
+        for (int i = 0; i < 10; i++) {
+            crashed.append("S" + i % 3, payload(i));
+        }
+        Path copy = crashCopy(dir);
+        List<Integer> offsets = recordOffsets(segment(copy, 0));
+        assertEquals(10, offsets.size());
+        // The last record was being written: its CRC no longer matches
+        flipByte(segment(copy, 0), offsets.get(9) + LENGTH_AND_CRC + 12);
+
+        MockProducer<String, byte[]> producer = acknowledging();
+        RawMessageJournal recovered = open(copy, 1 << 20, producer, null);
+        assertEquals(9, recovered.getAppendedSequence());
+        assertEquals(9, recovered.append("S0", "replacement".getBytes(StandardCharsets.UTF_8)));
+        recovered.close();
+
+        assertEquals(LongStream.range(0, 10).boxed().toList(), sequences(producer.history()));
+        for (int i = 0; i < 9; i++) {
+            assertArrayEquals(payload(i), producer.history().get(i).value());
+        }
+        assertEquals("replacement", new String(producer.history().get(9).value(), StandardCharsets.UTF_8));
+        // Nothing of the torn record survives past the replacement
+        assertEquals(10, recordOffsets(segment(copy, 0)).size());
+    }
+
+    @Test
+    void tornCheckpointSlotFallsBackToOtherSlot() throws Exception {
+        Path dir = tmp.resolve("journal");
+        MockProducer<String, byte[]> first = acknowledging();
+        RawMessageJournal journal = open(dir, 1 << 20, first, null);
+        for (int i = 0; i < 5; i++) {
+            journal.append("S" + i % 3, payload(i));
+        }
+        waitUntil(() -> journal.getDeliveredSequence() == 5);
+        for (int i = 5; i < 10; i++) {
+            journal.append("S" + i % 3, payload(i));
+        }
+        waitUntil(() -> journal.getDeliveredSequence() == 10);
+        journal.close();
+
+        Path checkpoint = dir.resolve("checkpoint");
+        int newest = checkpointGeneration(checkpoint, 0) > checkpointGeneration(checkpoint, 1) ? 0 : 1;
+        long olderSeq = checkpointSeq(checkpoint, 1 - newest);
+        assertEquals(10, checkpointSeq(checkpoint, newest));
+        assertTrue(olderSeq >= 5 && olderSeq < 10, "older slot at " + olderSeq);
+        flipByte(checkpoint, CHECKPOINT_ID_BYTES + newest * CHECKPOINT_SLOT_BYTES + 8);
+
+        MockProducer<String, byte[]> second = acknowledging();
+        RawMessageJournal reopened = open(dir, 1 << 20, second, null);
+        waitUntil(() -> reopened.getDeliveredSequence() == 10);
+        reopened.close();
+        assertEquals(LongStream.range(olderSeq, 10).boxed().toList(), sequences(second.history()));
+        for (ProducerRecord<String, byte[]> record : second.history()) {
+            assertArrayEquals(payload((int) sequence(record)), record.value());
+        }
+    }
+
+    @Test
+    void replaysAcrossSegmentRollsInOrder() throws Exception {
+        Path dir = tmp.resolve("crashed");
+        RawMessageJournal crashed = open(dir, 4096, unacknowledged(), null);
+        for (int i = 0; i < 200; i++) {
+            crashed.append("S" + i % 3, payload(i));
+        }
+        Path copy = crashCopy(dir);
+        assertTrue(segmentIds(copy).size() > 3, "expected several segments");
+
+        MockProducer<String, byte[]> producer = acknowledging();
+        RawMessageJournal recovered = open(copy, 4096, producer, null);
+        assertEquals(200, recovered.append("S0", payload(200)));
+        recovered.close();
+        assertEquals(LongStream.range(0, 201).boxed().toList(), sequences(producer.history()));
+        for (ProducerRecord<String, byte[]> record : producer.history()) {
+            assertArrayEquals(payload((int) sequence(record)), record.value());
+        }
+        assertEquals(1, segmentIds(copy).size(), "delivered segments were not deleted");
+    }
+
+    @Test
+    void recoversCrashAfterEndOfSegmentBeforeNextSegmentExists() throws Exception {
+        Path dir = tmp.resolve("crashed");
+        RawMessageJournal crashed = open(dir, 4096, unacknowledged(), null);
+        int appended = 0;
+        while (segmentIds(dir).size() < 2) {
+            crashed.append("S" + appended % 3, payload(appended));
+            appended++;
+        }
+        Path copy = crashCopy(dir);
+        // Segment 0 is ended; the crash came before segment 1 and its first record were written
+        Files.delete(segment(copy, 1));
+        int inFirstSegment = appended - 1;
+        assertEquals(inFirstSegment, recordOffsets(segment(copy, 0)).size());
+
+        MockProducer<String, byte[]> producer = acknowledging();
+        RawMessageJournal recovered = open(copy, 4096, producer, null);
+        assertEquals(inFirstSegment, recovered.getAppendedSequence());
+        for (int i = inFirstSegment; i < inFirstSegment + 50; i++) {
+            assertEquals(i, recovered.append("S" + i % 3, payload(i)));
+        }
+        recovered.close();
+        assertEquals(LongStream.range(0, inFirstSegment + 50).boxed().toList(), sequences(producer.history()));
+        for (ProducerRecord<String, byte[]> record : producer.history()) {
+            assertArrayEquals(payload((int) sequence(record)), record.value());
+        }
+    }
+
+    @Test
+    void skipsRecordsAlreadyInKafkaAndResendsOnlyTheMissingOne() throws Exception {
+        Path dir = tmp.resolve("crashed");
+        MockProducer<String, byte[]> first = unacknowledged();
+        RawMessageJournal crashed = open(dir, 1 << 20, first, null);
+        for (int i = 0; i < 500; i++) {
+            crashed.append("S" + i % 7, payload(i));
+        }
+        waitUntil(() -> first.history().size() == 500);
+        for (int i = 0; i < 300; i++) {
+            first.completeNext();
+        }
+        waitUntil(() -> crashed.getDeliveredSequence() == 300);
+        Path copy = crashCopy(dir);
+
+        // Kafka holds every record up to 349 except 320, which was lost with the crash
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions(TOPIC, partitionInfos());
+        long[] nextOffset = new long[PARTITIONS];
+        List<ConsumerRecord<String, byte[]>> inKafka = new ArrayList<>();
+        for (ProducerRecord<String, byte[]> sent : first.history().subList(0, 350)) {
+            if (sequence(sent) == 320) {
+                continue;
+            }
+            ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(TOPIC, sent.partition(),
+                nextOffset[sent.partition()]++, sent.key(), sent.value());
+            sent.headers().forEach(header -> record.headers().add(header));
+            inKafka.add(record);
+        }
+        Map<TopicPartition, Long> beginning = new HashMap<>();
+        Map<TopicPartition, Long> end = new HashMap<>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            beginning.put(new TopicPartition(TOPIC, p), 0L);
+            end.put(new TopicPartition(TOPIC, p), nextOffset[p]);
+        }
+        consumer.updateBeginningOffsets(beginning);
+        consumer.updateEndOffsets(end);
+        consumer.schedulePollTask(() -> inKafka.forEach(consumer::addRecord));
+
+        MockProducer<String, byte[]> producer = acknowledging();
+        RawMessageJournal recovered = open(copy, 1 << 20, producer, consumer);
+        recovered.close();
+        List<Long> expected = new ArrayList<>();
+        expected.add(320L);
+        LongStream.range(350, 500).forEach(expected::add);
+        assertEquals(expected, sequences(producer.history()));
+        assertTrue(consumer.closed());
+    }
+
+    @Test
+    void recordRejectedForGoodIsDeadLetteredAndCheckpointAdvances() throws Exception {
+        Path dir = tmp.resolve("journal");
+        Path spill = tmp.resolve("spill");
+        ProducerMetrics metrics = new ProducerMetrics();
+        DeadLetterSink deadLetters = new DeadLetterSink(acknowledging(), null, spill, metrics, 100);
+        MockProducer<String, byte[]> producer = unacknowledged();
+        RawMessageJournal journal = new RawMessageJournal(settings(dir, 1 << 20), producer, null, TOPIC,
+            metrics, deadLetters);
+        open.add(deadLetters);
+        open.add(journal);
+        journal.append("S1", "rejected".getBytes(StandardCharsets.UTF_8));
+        journal.append("S1", "accepted".getBytes(StandardCharsets.UTF_8));
+        waitUntil(() -> producer.history().size() == 2);
+        assertTrue(producer.errorNext(new RecordTooLargeException("too large")));
+        assertTrue(producer.completeNext());
+
+        waitUntil(() -> journal.getDeliveredSequence() == 2);
+        journal.close();
+        deadLetters.close();
+        List<String> spilled = new ArrayList<>();
+        DeadLetterSink.readSpillFile(spill, record -> spilled.add(new String(record.value(), StandardCharsets.UTF_8)));
+        assertEquals(List.of("rejected"), spilled);
+
+        // Nothing is replayed on the next open
+        MockProducer<String, byte[]> next = acknowledging();
+        RawMessageJournal reopened = open(dir, 1 << 20, next, null);
+        assertEquals(2, reopened.getDeliveredSequence());
+        reopened.close();
+        assertEquals(List.of(), next.history());
+    }
+
+    private RawMessageJournal open(Path dir, int segmentBytes, MockProducer<String, byte[]> producer,
+                                   MockConsumer<String, byte[]> consumer) throws IOException {
+        ProducerMetrics metrics = new ProducerMetrics();
+        DeadLetterSink deadLetters = new DeadLetterSink(acknowledging(), null, dir.resolveSibling(dir.getFileName() + ".spill"),
+            metrics, 100);
+        RawMessageJournal journal = new RawMessageJournal(settings(dir, segmentBytes), producer, consumer, TOPIC,
+            metrics, deadLetters);
+        open.add(deadLetters);
+        open.add(journal);
+        return journal;
+    }
+
+    private static ProducerSettings settings(Path dir, int segmentBytes) {
+        return ProducerSettings.defaults()
+            .setJournalDirectory(dir)
+            .setJournalSegmentBytes(segmentBytes)
+            .setJournalFlushIntervalMs(10)
+            .setJournalCloseTimeoutMs(500);
+    }
+
+    /** Producer that acknowledges every send at once */
+    private static MockProducer<String, byte[]> acknowledging() {
+        return new MockProducer<>(cluster(), true, null, new StringSerializer(), new ByteArraySerializer());
+    }
+
+    /** Producer that holds every send until the test completes it */
+    private static MockProducer<String, byte[]> unacknowledged() {
+        return new MockProducer<>(cluster(), false, null, new StringSerializer(), new ByteArraySerializer());
+    }
+
+    private static Cluster cluster() {
+        Node node = new Node(0, "localhost", 9092);
+        return new Cluster("test", List.of(node), partitionInfos(), Set.of(), Set.of());
+    }
+
+    private static List<PartitionInfo> partitionInfos() {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            partitions.add(new PartitionInfo(TOPIC, p, node, new Node[] { node }, new Node[] { node }));
+        }
+        return partitions;
+    }
+
+    private static byte[] payload(int i) {
+        return ("8=FIX.4.4|35=D|34=" + i + "|11=ORD" + i + "|55=AAPL|38=100|").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long sequence(ProducerRecord<String, byte[]> record) {
+        return ByteBuffer.wrap(record.headers().lastHeader(RawMessageJournal.JOURNAL_SEQ_HEADER).value()).getLong();
+    }
+
+    private static List<Long> sequences(List<ProducerRecord<String, byte[]>> records) {
+        return records.stream().map(RawMessageJournalTest::sequence).collect(Collectors.toList());
+    }
+
+    /**
+     * Copy a running journal's files, as a crash of its process would leave them
+     */
+    private Path crashCopy(Path dir) throws IOException {
+        Path copy = tmp.resolve(dir.getFileName() + "-copy");
+        Files.createDirectories(copy);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    private static Path segment(Path dir, long id) {
+        return dir.resolve(String.format("journal-%020d.log", id));
+    }
+
+    private static List<Long> segmentIds(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                .filter(n -> n.startsWith("journal-") && n.endsWith(".log"))
+                .map(n -> Long.parseLong(n.substring("journal-".length(), n.length() - ".log".length())))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /** Offsets of the records in a segment, up to the first empty or end-of-segment length */
+    private static List<Integer> recordOffsets(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Integer> offsets = new ArrayList<>();
+        for (int offset = 0; offset + 4 <= buffer.capacity() && buffer.getInt(offset) > 0;
+             offset += LENGTH_AND_CRC + buffer.getInt(offset)) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    private static long checkpointGeneration(Path checkpoint, int slot) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(checkpoint)).getLong(CHECKPOINT_ID_BYTES + slot * CHECKPOINT_SLOT_BYTES);
+    }
+
+    private static long checkpointSeq(Path checkpoint, int slot) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(checkpoint)).getLong(CHECKPOINT_ID_BYTES + slot * CHECKPOINT_SLOT_BYTES + 8);
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) (b.get(0) ^ 0x5a));
+            b.rewind();
+            channel.write(b, position);
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for the journal");
+            Thread.sleep(10);
+        }
+    }
+}
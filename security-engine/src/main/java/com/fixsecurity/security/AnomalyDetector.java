@@ -1,43 +1,71 @@
 package com.fixsecurity.security;
 
 import com.fixsecurity.engine.ParsedMessage;
-import java.util.*;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Anomaly Detection Engine for FIX messages
- * Detects unusual patterns and potential security threats
+ * Detects unusual patterns and potential security threats.
+ * Safe for concurrent use: session state lives in a concurrent map and each session's
+ * check-then-update step runs under that session's own baseline monitor, so messages
+ * of one session are processed in order while different sessions proceed in parallel.
+ * Order prices are checked against {@link PriceStatistics} and fills against
+ * {@link OrderStateTracker}; both are shared by all sessions and lock per stripe.
  */
 public class AnomalyDetector {
-    private Map<String, SessionBaseline> sessionBaselines = new HashMap<>();
-    private Map<String, List<LocalDateTime>> messageTimestamps = new HashMap<>();
+    /** Symbols without an order this long lose their price statistics: eight half-lives by default */
+    public static final long SYMBOL_IDLE_MILLIS = 4 * 60 * 60 * 1000L;
+
+    private final Map<String, SessionBaseline> sessionBaselines = new ConcurrentHashMap<>();
+    private final PriceStatistics priceStatistics;
+    private final OrderStateTracker orderTracker;
     private double anomalyThreshold = 2.0; // Standard deviations
+
+    public AnomalyDetector() {
+        this(new PriceStatistics(), new OrderStateTracker());
+    }
+
+    /**
+     * @param priceStatistics per-symbol price statistics, e.g. sized for the symbol universe
+     * @param orderTracker    live order state used to reconcile fills against orders
+     */
+    public AnomalyDetector(PriceStatistics priceStatistics, OrderStateTracker orderTracker) {
+        this.priceStatistics = priceStatistics;
+        this.orderTracker = orderTracker;
+    }
     
     /**
      * Analyze a FIX message for anomalies
      */
     public AnomalyResult detectAnomalies(ParsedMessage message) {
-        AnomalyResult result = new AnomalyResult();
         String sessionId = message.getSenderCompID() + "-" + message.getTargetCompID();
+        SessionBaseline baseline = sessionBaselines.computeIfAbsent(sessionId, k -> new SessionBaseline());
+        synchronized (baseline) {
+            return detectAnomalies(sessionId, baseline, message);
+        }
+    }
+
+    private AnomalyResult detectAnomalies(String sessionId, SessionBaseline baseline, ParsedMessage message) {
+        AnomalyResult result = new AnomalyResult();
         
         String orderId = message.getOrderID();
         String clOrdID = message.getClOrdID();
 
         // Check message volume anomaly
-        if (isVolumeAnomaly(sessionId)) {
+        if (isVolumeAnomaly(baseline)) {
             result.addAnomaly("HIGH_MESSAGE_VOLUME",
                 "Unusual high message volume detected for session: " + sessionId, orderId, clOrdID);
         }
 
         // Check message type anomaly
-        if (isMessageTypeAnomaly(sessionId, message.getMsgType())) {
+        if (isMessageTypeAnomaly(baseline, message.getMsgType())) {
             result.addAnomaly("UNUSUAL_MESSAGE_TYPE",
                 "Unusual message type detected: " + message.getMsgType(), orderId, clOrdID);
         }
 
         // Check sequence number anomaly
-        if (isSequenceAnomaly(sessionId, message.getMsgSeqNum())) {
+        if (isSequenceAnomaly(baseline, message.getMsgSeqNum())) {
             result.addAnomaly("SEQUENCE_NUMBER_ANOMALY",
                 "Sequence number gap detected: " + message.getMsgSeqNum(), orderId, clOrdID);
         }
@@ -49,54 +77,36 @@ public class AnomalyDetector {
                     "Unusual price detected: " + message.getPrice() + " for " + message.getSymbol(), orderId, clOrdID);
             }
         }
+
+        // Check fills against the order's state
+        orderTracker.onMessage(message, result, System.currentTimeMillis());
         
         // Update baseline
-        updateBaseline(sessionId, message);
+        updateBaseline(baseline, message);
         
         return result;
     }
     
-    private boolean isVolumeAnomaly(String sessionId) {
-        List<LocalDateTime> timestamps = messageTimestamps.getOrDefault(sessionId, new ArrayList<>());
-        LocalDateTime now = LocalDateTime.now();
-        
+    private boolean isVolumeAnomaly(SessionBaseline baseline) {
         // Count messages in last minute
-        long messagesLastMinute = timestamps.stream()
-            .filter(t -> ChronoUnit.SECONDS.between(t, now) < 60)
-            .count();
-        
-        SessionBaseline baseline = sessionBaselines.get(sessionId);
-        if (baseline == null) {
-            return false;
-        }
+        long messagesLastMinute = baseline.getRateCounter().countLastMinute(System.currentTimeMillis());
         
         double avgMessagesPerMinute = baseline.getAvgMessagesPerMinute();
         return messagesLastMinute > (avgMessagesPerMinute * anomalyThreshold);
     }
     
-    private boolean isMessageTypeAnomaly(String sessionId, String msgType) {
-        SessionBaseline baseline = sessionBaselines.get(sessionId);
-        if (baseline == null) {
-            return false;
-        }
-        
-        Map<String, Integer> typeDistribution = baseline.getMessageTypeDistribution();
-        int totalMessages = typeDistribution.values().stream().mapToInt(Integer::intValue).sum();
+    private boolean isMessageTypeAnomaly(SessionBaseline baseline, String msgType) {
+        long totalMessages = baseline.getMessageCount();
         
         if (totalMessages == 0) {
             return false;
         }
         
-        double expectedFrequency = typeDistribution.getOrDefault(msgType, 0) / (double) totalMessages;
+        double expectedFrequency = baseline.getMessageTypeCount(msgType) / (double) totalMessages;
         return expectedFrequency < 0.01; // Less than 1% expected frequency
     }
     
-    private boolean isSequenceAnomaly(String sessionId, int seqNum) {
-        SessionBaseline baseline = sessionBaselines.get(sessionId);
-        if (baseline == null) {
-            return false;
-        }
-        
+    private boolean isSequenceAnomaly(SessionBaseline baseline, int seqNum) {
         int lastSeqNum = baseline.getLastSequenceNumber();
         if (lastSeqNum > 0 && seqNum > lastSeqNum + 10) {
             return true; // Gap of more than 10 sequence numbers
@@ -106,30 +116,48 @@ public class AnomalyDetector {
     }
     
     private boolean isPriceAnomaly(String symbol, double price) {
-        // Simple price anomaly detection based on deviation from recent average
-        // In production, this would use more sophisticated statistical methods
-        return false; // Placeholder
+        // Deviation from the symbol's time-decayed mean across all sessions
+        return priceStatistics.observe(symbol, price, System.currentTimeMillis(), anomalyThreshold);
     }
     
-    private void updateBaseline(String sessionId, ParsedMessage message) {
-        SessionBaseline baseline = sessionBaselines.computeIfAbsent(
-            sessionId, 
-            k -> new SessionBaseline()
-        );
-        
+    private void updateBaseline(SessionBaseline baseline, ParsedMessage message) {
         baseline.incrementMessageCount();
         baseline.updateLastSequenceNumber(message.getMsgSeqNum());
         baseline.updateMessageTypeDistribution(message.getMsgType());
         
-        // Update timestamps
-        List<LocalDateTime> timestamps = messageTimestamps.computeIfAbsent(
-            sessionId,
-            k -> new ArrayList<>()
-        );
-        timestamps.add(LocalDateTime.now());
-        
-        // Keep only last hour of timestamps
-        LocalDateTime oneHourAgo = LocalDateTime.now().minusHours(1);
-        timestamps.removeIf(t -> t.isBefore(oneHourAgo));
+        // Per-second and per-minute buckets replace the raw timestamp history
+        baseline.getRateCounter().record(System.currentTimeMillis());
+    }
+
+    public PriceStatistics getPriceStatistics() {
+        return priceStatistics;
+    }
+
+    public OrderStateTracker getOrderTracker() {
+        return orderTracker;
+    }
+
+    /**
+     * Evict finished orders and report open orders gone stale; call periodically
+     */
+    public AnomalyResult sweepOrders() {
+        return orderTracker.sweep(System.currentTimeMillis());
+    }
+
+    /**
+     * Drop price statistics of symbols with no order for {@link #SYMBOL_IDLE_MILLIS}, freeing
+     * their slots for new symbols; call periodically
+     *
+     * @return number of symbols dropped
+     */
+    public int evictIdleSymbols() {
+        return priceStatistics.evictIdle(System.currentTimeMillis(), SYMBOL_IDLE_MILLIS);
+    }
+
+    /**
+     * Baseline for a session, or null if no message has been seen for it
+     */
+    public SessionBaseline getSessionBaseline(String sessionId) {
+        return sessionBaselines.get(sessionId);
     }
 }
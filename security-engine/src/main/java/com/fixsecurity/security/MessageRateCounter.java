@@ -0,0 +1,74 @@
+package com.fixsecurity.security;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory sliding-window message counter.
+ * Keeps 60 one-second buckets for the last minute and 60 one-minute buckets for the last hour
+ * in primitive ring buffers, so recording and querying are O(1) regardless of message rate.
+ * Counts are exact to bucket granularity. Not thread-safe: updates for a session must be
+ * serialized by the caller (AnomalyDetector does so under the session's baseline monitor).
+ */
+public class MessageRateCounter {
+    private static final int SECOND_BUCKETS = 60;
+    private static final int MINUTE_BUCKETS = 60;
+
+    private final long[] secondCounts = new long[SECOND_BUCKETS];
+    private final long[] secondStamps = new long[SECOND_BUCKETS];
+    private final long[] minuteCounts = new long[MINUTE_BUCKETS];
+    private final long[] minuteStamps = new long[MINUTE_BUCKETS];
+
+    public MessageRateCounter() {
+        Arrays.fill(secondStamps, Long.MIN_VALUE);
+        Arrays.fill(minuteStamps, Long.MIN_VALUE);
+    }
+
+    /**
+     * Record one message at the given wall-clock time
+     */
+    public void record(long nowMillis) {
+        long second = Math.floorDiv(nowMillis, 1000L);
+        int s = Math.floorMod(second, SECOND_BUCKETS);
+        if (secondStamps[s] != second) {
+            secondStamps[s] = second;
+            secondCounts[s] = 0;
+        }
+        secondCounts[s]++;
+
+        long minute = Math.floorDiv(second, 60L);
+        int m = Math.floorMod(minute, MINUTE_BUCKETS);
+        if (minuteStamps[m] != minute) {
+            minuteStamps[m] = minute;
+            minuteCounts[m] = 0;
+        }
+        minuteCounts[m]++;
+    }
+
+    /**
+     * Messages recorded in the 60 one-second buckets ending at the current second
+     */
+    public long countLastMinute(long nowMillis) {
+        long second = Math.floorDiv(nowMillis, 1000L);
+        long total = 0;
+        for (int i = 0; i < SECOND_BUCKETS; i++) {
+            if (secondStamps[i] <= second && secondStamps[i] > second - SECOND_BUCKETS) {
+                total += secondCounts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Messages recorded in the 60 one-minute buckets ending at the current minute
+     */
+    public long countLastHour(long nowMillis) {
+        long minute = Math.floorDiv(Math.floorDiv(nowMillis, 1000L), 60L);
+        long total = 0;
+        for (int i = 0; i < MINUTE_BUCKETS; i++) {
+            if (minuteStamps[i] <= minute && minuteStamps[i] > minute - MINUTE_BUCKETS) {
+                total += minuteCounts[i];
+            }
+        }
+        return total;
+    }
+}
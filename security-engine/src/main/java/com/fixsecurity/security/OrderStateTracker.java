@@ -0,0 +1,453 @@
+package com.fixsecurity.security;
+
+import com.fixsecurity.engine.FieldHash;
+import com.fixsecurity.engine.LinearProbingTable;
+import com.fixsecurity.engine.ParsedMessage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live order state keyed by ClOrdID per session, reconciling NewOrderSingle against
+ * ExecutionReport fills.
+ * <p>
+ * Orders are keyed from the client side of the session: SenderCompID-TargetCompID of the
+ * NewOrderSingle, i.e. TargetCompID-SenderCompID of its ExecutionReports. Reported anomalies:
+ * <ul>
+ *   <li>ORDER_OVERFILL: CumQty exceeds the order's OrderQty</li>
+ *   <li>INCONSISTENT_FILL: CumQty decreased, or previous CumQty + LastQty differs from CumQty</li>
+ *   <li>UNKNOWN_ORDER_FILL: a fill for a ClOrdID never seen on the session</li>
+ *   <li>FILL_AFTER_TERMINAL_STATE: a fill after the order was filled, canceled, rejected or expired</li>
+ *   <li>DUPLICATE_CL_ORD_ID: a NewOrderSingle reusing the ClOrdID of a live order</li>
+ *   <li>STALE_OPEN_ORDER: from {@link #sweep}, an order with no activity for the stale period</li>
+ * </ul>
+ * An ExecutionReport confirming a cancel or replace (ExecType Canceled or Replaced) whose
+ * OrigClOrdID(41) names a tracked order moves that order to the new ClOrdID, keeping its CumQty
+ * and taking the new OrderQty if present; other ExecutionReports for a not yet confirmed request,
+ * e.g. pending replace or fills while pending, update the order under its OrigClOrdID. An unknown
+ * ExecutionReport without a fill starts tracking the order with an unknown OrderQty.
+ * <p>
+ * Quantities, timestamps and state live in parallel primitive arrays of {@link LinearProbingTable}s,
+ * split into lock stripes by key hash; the only references kept are the ClOrdID string from
+ * the message and an interned session id. Each message is O(1). {@link #sweep}, run on a timer,
+ * evicts terminal orders after a grace period for late fills and stale open orders, and tables
+ * never grow past {@code maxOrders}; orders beyond it are counted and not tracked.
+ */
+public class OrderStateTracker {
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double QTY_EPSILON = 1e-6;
+    private static final int TAG_ORDER_QTY = 38;
+    private static final int TAG_ORIG_CL_ORD_ID = 41;
+
+    private static final byte OPEN = 1;
+    private static final byte TERMINAL = 2;
+
+    private final Map<String, Integer> sessionIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+    private volatile String[] sessionNames = new String[16];
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long terminalRetentionMillis;
+    private final long staleAfterMillis;
+    private final LongAdder untracked = new LongAdder();
+
+    /**
+     * Up to 2M orders, terminal orders kept 60 seconds for late fills, open orders stale after 8 hours
+     */
+    public OrderStateTracker() {
+        this(1 << 21, 60_000L, 8 * 60 * 60 * 1000L);
+    }
+
+    /**
+     * @param maxOrders               orders tracked at most
+     * @param terminalRetentionMillis how long terminal orders are kept to catch late fills
+     * @param staleAfterMillis        inactivity after which an open order is reported and dropped
+     */
+    public OrderStateTracker(int maxOrders, long terminalRetentionMillis, long staleAfterMillis) {
+        this.terminalRetentionMillis = terminalRetentionMillis;
+        this.staleAfterMillis = staleAfterMillis;
+        int perStripe = Math.max(1, maxOrders / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Update order state from a NewOrderSingle or ExecutionReport and add any inconsistencies
+     * to the result; other messages are ignored
+     */
+    public void onMessage(ParsedMessage message, AnomalyResult result, long nowMillis) {
+        String clOrdID = message.getClOrdID();
+        if (clOrdID == null) {
+            return;
+        }
+        String msgType = message.getMsgType();
+        if ("D".equals(msgType)) {
+            String session = message.getSenderCompID() + "-" + message.getTargetCompID();
+            int sessionId = sessionId(session);
+            long key = key(sessionId, clOrdID);
+            Stripe stripe = stripes[stripeIndex(key)];
+            synchronized (stripe) {
+                stripe.onNewOrder(key, sessionId, session, clOrdID, message, result, nowMillis);
+            }
+        } else if ("8".equals(msgType)) {
+            String session = message.getTargetCompID() + "-" + message.getSenderCompID();
+            int sessionId = sessionId(session);
+            long key = key(sessionId, clOrdID);
+            Stripe stripe = stripes[stripeIndex(key)];
+            String origClOrdID = message.getFieldValue(TAG_ORIG_CL_ORD_ID);
+            if (origClOrdID == null || origClOrdID.isEmpty() || origClOrdID.equals(clOrdID)) {
+                synchronized (stripe) {
+                    stripe.onExecutionReport(key, sessionId, session, clOrdID, message, result, nowMillis);
+                }
+                return;
+            }
+            long origKey = key(sessionId, origClOrdID);
+            Stripe origStripe = stripes[stripeIndex(origKey)];
+            // Take both stripe locks in index order so concurrent amendments cannot deadlock
+            boolean origFirst = stripeIndex(origKey) < stripeIndex(key);
+            synchronized (origFirst ? origStripe : stripe) {
+                synchronized (origFirst ? stripe : origStripe) {
+                    onAmendment(stripe, key, origStripe, origKey, sessionId, session, clOrdID, origClOrdID,
+                        message, result, nowMillis);
+                }
+            }
+        }
+    }
+
+    /**
+     * ExecutionReport carrying an OrigClOrdID: move a confirmed cancel or replace to its new
+     * ClOrdID, or apply a report for a pending request to the original order
+     */
+    private void onAmendment(Stripe stripe, long key, Stripe origStripe, long origKey, int sessionId, String session,
+                             String clOrdID, String origClOrdID, ParsedMessage message, AnomalyResult result,
+                             long nowMillis) {
+        int orig;
+        if (stripe.find(key, sessionId, clOrdID) >= 0 || (orig = origStripe.find(origKey, sessionId, origClOrdID)) < 0) {
+            stripe.onExecutionReport(key, sessionId, session, clOrdID, message, result, nowMillis);
+            return;
+        }
+        if (!isCancelOrReplace(message.getExecType())) {
+            origStripe.onExecutionReport(origKey, sessionId, session, origClOrdID, message, result, nowMillis);
+            return;
+        }
+        double qty = origStripe.orderQty[orig];
+        double cum = origStripe.cumQty[orig];
+        byte orderState = origStripe.state[orig];
+        int slot;
+        if (origStripe == stripe) {
+            // Removing first makes room, so the insert can neither fail nor grow the table under orig
+            origStripe.remove(orig);
+            slot = stripe.insert(key, sessionId, clOrdID);
+        } else {
+            // Claim the new slot first, so a full stripe leaves the order tracked under its OrigClOrdID
+            slot = stripe.insert(key, sessionId, clOrdID);
+            if (slot < 0) {
+                return;
+            }
+            origStripe.remove(orig);
+        }
+        double newQty = fieldDouble(message, TAG_ORDER_QTY);
+        stripe.orderQty[slot] = newQty > 0 ? newQty : qty;
+        stripe.cumQty[slot] = cum;
+        stripe.lastMillis[slot] = nowMillis;
+        stripe.state[slot] = orderState;
+        stripe.onExecutionReport(key, sessionId, session, clOrdID, message, result, nowMillis);
+    }
+
+    /**
+     * Evict terminal orders past the retention period, and report and evict open orders
+     * idle for the stale period
+     *
+     * @return STALE_OPEN_ORDER anomalies, one per evicted open order
+     */
+    public AnomalyResult sweep(long nowMillis) {
+        AnomalyResult result = new AnomalyResult();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.sweep(nowMillis, result);
+            }
+        }
+        return result;
+    }
+
+    /** Orders currently tracked */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /** Orders not tracked because the table was full */
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    private int sessionId(String session) {
+        Integer id = sessionIds.get(session);
+        if (id != null) {
+            return id;
+        }
+        synchronized (sessionIds) {
+            id = sessionIds.get(session);
+            if (id == null) {
+                id = nextSessionId.getAndIncrement();
+                String[] names = sessionNames;
+                if (id >= names.length) {
+                    names = Arrays.copyOf(names, names.length * 2);
+                }
+                names[id] = session;
+                sessionNames = names;
+                sessionIds.put(session, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * 64-bit hash of session and ClOrdID; lookups still compare both, so collisions only cost a probe
+     */
+    private static long key(int sessionId, String clOrdID) {
+        long h = FieldHash.mix(FieldHash.hash(clOrdID, FieldHash.SEED ^ sessionId));
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Stripe of a key, from its top bits since the slot within the stripe comes from the low ones
+     */
+    private static int stripeIndex(long key) {
+        return (int) (key >>> (64 - STRIPE_BITS));
+    }
+
+    /**
+     * ExecType Canceled (4) or Replaced (5): the request under the new ClOrdID was accepted
+     */
+    private static boolean isCancelOrReplace(String execType) {
+        return "4".equals(execType) || "5".equals(execType);
+    }
+
+    /**
+     * Numeric value of a field, or 0 if absent or not a number
+     */
+    private static double fieldDouble(ParsedMessage message, int tag) {
+        String value = message.getFieldValue(tag);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isTerminal(String ordStatus) {
+        if (ordStatus == null || ordStatus.length() != 1) {
+            return false;
+        }
+        switch (ordStatus.charAt(0)) {
+            case '2': // Filled
+            case '3': // Done for day
+            case '4': // Canceled
+            case '8': // Rejected
+            case 'C': // Expired
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Growable table from order key to order state in parallel arrays; sessions and ClOrdIDs are
+     * kept alongside the key so a hash collision cannot merge two orders
+     */
+    private final class Stripe extends LinearProbingTable {
+        private int[] sessions;
+        private String[] clOrdIds;
+        private double[] orderQty;
+        private double[] cumQty;
+        private long[] lastMillis;
+        private byte[] state;
+
+        Stripe(int maxOrders) {
+            super(Math.min(INITIAL_CAPACITY, capacityFor(maxOrders)), capacityFor(maxOrders), 50);
+            allocate(capacity());
+        }
+
+        private void allocate(int capacity) {
+            sessions = new int[capacity];
+            clOrdIds = new String[capacity];
+            orderQty = new double[capacity];
+            cumQty = new double[capacity];
+            lastMillis = new long[capacity];
+            state = new byte[capacity];
+        }
+
+        void onNewOrder(long key, int sessionId, String session, String clOrdID, ParsedMessage message,
+                        AnomalyResult result, long nowMillis) {
+            int slot = find(key, sessionId, clOrdID);
+            if (slot >= 0 && state[slot] == OPEN) {
+                result.addAnomaly("DUPLICATE_CL_ORD_ID",
+                    "ClOrdID " + clOrdID + " reused while the order is open on session " + session,
+                    message.getOrderID(), clOrdID);
+            }
+            if (slot < 0) {
+                slot = insert(key, sessionId, clOrdID);
+                if (slot < 0) {
+                    return;
+                }
+            }
+            orderQty[slot] = message.getOrderQty() > 0 ? message.getOrderQty() : Double.NaN;
+            cumQty[slot] = 0;
+            lastMillis[slot] = nowMillis;
+            state[slot] = OPEN;
+        }
+
+        void onExecutionReport(long key, int sessionId, String session, String clOrdID, ParsedMessage message,
+                               AnomalyResult result, long nowMillis) {
+            double lastQty = message.getLastQty();
+            double cum = message.getCumQty();
+            boolean fill = lastQty > 0;
+            String orderId = message.getOrderID();
+            int slot = find(key, sessionId, clOrdID);
+            if (slot < 0) {
+                if (fill) {
+                    result.addAnomaly("UNKNOWN_ORDER_FILL",
+                        "Fill of " + lastQty + " for unknown ClOrdID " + clOrdID + " on session " + session,
+                        orderId, clOrdID);
+                }
+                slot = insert(key, sessionId, clOrdID);
+                if (slot < 0) {
+                    return;
+                }
+                orderQty[slot] = Double.NaN;
+                cumQty[slot] = cum;
+                lastMillis[slot] = nowMillis;
+                state[slot] = isTerminal(message.getOrdStatus()) ? TERMINAL : OPEN;
+                return;
+            }
+
+            if (fill && state[slot] == TERMINAL) {
+                result.addAnomaly("FILL_AFTER_TERMINAL_STATE",
+                    "Fill of " + lastQty + " after ClOrdID " + clOrdID + " reached a terminal state on session " + session,
+                    orderId, clOrdID);
+            }
+            double previous = cumQty[slot];
+            if (cum + QTY_EPSILON < previous) {
+                result.addAnomaly("INCONSISTENT_FILL",
+                    "CumQty of ClOrdID " + clOrdID + " decreased from " + previous + " to " + cum,
+                    orderId, clOrdID);
+            } else if (fill && Math.abs(previous + lastQty - cum) > QTY_EPSILON) {
+                result.addAnomaly("INCONSISTENT_FILL",
+                    "CumQty of ClOrdID " + clOrdID + " is " + cum + ", expected " + previous + " + " + lastQty,
+                    orderId, clOrdID);
+            }
+            double qty = orderQty[slot];
+            if (!Double.isNaN(qty) && cum > qty + QTY_EPSILON) {
+                result.addAnomaly("ORDER_OVERFILL",
+                    "ClOrdID " + clOrdID + " filled " + cum + " of OrderQty " + qty + " on session " + session,
+                    orderId, clOrdID);
+            }
+            cumQty[slot] = Math.max(previous, cum);
+            lastMillis[slot] = nowMillis;
+            if (isTerminal(message.getOrdStatus())) {
+                state[slot] = TERMINAL;
+            }
+        }
+
+        void sweep(long nowMillis, AnomalyResult result) {
+            String[] names = sessionNames;
+            removeIf(slot -> {
+                long idle = nowMillis - lastMillis[slot];
+                if (state[slot] == TERMINAL) {
+                    return idle >= terminalRetentionMillis;
+                }
+                if (idle < staleAfterMillis) {
+                    return false;
+                }
+                result.addAnomaly("STALE_OPEN_ORDER",
+                    "ClOrdID " + clOrdIds[slot] + " open with no activity for " + idle / 1000
+                        + "s on session " + names[sessions[slot]] + ", filled " + cumQty[slot] + " of " + orderQty[slot],
+                    null, clOrdIds[slot]);
+                return true;
+            });
+        }
+
+        /**
+         * @return the order's slot, or -1
+         */
+        int find(long key, int sessionId, String clOrdID) {
+            int slot = home(key);
+            while (keys[slot] != 0) {
+                if (keys[slot] == key && sessions[slot] == sessionId && clOrdIds[slot].equals(clOrdID)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Claim an empty slot for a new open order, growing the table if it is half full
+         *
+         * @return the slot, or -1 if the stripe is at its limit
+         */
+        int insert(long key, int sessionId, String clOrdID) {
+            int slot = insert(key);
+            if (slot < 0) {
+                untracked.increment();
+                return -1;
+            }
+            sessions[slot] = sessionId;
+            clOrdIds[slot] = clOrdID;
+            state[slot] = OPEN;
+            return slot;
+        }
+
+        @Override
+        protected void rehash(int[] newSlots, int capacity) {
+            int[] oldSessions = sessions;
+            String[] oldClOrdIds = clOrdIds;
+            double[] oldOrderQty = orderQty;
+            double[] oldCumQty = cumQty;
+            long[] oldLastMillis = lastMillis;
+            byte[] oldState = state;
+            allocate(capacity);
+            for (int i = 0; i < newSlots.length; i++) {
+                int slot = newSlots[i];
+                if (slot >= 0) {
+                    sessions[slot] = oldSessions[i];
+                    clOrdIds[slot] = oldClOrdIds[i];
+                    orderQty[slot] = oldOrderQty[i];
+                    cumQty[slot] = oldCumQty[i];
+                    lastMillis[slot] = oldLastMillis[i];
+                    state[slot] = oldState[i];
+                }
+            }
+        }
+
+        @Override
+        protected void moveSlot(int from, int to) {
+            sessions[to] = sessions[from];
+            clOrdIds[to] = clOrdIds[from];
+            orderQty[to] = orderQty[from];
+            cumQty[to] = cumQty[from];
+            lastMillis[to] = lastMillis[from];
+            state[to] = state[from];
+        }
+
+        @Override
+        protected void clearSlot(int slot) {
+            clOrdIds[slot] = null;
+            state[slot] = 0;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.fixsecurity.security;
+
+import com.fixsecurity.engine.FieldHash;
+import com.fixsecurity.engine.LinearProbingTable;
+
+/**
+ * Streaming per-symbol price statistics for order price deviation checks.
+ * <p>
+ * Each symbol keeps a time-decayed mean and variance (West's weighted form of Welford's
+ * update): before a price is added, the existing weight and squared deviations decay by
+ * 2^(-elapsed / half-life), so recent orders dominate and the effective window is a few
+ * half-lives regardless of order rate. A price is flagged once the symbol has
+ * {@code minSamples} of weight and the price lies more than the threshold number of standard
+ * deviations from the mean. Flagged prices are clamped to that band before being added so
+ * one fat-fingered order does not widen the band for the orders after it.
+ * <p>
+ * Symbols are keyed by a 64-bit hash of their characters, so nothing is kept per symbol beyond
+ * its slot. Statistics live in primitive arrays of {@link LinearProbingTable}s keyed by that hash and
+ * split into lock stripes, so an update is O(1), allocation-free and contends only with orders
+ * for symbols in the same stripe. Memory is fixed at construction by {@code maxSymbols}: new
+ * symbols beyond the table's capacity are not tracked until {@link #evictIdle} frees the slots of symbols that
+ * stopped trading. Two symbols sharing a hash would share statistics; at 64 bits that is
+ * negligible for any symbol universe.
+ */
+public class PriceStatistics {
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final double LN2 = Math.log(2);
+
+    private final double decayPerMilli;
+    private final double minSamples;
+    private final double minRelativeStdDev;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * 65536 symbols, a 30-minute half-life, 20 samples before flagging and a standard
+     * deviation floor of 1 basis point of the mean
+     */
+    public PriceStatistics() {
+        this(65536, 30 * 60 * 1000L, 20, 0.0001);
+    }
+
+    /**
+     * @param maxSymbols        symbols to size the table for; somewhat more fit before new ones
+     *                          go untracked
+     * @param halfLifeMillis    time for an observation's weight to halve
+     * @param minSamples        decayed weight a symbol needs before prices are flagged
+     * @param minRelativeStdDev floor on the standard deviation as a fraction of the mean, so a
+     *                          symbol quoted at one price does not flag every tick away from it
+     */
+    public PriceStatistics(int maxSymbols, long halfLifeMillis, double minSamples, double minRelativeStdDev) {
+        this.decayPerMilli = LN2 / halfLifeMillis;
+        this.minSamples = minSamples;
+        this.minRelativeStdDev = minRelativeStdDev;
+        int perStripe = (maxSymbols + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Check a price against the symbol's statistics, then add it
+     *
+     * @return whether the price is more than {@code threshold} standard deviations from the mean
+     */
+    public boolean observe(String symbol, double price, long nowMillis, double threshold) {
+        if (symbol == null || !(price > 0) || Double.isInfinite(price)) {
+            return false;
+        }
+        long key = keyOf(symbol);
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.observe(key, price, nowMillis, threshold);
+        }
+    }
+
+    /**
+     * Decayed mean price of the symbol, or NaN if it is not tracked
+     */
+    public double mean(String symbol) {
+        long key = keyOf(symbol);
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            int slot = stripe.find(key);
+            return slot < 0 ? Double.NaN : stripe.mean[slot];
+        }
+    }
+
+    /**
+     * Decayed standard deviation of the symbol's prices, or NaN if it is not tracked
+     */
+    public double stdDev(String symbol) {
+        long key = keyOf(symbol);
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            int slot = stripe.find(key);
+            return slot < 0 ? Double.NaN : Math.sqrt(stripe.m2[slot] / stripe.weight[slot]);
+        }
+    }
+
+    /** Symbols with statistics currently held */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Drop statistics of symbols with no order since {@code idleMillis} before now, freeing their
+     * slots for new symbols. A dropped symbol starts from scratch if it trades again.
+     *
+     * @return number of symbols dropped
+     */
+    public int evictIdle(long nowMillis, long idleMillis) {
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evicted += stripe.evictIdle(nowMillis - idleMillis);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * FNV-1a of the symbol's characters, finished with a 64-bit mixer so the stripe (top bits)
+     * and slot (low bits) are independent. Never 0, which marks an empty slot.
+     */
+    private static long keyOf(String symbol) {
+        long h = FieldHash.mix(FieldHash.hash(symbol, FieldHash.SEED));
+        return h != 0 ? h : 1;
+    }
+
+    private Stripe stripeOf(long key) {
+        return stripes[(int) (key >>> (64 - STRIPE_BITS))];
+    }
+
+    /**
+     * Fixed-size table from symbol key to statistics in parallel arrays
+     */
+    private final class Stripe extends LinearProbingTable {
+        private final double[] weight;
+        private final double[] mean;
+        private final double[] m2;
+        private final long[] lastMillis;
+
+        Stripe(int expectedSymbols) {
+            // Filled to 3/4, above an even share of maxSymbols, since hashed keys do not spread
+            // evenly over stripes
+            super(capacityFor(expectedSymbols), capacityFor(expectedSymbols), 75);
+            weight = new double[capacity()];
+            mean = new double[capacity()];
+            m2 = new double[capacity()];
+            lastMillis = new long[capacity()];
+        }
+
+        boolean observe(long key, double price, long nowMillis, double threshold) {
+            int slot = find(key);
+            if (slot < 0) {
+                slot = insert(key);
+                if (slot < 0) {
+                    return false;
+                }
+                weight[slot] = 1;
+                mean[slot] = price;
+                m2[slot] = 0;
+                lastMillis[slot] = nowMillis;
+                return false;
+            }
+
+            long elapsed = nowMillis - lastMillis[slot];
+            if (elapsed > 0) {
+                double decay = Math.exp(-decayPerMilli * elapsed);
+                weight[slot] *= decay;
+                m2[slot] *= decay;
+                lastMillis[slot] = nowMillis;
+            }
+            double w = weight[slot];
+            double mu = mean[slot];
+            double stdDev = Math.max(Math.sqrt(m2[slot] / w), mu * minRelativeStdDev);
+            double band = threshold * stdDev;
+            boolean anomaly = w >= minSamples && Math.abs(price - mu) > band;
+            double x = anomaly ? Math.max(mu - band, Math.min(mu + band, price)) : price;
+
+            w += 1;
+            double delta = x - mu;
+            mu += delta / w;
+            m2[slot] += delta * (x - mu);
+            weight[slot] = w;
+            mean[slot] = mu;
+            return anomaly;
+        }
+
+        int evictIdle(long cutoffMillis) {
+            return removeIf(slot -> lastMillis[slot] < cutoffMillis);
+        }
+
+        @Override
+        protected void moveSlot(int from, int to) {
+            weight[to] = weight[from];
+            mean[to] = mean[from];
+            m2[to] = m2[from];
+            lastMillis[to] = lastMillis[from];
+        }
+    }
+}
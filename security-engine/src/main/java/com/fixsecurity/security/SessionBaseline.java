@@ -2,38 +2,67 @@ package com.fixsecurity.security;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Baseline behavior for a FIX session
+ * Baseline behavior for a FIX session.
+ * Counters are atomic so the baseline can be read from any thread while its session is updated.
  */
 public class SessionBaseline {
-    private long messageCount = 0;
-    private int lastSequenceNumber = 0;
-    private Map<String, Integer> messageTypeDistribution = new HashMap<>();
-    private long startTime = System.currentTimeMillis();
-    
+    /** Key used for messages without a MsgType, since concurrent maps reject null keys */
+    private static final String NO_MSG_TYPE = "";
+
+    private final AtomicLong messageCount = new AtomicLong();
+    private volatile int lastSequenceNumber = 0;
+    private final Map<String, LongAdder> messageTypeCounts = new ConcurrentHashMap<>();
+    private final long startTime = System.currentTimeMillis();
+    private final MessageRateCounter rateCounter = new MessageRateCounter();
+
     public void incrementMessageCount() {
-        messageCount++;
+        messageCount.incrementAndGet();
     }
-    
+
     public void updateLastSequenceNumber(int seqNum) {
         this.lastSequenceNumber = seqNum;
     }
-    
+
     public void updateMessageTypeDistribution(String msgType) {
-        messageTypeDistribution.put(msgType, 
-            messageTypeDistribution.getOrDefault(msgType, 0) + 1);
+        messageTypeCounts.computeIfAbsent(msgType != null ? msgType : NO_MSG_TYPE, k -> new LongAdder())
+            .increment();
     }
-    
+
     public double getAvgMessagesPerMinute() {
         long elapsedMinutes = (System.currentTimeMillis() - startTime) / 60000;
         if (elapsedMinutes == 0) {
-            return messageCount;
+            return messageCount.get();
         }
-        return messageCount / (double) elapsedMinutes;
+        return messageCount.get() / (double) elapsedMinutes;
     }
-    
-    public long getMessageCount() { return messageCount; }
+
+    /**
+     * Number of messages of the given type seen on this session
+     */
+    public long getMessageTypeCount(String msgType) {
+        LongAdder count = messageTypeCounts.get(msgType != null ? msgType : NO_MSG_TYPE);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * Sliding-window message counts; updated under the session's monitor by AnomalyDetector
+     */
+    public MessageRateCounter getRateCounter() { return rateCounter; }
+
+    public long getMessageCount() { return messageCount.get(); }
     public int getLastSequenceNumber() { return lastSequenceNumber; }
-    public Map<String, Integer> getMessageTypeDistribution() { return messageTypeDistribution; }
+
+    /**
+     * Snapshot of the per-type message counts
+     */
+    public Map<String, Integer> getMessageTypeDistribution() {
+        Map<String, Integer> distribution = new HashMap<>();
+        messageTypeCounts.forEach((type, count) -> distribution.put(type, count.intValue()));
+        return distribution;
+    }
 }
@@ -0,0 +1,138 @@
+package com.fixsecurity.security;
+
+import com.fixsecurity.engine.ParsedMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives one AnomalyDetector from many threads and checks that per-session counts, message
+ * type distributions and sequence tracking come out exactly as if processed serially.
+ */
+class AnomalyDetectorStressTest {
+    private static final int THREADS = 8;
+    private static final int SESSIONS = 64;
+    private static final int MESSAGES_PER_SESSION = 5_000;
+    private static final int SHARED_MESSAGES_PER_THREAD = 100_000;
+
+    @Test
+    void sessionsSpreadOverThreadsKeepExactCountsAndSequences() throws Exception {
+        AnomalyDetector detector = new AnomalyDetector();
+        AtomicLong sequenceAnomalies = new AtomicLong();
+        int gapSession = 7;
+
+        // Each session is owned by one thread, as the pipeline routes it, and sent in order
+        // interleaved with the thread's other sessions
+        runConcurrently(thread -> {
+            for (int seq = 1; seq <= MESSAGES_PER_SESSION; seq++) {
+                for (int session = thread; session < SESSIONS; session += THREADS) {
+                    int sent = session == gapSession && seq > MESSAGES_PER_SESSION / 2 ? seq + 20 : seq;
+                    AnomalyResult result = detector.detectAnomalies(message(session, sent, seq % 10 == 0 ? "1" : "0"));
+                    sequenceAnomalies.addAndGet(count(result, "SEQUENCE_NUMBER_ANOMALY"));
+                }
+            }
+        });
+
+        for (int session = 0; session < SESSIONS; session++) {
+            SessionBaseline baseline = detector.getSessionBaseline(sessionId(session));
+            assertNotNull(baseline, sessionId(session));
+            assertEquals(MESSAGES_PER_SESSION, baseline.getMessageCount(), sessionId(session));
+            assertEquals(MESSAGES_PER_SESSION / 10, baseline.getMessageTypeCount("1"), sessionId(session));
+            assertEquals(MESSAGES_PER_SESSION - MESSAGES_PER_SESSION / 10, baseline.getMessageTypeCount("0"),
+                sessionId(session));
+            int expectedLast = session == gapSession ? MESSAGES_PER_SESSION + 20 : MESSAGES_PER_SESSION;
+            assertEquals(expectedLast, baseline.getLastSequenceNumber(), sessionId(session));
+            assertEquals(MESSAGES_PER_SESSION, baseline.getRateCounter().countLastHour(System.currentTimeMillis()),
+                sessionId(session));
+        }
+        // Only the deliberate gap is reported; reordering within a session would add more
+        assertEquals(1, sequenceAnomalies.get());
+    }
+
+    @Test
+    void sharedSessionsKeepExactCountsUnderContention() throws Exception {
+        AnomalyDetector detector = new AnomalyDetector();
+        int sharedSessions = 3;
+
+        // Every thread writes to the same few sessions at once
+        runConcurrently(thread -> {
+            for (int i = 0; i < SHARED_MESSAGES_PER_THREAD; i++) {
+                detector.detectAnomalies(message(i % sharedSessions, i + 1, thread % 2 == 0 ? "0" : "D"));
+            }
+        });
+
+        long total = 0;
+        for (int session = 0; session < sharedSessions; session++) {
+            SessionBaseline baseline = detector.getSessionBaseline(sessionId(session));
+            long expected = countFor(session, sharedSessions) * THREADS;
+            assertEquals(expected, baseline.getMessageCount(), sessionId(session));
+            assertEquals(expected, baseline.getMessageTypeCount("0") + baseline.getMessageTypeCount("D"),
+                sessionId(session));
+            assertEquals(expected / 2, baseline.getMessageTypeCount("D"), sessionId(session));
+            assertEquals(expected, baseline.getRateCounter().countLastHour(System.currentTimeMillis()),
+                sessionId(session));
+            total += baseline.getMessageCount();
+        }
+        assertEquals((long) SHARED_MESSAGES_PER_THREAD * THREADS, total);
+    }
+
+    private static long countFor(int session, int sessions) {
+        long count = 0;
+        for (int i = 0; i < SHARED_MESSAGES_PER_THREAD; i++) {
+            if (i % sessions == session) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Start all threads together and rethrow the first failure
+     */
+    private static void runConcurrently(Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                worker.run(thread);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static long count(AnomalyResult result, String type) {
+        return result.getAnomalies().stream().filter(a -> type.equals(a.getType())).count();
+    }
+
+    private static String sessionId(int session) {
+        return "SENDER" + session + "-BROKER";
+    }
+
+    private static ParsedMessage message(int session, int seqNum, String msgType) {
+        ParsedMessage message = new ParsedMessage();
+        message.setMsgType(msgType);
+        message.setSenderCompID("SENDER" + session);
+        message.setTargetCompID("BROKER");
+        message.setMsgSeqNum(seqNum);
+        return message;
+    }
+}
@@ -0,0 +1,141 @@
+package com.fixsecurity.security;
+
+import com.fixsecurity.engine.FIXMessageParser;
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.FlyweightParsedMessage;
+import com.fixsecurity.engine.ParsedMessage;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives OrderStateTracker through order lifecycles, including cancel/replace chains, and checks
+ * the anomalies it reports, on both plain and flyweight messages.
+ */
+class OrderStateTrackerTest {
+    private static final String CLIENT = "49=CLIENT|56=BROKER|34=1|52=20240102-14:30:00.000|";
+    private static final String BROKER = "49=BROKER|56=CLIENT|34=1|52=20240102-14:30:00.000|";
+
+    private final FIXTagValueParser flyweightParser = new FIXTagValueParser(true);
+    private final FIXMessageParser plainParser = new FIXMessageParser();
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void cancelReplaceChainKeepsTheOrderAndItsCumQty(boolean flyweight) throws Exception {
+        OrderStateTracker tracker = new OrderStateTracker(1000, 1_000, 5_000);
+
+        assertEquals(List.of(), send(tracker, flyweight, 0, "D", CLIENT + "11=A|55=AAPL|54=1|38=100|40=2|44=10|"));
+        assertEquals(List.of(), send(tracker, flyweight, 1, "8", BROKER + "37=O1|11=A|17=E1|150=F|39=1|32=30|31=10|14=30|6=10|"));
+        // Pending replace, and a fill reported under the new ClOrdID while the replace is pending
+        assertEquals(List.of(), send(tracker, flyweight, 2, "8", BROKER + "37=O1|11=A2|41=A|17=E2|150=E|39=E|14=30|6=10|"));
+        assertEquals(List.of(), send(tracker, flyweight, 3, "8", BROKER + "37=O1|11=A2|41=A|17=E3|150=F|39=1|32=20|31=10|14=50|6=10|"));
+        assertEquals(List.of(), send(tracker, flyweight, 4, "8", BROKER + "37=O1|11=A2|41=A|17=E4|150=5|39=1|38=200|14=50|6=10|"));
+        assertEquals(1, tracker.size());
+        // Beyond the old OrderQty but within the replaced one
+        assertEquals(List.of(), send(tracker, flyweight, 5, "8", BROKER + "37=O1|11=A2|17=E5|150=F|39=1|32=100|31=10|14=150|6=10|"));
+        assertEquals(List.of(), send(tracker, flyweight, 6, "8", BROKER + "37=O1|11=A3|41=A2|17=E6|150=4|39=4|14=150|6=10|"));
+        assertEquals(1, tracker.size());
+
+        assertEquals(List.of("FILL_AFTER_TERMINAL_STATE"),
+            send(tracker, flyweight, 7, "8", BROKER + "37=O1|11=A3|17=E7|150=F|39=4|32=1|31=10|14=151|6=10|"));
+        assertEquals(0, tracker.sweep(100_000).getAnomalies().size());
+        assertEquals(0, tracker.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void replaceIntoAFullStripeKeepsTheOriginalOrder(boolean flyweight) throws Exception {
+        // Two orders per stripe at most, and far more new orders than that, so every stripe is full
+        OrderStateTracker tracker = new OrderStateTracker(16, 1_000, 5_000);
+        for (int i = 0; i < 200; i++) {
+            send(tracker, flyweight, 0, "D", CLIENT + "11=F" + i + "|55=AAPL|54=1|38=100|40=2|44=10|");
+        }
+        int tracked = tracker.size();
+        assertTrue(tracker.getUntracked() > 0);
+
+        // F0 went into an empty table; replace it until the new ClOrdID falls in another stripe
+        String current = "F0";
+        for (int i = 0; i < 50; i++) {
+            long untracked = tracker.getUntracked();
+            send(tracker, flyweight, 1, "8", BROKER + "37=O1|11=R" + i + "|41=" + current + "|17=E" + i
+                + "|150=5|39=0|38=100|14=0|6=0|");
+            assertEquals(tracked, tracker.size(), "order lost on replace");
+            if (tracker.getUntracked() > untracked) {
+                // Refused: the order is still known under its old ClOrdID
+                assertEquals(List.of(), send(tracker, flyweight, 2, "8", BROKER + "37=O1|11=" + current
+                    + "|17=X|150=F|39=1|32=10|31=10|14=10|6=10|"));
+                return;
+            }
+            current = "R" + i;
+        }
+        fail("no replacement ClOrdID fell in another stripe");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void reportsEachAnomalyType(boolean flyweight) throws Exception {
+        OrderStateTracker tracker = new OrderStateTracker(1000, 1_000, 5_000);
+        send(tracker, flyweight, 0, "D", CLIENT + "11=A|55=AAPL|54=1|38=100|40=2|44=10|");
+
+        assertEquals(List.of("DUPLICATE_CL_ORD_ID"),
+            send(tracker, flyweight, 1, "D", CLIENT + "11=A|55=AAPL|54=1|38=100|40=2|44=10|"));
+        assertEquals(List.of("INCONSISTENT_FILL"),
+            send(tracker, flyweight, 2, "8", BROKER + "37=O1|11=A|17=E1|150=F|39=1|32=30|31=10|14=40|6=10|"));
+        assertEquals(List.of("INCONSISTENT_FILL"),
+            send(tracker, flyweight, 3, "8", BROKER + "37=O1|11=A|17=E2|150=0|39=1|14=20|6=10|"));
+        assertEquals(List.of("ORDER_OVERFILL"),
+            send(tracker, flyweight, 4, "8", BROKER + "37=O1|11=A|17=E3|150=F|39=2|32=70|31=10|14=110|6=10|"));
+        assertEquals(List.of("FILL_AFTER_TERMINAL_STATE", "ORDER_OVERFILL"),
+            send(tracker, flyweight, 5, "8", BROKER + "37=O1|11=A|17=E4|150=F|39=2|32=5|31=10|14=115|6=10|"));
+        assertEquals(List.of("UNKNOWN_ORDER_FILL"),
+            send(tracker, flyweight, 6, "8", BROKER + "37=O2|11=B|17=E5|150=F|39=1|32=5|31=10|14=5|6=10|"));
+
+        send(tracker, flyweight, 7, "D", CLIENT + "11=C|55=AAPL|54=1|38=100|40=2|44=10|");
+        AnomalyResult swept = tracker.sweep(5_010);
+        assertEquals(List.of("STALE_OPEN_ORDER", "STALE_OPEN_ORDER"), types(swept));
+        assertEquals(0, tracker.size());
+    }
+
+    /**
+     * Parse a message and pass it to the tracker, returning the anomaly types reported
+     */
+    private List<String> send(OrderStateTracker tracker, boolean flyweight, long nowMillis, String msgType, String body)
+            throws Exception {
+        String raw = fix(msgType, body);
+        ParsedMessage message;
+        if (flyweight) {
+            byte[] bytes = raw.getBytes(StandardCharsets.ISO_8859_1);
+            message = flyweightParser.parseReusable(bytes, 0, bytes.length);
+            assertInstanceOf(FlyweightParsedMessage.class, message);
+        } else {
+            message = plainParser.parse(raw);
+        }
+        AnomalyResult result = new AnomalyResult();
+        tracker.onMessage(message, result, nowMillis);
+        return types(result);
+    }
+
+    private static List<String> types(AnomalyResult result) {
+        List<String> types = new ArrayList<>();
+        result.getAnomalies().forEach(anomaly -> types.add(anomaly.getType()));
+        return types;
+    }
+
+    /**
+     * Frame a '|'-separated body as FIX 4.4 with BodyLength and CheckSum
+     */
+    private static String fix(String msgType, String body) {
+        String content = ("35=" + msgType + "|" + body).replace('|', '\u0001');
+        String message = "8=FIX.4.4\u00019=" + content.length() + "\u0001" + content;
+        int sum = 0;
+        for (byte b : message.getBytes(StandardCharsets.ISO_8859_1)) {
+            sum += b;
+        }
+        return message + String.format("10=%03d\u0001", sum & 0xFF);
+    }
+}
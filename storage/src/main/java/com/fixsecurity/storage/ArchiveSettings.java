@@ -0,0 +1,33 @@
+package com.fixsecurity.storage;
+
+import java.time.Duration;
+
+/**
+ * Segment and retention settings for {@link RawMessageArchive}
+ */
+public class ArchiveSettings {
+    private int segmentBytes = 256 * 1024 * 1024;
+    private Duration rollInterval = Duration.ofHours(1);
+    private Duration retentionAge = Duration.ofDays(7);
+    private long retentionBytes = 10L * 1024 * 1024 * 1024;
+
+    public static ArchiveSettings defaults() {
+        return new ArchiveSettings();
+    }
+
+    /** Size each segment file is mapped at; a segment rolls when the next message does not fit */
+    public int getSegmentBytes() { return segmentBytes; }
+    public ArchiveSettings setSegmentBytes(int segmentBytes) { this.segmentBytes = segmentBytes; return this; }
+
+    /** A segment also rolls once its first message is this old, so age retention can free it */
+    public Duration getRollInterval() { return rollInterval; }
+    public ArchiveSettings setRollInterval(Duration rollInterval) { this.rollInterval = rollInterval; return this; }
+
+    /** Sealed segments whose newest message is older than this are deleted; null keeps them */
+    public Duration getRetentionAge() { return retentionAge; }
+    public ArchiveSettings setRetentionAge(Duration retentionAge) { this.retentionAge = retentionAge; return this; }
+
+    /** Oldest sealed segments are deleted while the archive holds more than this many bytes */
+    public long getRetentionBytes() { return retentionBytes; }
+    public ArchiveSettings setRetentionBytes(long retentionBytes) { this.retentionBytes = retentionBytes; return this; }
+}
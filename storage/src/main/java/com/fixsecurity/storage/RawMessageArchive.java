@@ -0,0 +1,543 @@
+package com.fixsecurity.storage;
+
+import com.fixsecurity.engine.FIXMessageParser;
+import com.fixsecurity.engine.FIXTagValueParser;
+import com.fixsecurity.engine.FlyweightParsedMessage;
+import com.fixsecurity.engine.InvalidMessageException;
+import com.fixsecurity.engine.ParsedMessage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Archive of raw FIX messages in segmented, memory-mapped log files, indexed by session
+ * (SenderCompID-TargetCompID) and MsgSeqNum.
+ * <p>
+ * Records are: int body length, int CRC32C of the body, then the body: long archive time in
+ * epoch millis, int MsgSeqNum, short session length, session (UTF-8), message bytes. The active
+ * segment rolls when a message does not fit or its first message is older than the roll
+ * interval. Each segment also collects its own index entries as records are added; on rolling,
+ * the segment is forced to disk and those entries are written next to it as a sidecar file, so
+ * reopening loads sealed segments' indexes and only scans the active segment.
+ * <p>
+ * The in-memory index keeps, per session, parallel int/long arrays of MsgSeqNum and
+ * segment/offset in arrival order. A sequence reset starts a new ascending run, and range
+ * lookups binary-search each run. Lookups hand out read-only slices of the mapped segments
+ * without copying. Retention deletes the oldest sealed segments by age or total size.
+ */
+public class RawMessageArchive implements AutoCloseable {
+    private static final int LENGTH_AND_CRC = 8;
+    private static final int BODY_HEADER = 8 + 4 + 2;
+    private static final int INDEX_MAGIC = 0x46495831;
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * Receives archived messages; the buffer is a read-only view of the mapped segment,
+     * positioned at the message bytes
+     */
+    @FunctionalInterface
+    public interface MessageVisitor {
+        void visit(int msgSeqNum, long archivedAtMillis, ByteBuffer message);
+    }
+
+    /**
+     * Receives messages replayed through {@link FIXMessageParser}
+     */
+    public interface ReplayListener {
+        void onMessage(int msgSeqNum, ParsedMessage message);
+
+        default void onInvalid(int msgSeqNum, String rawMessage, InvalidMessageException e) {
+        }
+    }
+
+    private final Path directory;
+    private final ArchiveSettings settings;
+    private final FIXTagValueParser headerParser = new FIXTagValueParser();
+    private final CRC32C crc = new CRC32C();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, SessionIndex> sessions = new HashMap<>();
+    private Segment active;
+    private boolean closed;
+
+    public RawMessageArchive(Path directory, ArchiveSettings settings) throws IOException {
+        this.directory = directory;
+        this.settings = settings;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Archive a raw message, taking its session and MsgSeqNum from the header
+     *
+     * @throws InvalidMessageException if the message is not framed FIX
+     */
+    public synchronized void append(byte[] rawMessage) throws InvalidMessageException, IOException {
+        FlyweightParsedMessage header = headerParser.parseReusable(rawMessage, 0, rawMessage.length);
+        append(sessionId(header.getSenderCompID(), header.getTargetCompID()), header.getMsgSeqNum(), rawMessage);
+    }
+
+    /**
+     * Archive a raw message under the given session and MsgSeqNum
+     */
+    public synchronized void append(String sessionId, int msgSeqNum, byte[] rawMessage) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Archive is closed");
+        }
+        byte[] session = sessionId.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = BODY_HEADER + session.length + rawMessage.length;
+        int recordLength = LENGTH_AND_CRC + bodyLength;
+        if (recordLength > settings.getSegmentBytes() || session.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Message of " + rawMessage.length + " bytes does not fit in an archive segment");
+        }
+        long now = System.currentTimeMillis();
+        if (active.end + recordLength > settings.getSegmentBytes()
+                || (active.end > 0 && settings.getRollInterval() != null
+                    && now - active.firstTimestamp >= settings.getRollInterval().toMillis())) {
+            roll();
+        }
+
+        MappedByteBuffer buffer = active.buffer;
+        int offset = active.end;
+        int body = offset + LENGTH_AND_CRC;
+        buffer.putLong(body, now);
+        buffer.putInt(body + 8, msgSeqNum);
+        buffer.putShort(body + 12, (short) session.length);
+        buffer.put(body + BODY_HEADER, session);
+        buffer.put(body + BODY_HEADER + session.length, rawMessage);
+        crc.reset();
+        crc.update(buffer.slice(body, bodyLength));
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, bodyLength);
+
+        active.end = body + bodyLength;
+        if (active.firstTimestamp == 0) {
+            active.firstTimestamp = now;
+        }
+        active.lastTimestamp = now;
+        index(active, sessionId, msgSeqNum, offset);
+    }
+
+    /**
+     * Session key used by the archive, matching the Kafka producer's record key
+     */
+    public static String sessionId(String senderCompID, String targetCompID) {
+        return senderCompID + "-" + targetCompID;
+    }
+
+    /**
+     * Visit the session's messages with MsgSeqNum in [fromSeq, toSeq], in arrival order
+     *
+     * @return number of messages visited
+     */
+    public int read(String sessionId, int fromSeq, int toSeq, MessageVisitor visitor) {
+        List<Segment> found = new ArrayList<>();
+        int[] offsets;
+        synchronized (this) {
+            SessionIndex index = sessions.get(sessionId);
+            if (index == null) {
+                return 0;
+            }
+            long[] locations = index.find(fromSeq, toSeq);
+            offsets = new int[locations.length];
+            for (int i = 0; i < locations.length; i++) {
+                found.add(segments.get(locations[i] >>> 32));
+                offsets[i] = (int) locations[i];
+            }
+        }
+        // Mappings stay valid after retention deletes a file, so reading outside the lock is safe
+        for (int i = 0; i < offsets.length; i++) {
+            ByteBuffer buffer = found.get(i).buffer;
+            int offset = offsets[i];
+            int body = offset + LENGTH_AND_CRC;
+            int bodyLength = buffer.getInt(offset);
+            int sessionLength = buffer.getShort(body + 12);
+            int messageStart = body + BODY_HEADER + sessionLength;
+            visitor.visit(buffer.getInt(body + 8), buffer.getLong(body),
+                buffer.slice(messageStart, body + bodyLength - messageStart).asReadOnlyBuffer());
+        }
+        return offsets.length;
+    }
+
+    /**
+     * Re-parse the session's messages with MsgSeqNum in [fromSeq, toSeq], e.g. for an investigation
+     *
+     * @return number of messages replayed, including invalid ones
+     */
+    public int replay(String sessionId, int fromSeq, int toSeq, FIXMessageParser parser, ReplayListener listener) {
+        return read(sessionId, fromSeq, toSeq, (msgSeqNum, archivedAt, message) -> {
+            byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            String raw = new String(bytes, StandardCharsets.ISO_8859_1);
+            try {
+                listener.onMessage(msgSeqNum, parser.parse(raw));
+            } catch (InvalidMessageException e) {
+                listener.onInvalid(msgSeqNum, raw, e);
+            }
+        });
+    }
+
+    public synchronized Set<String> getSessions() {
+        return new TreeSet<>(sessions.keySet());
+    }
+
+    /** Bytes of message records currently held across all segments */
+    public synchronized long getSizeBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.end;
+        }
+        return total;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Delete the oldest sealed segments while the archive is over its size limit or they are
+     * past the retention age, and drop their index entries. Runs on every roll; call it from a
+     * scheduler as well if messages may stop arriving.
+     */
+    public synchronized void enforceRetention() throws IOException {
+        long total = getSizeBytes();
+        long ageLimit = settings.getRetentionAge() == null ? Long.MIN_VALUE
+            : System.currentTimeMillis() - settings.getRetentionAge().toMillis();
+        boolean deleted = false;
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (total <= settings.getRetentionBytes() && oldest.lastTimestamp >= ageLimit) {
+                break;
+            }
+            segments.remove(oldest.id);
+            Files.deleteIfExists(indexPath(oldest.id));
+            Files.deleteIfExists(segmentPath(oldest.id));
+            total -= oldest.end;
+            deleted = true;
+        }
+        if (deleted) {
+            long firstKept = segments.firstKey();
+            sessions.values().removeIf(index -> index.trimBefore(firstKept));
+        }
+    }
+
+    private void roll() throws IOException {
+        // The sidecar claims the records are there, so they must be on disk before it is
+        active.buffer.force();
+        writeIndex(active);
+        active.sealed = true;
+        active = mapSegment(active.id + 1, true);
+        enforceRetention();
+    }
+
+    private void open() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(SEGMENT_SUFFIX))
+                .map(n -> Long.parseLong(n.substring(SEGMENT_PREFIX.length(), n.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .forEach(ids::add);
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            long id = ids.get(i);
+            boolean last = i == ids.size() - 1;
+            Segment segment = mapSegment(id, last);
+            if (last || !loadIndex(segment)) {
+                scan(segment);
+            }
+            segment.sealed = !last;
+        }
+        if (ids.isEmpty()) {
+            active = mapSegment(0, true);
+        } else {
+            active = segments.lastEntry().getValue();
+            // Sealed segments lacking a sidecar were scanned above; write it now
+            for (Segment segment : segments.values()) {
+                if (segment.sealed && !Files.exists(indexPath(segment.id))) {
+                    writeIndex(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Map a segment: read-write at full segment size if it is the active one, otherwise
+     * read-only over the existing file
+     */
+    private Segment mapSegment(long id, boolean writable) throws IOException {
+        Path path = segmentPath(id);
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = writable
+                ? channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), settings.getSegmentBytes()))
+                : channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Segment segment = new Segment(id, buffer);
+            segments.put(id, segment);
+            return segment;
+        }
+    }
+
+    /**
+     * Index a segment's records by reading them, stopping at the first torn or invalid one
+     */
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + LENGTH_AND_CRC <= buffer.capacity()) {
+            int bodyLength = buffer.getInt(offset);
+            int body = offset + LENGTH_AND_CRC;
+            if (bodyLength < BODY_HEADER || body + bodyLength > buffer.capacity()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(body, bodyLength));
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            long timestamp = buffer.getLong(body);
+            byte[] session = new byte[buffer.getShort(body + 12)];
+            buffer.get(body + BODY_HEADER, session);
+            index(segment, new String(session, StandardCharsets.UTF_8), buffer.getInt(body + 8), offset);
+            if (segment.firstTimestamp == 0) {
+                segment.firstTimestamp = timestamp;
+            }
+            segment.lastTimestamp = timestamp;
+            offset = body + bodyLength;
+        }
+        segment.end = offset;
+    }
+
+    /**
+     * Add a record to the session index and to the segment's own entries for its sidecar
+     */
+    private void index(Segment segment, String sessionId, int msgSeqNum, int offset) {
+        sessions.computeIfAbsent(sessionId, s -> new SessionIndex()).add(msgSeqNum, location(segment.id, offset));
+        segment.entries.computeIfAbsent(sessionId, s -> new SegmentEntries()).add(msgSeqNum, offset);
+    }
+
+    /**
+     * Sidecar layout: int magic, int end offset, long first and last timestamps, int session
+     * count, then per session its name, entry count and (MsgSeqNum, offset) pairs
+     */
+    private void writeIndex(Segment segment) throws IOException {
+        Path tmp = directory.resolve(indexPath(segment.id).getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(segment.end);
+            out.writeLong(segment.firstTimestamp);
+            out.writeLong(segment.lastTimestamp);
+            out.writeInt(segment.entries.size());
+            for (Map.Entry<String, SegmentEntries> entry : segment.entries.entrySet()) {
+                SegmentEntries entries = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(entries.count);
+                for (int i = 0; i < entries.count * 2; i++) {
+                    out.writeInt(entries.pairs[i]);
+                }
+            }
+        }
+        Files.move(tmp, indexPath(segment.id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Sealed segments never change again, and reopening reads the sidecar instead
+        segment.entries.clear();
+    }
+
+    /**
+     * @return false if the sidecar is missing or unreadable, in which case the segment is scanned
+     */
+    private boolean loadIndex(Segment segment) throws IOException {
+        Path path = indexPath(segment.id);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        Map<String, int[][]> loaded = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                return false;
+            }
+            segment.end = in.readInt();
+            segment.firstTimestamp = in.readLong();
+            segment.lastTimestamp = in.readLong();
+            int sessionCount = in.readInt();
+            for (int s = 0; s < sessionCount; s++) {
+                String session = in.readUTF();
+                int[][] entries = new int[in.readInt()][];
+                for (int i = 0; i < entries.length; i++) {
+                    entries[i] = new int[] { in.readInt(), in.readInt() };
+                }
+                loaded.put(session, entries);
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        for (Map.Entry<String, int[][]> entry : loaded.entrySet()) {
+            SessionIndex index = sessions.computeIfAbsent(entry.getKey(), s -> new SessionIndex());
+            for (int[] e : entry.getValue()) {
+                index.add(e[0], location(segment.id, e[1]));
+            }
+        }
+        return true;
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Path indexPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, INDEX_SUFFIX));
+    }
+
+    private static long location(long segmentId, int offset) {
+        return (segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Force the active segment to disk. Sealed segments keep their data but are not re-indexed
+     * until they roll, so the active segment is scanned again on the next open.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            active.buffer.force();
+        }
+    }
+
+    private static final class Segment {
+        final long id;
+        final MappedByteBuffer buffer;
+        int end;
+        long firstTimestamp;
+        long lastTimestamp;
+        boolean sealed;
+        /** Entries added since the segment was mapped, per session in arrival order, until its sidecar is written */
+        final Map<String, SegmentEntries> entries = new LinkedHashMap<>();
+
+        Segment(long id, MappedByteBuffer buffer) {
+            this.id = id;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * One session's (MsgSeqNum, offset) pairs within a segment, interleaved in one int array
+     */
+    private static final class SegmentEntries {
+        private int[] pairs = new int[16];
+        private int count;
+
+        void add(int seq, int offset) {
+            if (count * 2 == pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            }
+            pairs[count * 2] = seq;
+            pairs[count * 2 + 1] = offset;
+            count++;
+        }
+    }
+
+    /**
+     * One session's (MsgSeqNum, location) entries in arrival order. Entries before {@code start}
+     * belong to deleted segments; {@code runStarts} marks where MsgSeqNum stopped ascending.
+     */
+    private static final class SessionIndex {
+        private int[] seqs = new int[16];
+        private long[] locations = new long[16];
+        private int[] runStarts = new int[] { 0 };
+        private int runCount = 1;
+        private int start;
+        private int size;
+
+        void add(int seq, long location) {
+            if (size == seqs.length) {
+                int live = size - start;
+                int capacity = Math.max(16, live * 2);
+                seqs = Arrays.copyOfRange(seqs, start, start + capacity);
+                locations = Arrays.copyOfRange(locations, start, start + capacity);
+                shiftRuns(start);
+                size = live;
+                start = 0;
+            }
+            if (size > start && seq < seqs[size - 1]) {
+                if (runCount == runStarts.length) {
+                    runStarts = Arrays.copyOf(runStarts, runCount * 2);
+                }
+                runStarts[runCount++] = size;
+            }
+            seqs[size] = seq;
+            locations[size] = location;
+            size++;
+        }
+
+        long[] find(int fromSeq, int toSeq) {
+            long[] found = new long[0];
+            int count = 0;
+            for (int r = 0; r < runCount; r++) {
+                int runStart = Math.max(runStarts[r], start);
+                int runEnd = r + 1 < runCount ? runStarts[r + 1] : size;
+                if (runStart >= runEnd) {
+                    continue;
+                }
+                int i = lowerBound(runStart, runEnd, fromSeq);
+                for (; i < runEnd && seqs[i] <= toSeq; i++) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, Math.max(16, count * 2));
+                    }
+                    found[count++] = locations[i];
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+
+        private int lowerBound(int from, int to, int seq) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (seqs[mid] < seq) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Drop entries in segments before the given one
+         *
+         * @return whether the session has no entries left
+         */
+        boolean trimBefore(long segmentId) {
+            while (start < size && locations[start] >>> 32 < segmentId) {
+                start++;
+            }
+            return start == size;
+        }
+
+        private void shiftRuns(int by) {
+            // Runs wholly before the new start are gone; the one containing it now starts at 0
+            int kept = 1;
+            for (int r = 1; r < runCount; r++) {
+                int shifted = runStarts[r] - by;
+                if (shifted > 0) {
+                    runStarts[kept++] = shifted;
+                }
+            }
+            runStarts[0] = 0;
+            runCount = kept;
+        }
+    }
+}